@@ -10,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/major-building-preferences")
@@ -69,17 +70,20 @@ public class MajorBuildingPreferenceController {
     @PostMapping("/bulk")
     public ResponseEntity<ApiResponse<String>> bulkCreatePreferences(
             @Valid @RequestBody List<MajorBuildingPreferenceRequest> requests) {
-        for (MajorBuildingPreferenceRequest req : requests) {
-            preferenceService.createOrUpdatePreference(
-                    req.getNganh(),
-                    req.getPreferredBuilding(),
-                    req.getPriorityLevel(),
-                    req.getNotes());
-        }
+        int imported = preferenceService.bulkCreateOrUpdatePreferences(requests);
         return ResponseEntity.ok(ApiResponse.<String>builder()
                 .success(true)
                 .message("Import ưu tiên thành công")
-                .data("Đã import " + requests.size() + " ưu tiên")
+                .data("Đã import " + imported + " ưu tiên")
+                .build());
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getCacheStats() {
+        return ResponseEntity.ok(ApiResponse.<Map<String, Object>>builder()
+                .success(true)
+                .message("Lấy thống kê cache ưu tiên thành công")
+                .data(preferenceService.getCacheStats())
                 .build());
     }
 }
@@ -7,9 +7,12 @@ import com.ptit.schedule.dto.RoomStatusUpdateRequest;
 import com.ptit.schedule.dto.RoomBulkStatusUpdateRequest;
 import com.ptit.schedule.entity.RoomStatus;
 import com.ptit.schedule.entity.RoomType;
+import com.ptit.schedule.exception.StaleSessionException;
 import com.ptit.schedule.service.RoomService;
+import com.ptit.schedule.service.SchedulingSessionRegistry;
 import com.ptit.schedule.service.TimetableSchedulingService;
 import com.ptit.schedule.service.SubjectRoomMappingService;
+import com.ptit.schedule.service.SchedulingSession;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -28,6 +31,7 @@ public class RoomController {
     private final RoomService roomService;
     private final TimetableSchedulingService timetableSchedulingService;
     private final SubjectRoomMappingService subjectRoomMappingService;
+    private final SchedulingSessionRegistry sessionRegistry;
 
     @GetMapping
     public ResponseEntity<ApiResponse<List<RoomResponse>>> getAllRooms() {
@@ -170,16 +174,22 @@ public class RoomController {
     }
 
     @PostMapping("/save-results")
-    public ResponseEntity<Map<String, Object>> saveResults() {
+    public ResponseEntity<Map<String, Object>> saveResults(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
 
-            timetableSchedulingService.commitSessionToGlobal();
+            timetableSchedulingService.commitSessionToGlobal(sessionRegistry.getOrCreate(sessionId));
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Đã lưu kết quả TKB vào hệ thống!");
             response.put("status", "success");
 
             return ResponseEntity.ok(response);
+        } catch (StaleSessionException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("status", "regenerate");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("message", "Lỗi khi lưu kết quả: " + e.getMessage());
@@ -188,9 +198,11 @@ public class RoomController {
     }
 
     @GetMapping("/occupied-info")
-    public ResponseEntity<Map<String, Object>> getOccupiedRoomsInfo() {
+    public ResponseEntity<Map<String, Object>> getOccupiedRoomsInfo(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
-            Map<String, Integer> info = timetableSchedulingService.getOccupiedRoomsInfo();
+            Map<String, Integer> info = timetableSchedulingService
+                    .getOccupiedRoomsInfo(sessionRegistry.getOrCreate(sessionId));
 
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
@@ -208,11 +220,13 @@ public class RoomController {
     }
 
     @PostMapping("/reset")
-    public ResponseEntity<Map<String, Object>> resetOccupiedRooms() {
+    public ResponseEntity<Map<String, Object>> resetOccupiedRooms(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
-            Map<String, Integer> beforeInfo = timetableSchedulingService.getOccupiedRoomsInfo();
+            SchedulingSession session = sessionRegistry.getOrCreate(sessionId);
+            Map<String, Integer> beforeInfo = timetableSchedulingService.getOccupiedRoomsInfo(session);
 
-            timetableSchedulingService.resetOccupiedRooms();
+            timetableSchedulingService.resetOccupiedRooms(session);
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Đã reset phòng đã sử dụng! Tất cả phòng có thể sử dụng lại.");
@@ -230,8 +244,9 @@ public class RoomController {
 
     // Subject-Room Mapping endpoints
     @GetMapping("/subject-room-mappings")
-    public ResponseEntity<ApiResponse<Map<String, String>>> getSubjectRoomMappings() {
-        Map<String, String> mappings = subjectRoomMappingService.getAllMappings();
+    public ResponseEntity<ApiResponse<Map<String, String>>> getSubjectRoomMappings(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
+        Map<String, String> mappings = subjectRoomMappingService.getAllMappings(sessionId);
         return ResponseEntity.ok(ApiResponse.<Map<String, String>>builder()
                 .success(true)
                 .message("Lấy danh sách mapping môn-phòng thành công")
@@ -240,8 +255,9 @@ public class RoomController {
     }
 
     @DeleteMapping("/subject-room-mappings")
-    public ResponseEntity<ApiResponse<Void>> clearSubjectRoomMappings() {
-        subjectRoomMappingService.clearMappings();
+    public ResponseEntity<ApiResponse<Void>> clearSubjectRoomMappings(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
+        subjectRoomMappingService.clearMappings(sessionId);
         return ResponseEntity.ok(ApiResponse.<Void>builder()
                 .success(true)
                 .message("Xóa tất cả mapping môn-phòng thành công")
@@ -249,8 +265,9 @@ public class RoomController {
     }
 
     @DeleteMapping("/subject-room-mappings/{maMon}")
-    public ResponseEntity<ApiResponse<Void>> clearSubjectRoomMapping(@PathVariable String maMon) {
-        subjectRoomMappingService.clearSubject(maMon);
+    public ResponseEntity<ApiResponse<Void>> clearSubjectRoomMapping(@PathVariable String maMon,
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
+        subjectRoomMappingService.clearSubject(sessionId, maMon);
         return ResponseEntity.ok(ApiResponse.<Void>builder()
                 .success(true)
                 .message("Xóa mapping cho môn " + maMon + " thành công")
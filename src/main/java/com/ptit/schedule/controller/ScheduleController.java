@@ -1,24 +1,48 @@
 package com.ptit.schedule.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ptit.schedule.dto.ApiResponse;
+import com.ptit.schedule.dto.KeysetPage;
+import com.ptit.schedule.dto.RoomAvailabilityResponse;
+import com.ptit.schedule.dto.ScheduleConflictResponse;
+import com.ptit.schedule.dto.ScheduleDeleteResult;
+import com.ptit.schedule.dto.ScheduleSaveResult;
+import com.ptit.schedule.dto.ScheduleView;
 import com.ptit.schedule.entity.Schedule;
 import com.ptit.schedule.service.ScheduleService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/schedules")
 public class ScheduleController {
 
+    private static final int STREAM_FLUSH_ROWS = 500;
+
     @Autowired
     private ScheduleService scheduleService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Lưu TKB: trả về số dòng đã lưu và tốc độ. Nếu lỗi giữa chừng (500), savedIds là id các lịch mới
+     * đã lưu (theo thứ tự gửi lên); chỉ gửi lại các lịch còn lại để không bị lưu trùng
+     */
     @PostMapping("/save-batch")
-    public ResponseEntity<String> saveBatch(@RequestBody List<Schedule> schedules) {
-        scheduleService.saveAll(schedules);
-        return ResponseEntity.ok("Đã lưu TKB vào database!");
+    public ResponseEntity<ScheduleSaveResult> saveBatch(@RequestBody List<Schedule> schedules) {
+        ScheduleSaveResult result = scheduleService.saveAll(schedules);
+        return ResponseEntity.status(result.isComplete() ? 200 : 500).body(result);
     }
 
     @GetMapping
@@ -32,6 +56,54 @@ public class ScheduleController {
         }
     }
 
+    /**
+     * Phân trang theo khóa: trang đầu không cần afterId, trang sau dùng nextAfterId của trang trước
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPage<ScheduleView>> getSchedulePage(@RequestParam(required = false) Long afterId,
+                                                                    @RequestParam(required = false) Integer size,
+                                                                    @RequestParam(required = false) String subjectId,
+                                                                    @RequestParam(required = false) String major,
+                                                                    @RequestParam(required = false) String studentYear) {
+        return ResponseEntity.ok(scheduleService.getSchedulePage(afterId, size, subjectId, major, studentYear));
+    }
+
+    /**
+     * Xuất toàn bộ lịch (tùy chọn lọc) dạng JSON array, ghi dần từng dòng đọc từ database
+     * nên bộ nhớ server không tăng theo số lịch và client nhận dữ liệu ngay
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSchedules(@RequestParam(required = false) String subjectId,
+                                                                 @RequestParam(required = false) String major,
+                                                                 @RequestParam(required = false) String studentYear) {
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            int[] written = {0};
+            try {
+                scheduleService.streamSchedules(subjectId, major, studentYear, view -> {
+                    try {
+                        generator.writeObject(view);
+                        if (++written[0] % STREAM_FLUSH_ROWS == 1) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                log.warn("Schedule stream client disconnected after {} rows: {}", written[0], e.getMessage());
+                return;
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
     @GetMapping("/subject/{subjectId}")
     public ResponseEntity<List<Schedule>> getSchedulesBySubject(@PathVariable String subjectId) {
         List<Schedule> schedules = scheduleService.getSchedulesBySubjectId(subjectId);
@@ -50,15 +122,88 @@ public class ScheduleController {
         return ResponseEntity.ok(schedules);
     }
 
+    /**
+     * Xung đột phòng hiện tại giữa các lịch đã lưu (tùy chọn lọc theo phòng)
+     */
+    @GetMapping("/conflicts")
+    public ResponseEntity<List<ScheduleConflictResponse>> getConflicts(@RequestParam(required = false) String room) {
+        return ResponseEntity.ok(scheduleService.getConflicts(room));
+    }
+
+    /**
+     * Các lịch đang trùng phòng với một lịch
+     */
+    @GetMapping("/{id}/conflicts")
+    public ResponseEntity<List<ScheduleConflictResponse>> getConflictsOfSchedule(@PathVariable Long id) {
+        return ResponseEntity.ok(scheduleService.getConflictsOfSchedule(id));
+    }
+
+    /**
+     * Phòng còn trống ở (thứ, kíp) trong các tuần fromWeek..toWeek (mặc định cả kỳ) và các lịch đang giữ phòng
+     */
+    @GetMapping("/rooms/{roomNumber}/availability")
+    public ResponseEntity<ApiResponse<RoomAvailabilityResponse>> getRoomAvailability(
+            @PathVariable String roomNumber,
+            @RequestParam Integer dayOfWeek,
+            @RequestParam Integer sessionNumber,
+            @RequestParam(required = false) Integer fromWeek,
+            @RequestParam(required = false) Integer toWeek) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(
+                    scheduleService.getRoomAvailability(roomNumber, dayOfWeek, sessionNumber, fromWeek, toWeek),
+                    "Tình trạng phòng"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.badRequest(e.getMessage()));
+        }
+    }
+
+    /**
+     * Các phòng trong danh sách còn trống ở (thứ, kíp) trong mọi tuần fromWeek..toWeek, giữ thứ tự gửi lên
+     */
+    @GetMapping("/rooms/free")
+    public ResponseEntity<ApiResponse<List<String>>> getFreeRooms(
+            @RequestParam List<String> rooms,
+            @RequestParam Integer dayOfWeek,
+            @RequestParam Integer sessionNumber,
+            @RequestParam(required = false) Integer fromWeek,
+            @RequestParam(required = false) Integer toWeek) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(
+                    scheduleService.findFreeRooms(rooms, dayOfWeek, sessionNumber, fromWeek, toWeek),
+                    "Danh sách phòng trống"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.badRequest(e.getMessage()));
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteSchedule(@PathVariable Long id) {
-        scheduleService.deleteScheduleById(id);
-        return ResponseEntity.ok("Đã xóa lịch học!");
+        ScheduleDeleteResult result = scheduleService.deleteScheduleById(id);
+        return ResponseEntity.ok("Đã xóa lịch học! (" + result.getElapsedMs() + " ms)");
     }
 
     @DeleteMapping
     public ResponseEntity<String> deleteAllSchedules() {
-        scheduleService.deleteAllSchedules();
-        return ResponseEntity.ok("Đã xóa toàn bộ lịch học!");
+        ScheduleDeleteResult result = scheduleService.deleteAllSchedules();
+        return ResponseEntity.ok("Đã xóa toàn bộ lịch học! (" + result.getDeletedCount() + " lịch, "
+                + result.getElapsedMs() + " ms)");
+    }
+
+    @DeleteMapping("/major/{major}")
+    public ResponseEntity<ScheduleDeleteResult> deleteSchedulesByMajor(@PathVariable String major) {
+        return ResponseEntity.ok(scheduleService.deleteSchedulesByMajor(major));
+    }
+
+    @DeleteMapping("/student-year/{studentYear}")
+    public ResponseEntity<ScheduleDeleteResult> deleteSchedulesByStudentYear(@PathVariable String studentYear) {
+        return ResponseEntity.ok(scheduleService.deleteSchedulesByStudentYear(studentYear));
+    }
+
+    /**
+     * Xóa cả một học kỳ (trước khi xếp lại) bằng một câu DELETE
+     */
+    @DeleteMapping("/semester/{semester}")
+    public ResponseEntity<ScheduleDeleteResult> deleteSchedulesBySemester(@PathVariable String semester) {
+        return ResponseEntity.ok(scheduleService.deleteSchedulesBySemester(semester));
     }
 }
\ No newline at end of file
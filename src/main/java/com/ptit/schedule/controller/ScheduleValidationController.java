@@ -4,15 +4,18 @@ import com.ptit.schedule.dto.ApiResponse;
 import com.ptit.schedule.dto.ConflictResult;
 import com.ptit.schedule.dto.ScheduleEntry;
 import com.ptit.schedule.dto.ScheduleValidationResult;
-import com.ptit.schedule.service.ScheduleConflictDetectionService;
+import com.ptit.schedule.service.ScheduleAnalysis;
+import com.ptit.schedule.service.ScheduleAnalysisService;
 import com.ptit.schedule.service.ScheduleExcelReaderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -21,7 +24,7 @@ import java.util.List;
 public class ScheduleValidationController {
 
     private final ScheduleExcelReaderService excelReaderService;
-    private final ScheduleConflictDetectionService conflictDetectionService;
+    private final ScheduleAnalysisService scheduleAnalysisService;
 
     /**
      * API endpoint để validate file Excel format
@@ -58,27 +61,27 @@ public class ScheduleValidationController {
                 return ApiResponse.badRequest("Vui lòng chọn file Excel để upload");
             }
 
-            if (!excelReaderService.validateScheduleExcelFormat(file)) {
+            // Validate header + read schedule data + detect conflicts (một lượt đọc, cache theo hash)
+            ScheduleAnalysis analysis = scheduleAnalysisService.analyze(file);
+
+            if (!analysis.isValidFormat()) {
                 return ApiResponse.badRequest("File không đúng định dạng thời khóa biểu. Vui lòng kiểm tra lại file Excel.");
             }
 
-            // Read schedule data
-            List<ScheduleEntry> scheduleEntries = excelReaderService.readScheduleFromExcel(file);
+            List<ScheduleEntry> scheduleEntries = analysis.getEntries();
             
             if (scheduleEntries.isEmpty()) {
                 return ApiResponse.badRequest("Không tìm thấy dữ liệu thời khóa biểu trong file. Vui lòng kiểm tra lại.");
             }
 
-            // Detect conflicts
-            ConflictResult conflictResult = conflictDetectionService.detectConflicts(scheduleEntries);
-
             // Prepare result
             ScheduleValidationResult result = ScheduleValidationResult.builder()
-                    .conflictResult(conflictResult)
+                    .conflictResult(analysis.getConflictResult())
                     .scheduleEntries(scheduleEntries)
                     .fileName(file.getOriginalFilename())
                     .totalEntries(scheduleEntries.size())
                     .fileSize(file.getSize())
+                    .contentHash(analysis.getContentHash())
                     .build();
 
             return ApiResponse.success(result, "Phân tích thành công");
@@ -90,19 +93,61 @@ public class ScheduleValidationController {
     }
 
     /**
-     * API endpoint để lấy chi tiết xung đột cụ thể
+     * API endpoint để lấy chi tiết xung đột cụ thể (room | teacher) của file đã phân tích,
+     * lấy từ cache theo hash (contentHash trả về từ /analyze, bắt buộc), không đọc lại file
      */
     @GetMapping("/conflicts/{type}")
-    public ApiResponse<Object> getConflictDetails(@PathVariable String type,
-                                                  @RequestParam(required = false) String room,
-                                                  @RequestParam(required = false) String teacherId) {
+    public ResponseEntity<ApiResponse<Object>> getConflictDetails(@PathVariable String type,
+                                                                  @RequestParam(required = false) String room,
+                                                                  @RequestParam(required = false) String teacherId,
+                                                                  @RequestParam(required = false) String hash) {
+        ApiResponse<Object> response = findConflictDetails(type, room, teacherId, hash);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    private ApiResponse<Object> findConflictDetails(String type, String room, String teacherId, String hash) {
+        // Mỗi người dùng xem đúng file của mình: không có hash thì không đoán "file gần nhất"
+        if (hash == null || hash.isBlank()) {
+            return ApiResponse.badRequest("Thiếu tham số hash (contentHash trả về từ /analyze)");
+        }
         try {
-            // This endpoint could be extended to provide detailed analysis
-            // for specific conflicts if needed
-            return ApiResponse.success(null, "Endpoint for future detailed conflict analysis");
+            ScheduleAnalysis analysis = scheduleAnalysisService.getAnalysis(hash);
+            if (analysis == null || analysis.getConflictResult() == null) {
+                return ApiResponse.notFound("Không tìm thấy kết quả phân tích. Vui lòng upload lại file thời khóa biểu.");
+            }
+            ConflictResult conflictResult = analysis.getConflictResult();
+
+            switch (type.toLowerCase()) {
+                case "room": {
+                    List<ConflictResult.RoomConflict> conflicts = conflictResult.getRoomConflicts().stream()
+                            .filter(c -> room == null || room.isBlank() || matchesRoom(c.getRoom(), room))
+                            .collect(Collectors.toList());
+                    return ApiResponse.success(conflicts, "Tìm thấy " + conflicts.size() + " xung đột phòng");
+                }
+                case "teacher": {
+                    List<ConflictResult.TeacherConflict> conflicts = conflictResult.getTeacherConflicts().stream()
+                            .filter(c -> teacherId == null || teacherId.isBlank() || teacherId.trim().equals(c.getTeacherId()))
+                            .collect(Collectors.toList());
+                    return ApiResponse.success(conflicts, "Tìm thấy " + conflicts.size() + " xung đột giảng viên");
+                }
+                default:
+                    return ApiResponse.badRequest("Loại xung đột không hợp lệ: " + type + " (room | teacher)");
+            }
         } catch (Exception e) {
             log.error("Error getting conflict details", e);
             return ApiResponse.error("Lỗi khi lấy chi tiết xung đột: " + e.getMessage(), 400);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Room của xung đột là "phòng - tòa", cho phép lọc theo cả chuỗi hoặc chỉ mã phòng
+     */
+    private static boolean matchesRoom(String conflictRoom, String room) {
+        if (conflictRoom == null) {
+            return false;
+        }
+        String wanted = room.trim();
+        return conflictRoom.equalsIgnoreCase(wanted)
+                || conflictRoom.toLowerCase().startsWith(wanted.toLowerCase() + " - ");
+    }
+}
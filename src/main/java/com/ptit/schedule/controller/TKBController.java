@@ -1,18 +1,29 @@
 package com.ptit.schedule.controller;
 
 import com.ptit.schedule.dto.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ptit.schedule.service.BatchStreamWriter;
+import com.ptit.schedule.service.GenerationJob;
+import com.ptit.schedule.service.GenerationJobService;
+import com.ptit.schedule.service.SchedulingSession;
+import com.ptit.schedule.service.SchedulingSessionRegistry;
 import com.ptit.schedule.service.TimetableSchedulingService;
 import com.ptit.schedule.service.DataLoaderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/tkb")
@@ -23,17 +34,22 @@ public class TKBController {
 
     private final TimetableSchedulingService timetableSchedulingService;
     private final DataLoaderService dataLoaderService;
+    private final SchedulingSessionRegistry sessionRegistry;
+    private final GenerationJobService generationJobService;
+    private final ObjectMapper objectMapper;
 
     @Operation(summary = "Generate TKB for single subject", description = "Tạo thời khóa biểu cho một môn học")
     @PostMapping("/generate")
-    public ResponseEntity<ApiResponse<TKBBatchResponse>> generateTKB(@RequestBody TKBRequest request) {
+    public ResponseEntity<ApiResponse<TKBBatchResponse>> generateTKB(@RequestBody TKBRequest request,
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
             log.info("Generating TKB for subject: {}", request.getSubjectName());
             // Convert single request to batch for unified processing
             TKBBatchRequest batchRequest = TKBBatchRequest.builder()
                     .items(Collections.singletonList(request))
                     .build();
-            TKBBatchResponse response = timetableSchedulingService.simulateExcelFlowBatch(batchRequest);
+            TKBBatchResponse response = timetableSchedulingService.simulateExcelFlowBatch(batchRequest,
+                    sessionRegistry.getOrCreate(sessionId));
             return ResponseEntity.ok(ApiResponse.success(response));
         } catch (Exception e) {
             log.error("Error generating TKB: {}", e.getMessage(), e);
@@ -44,10 +60,12 @@ public class TKBController {
 
     @Operation(summary = "Generate TKB for batch subjects", description = "Tạo thời khóa biểu cho nhiều môn học")
     @PostMapping("/generate-batch")
-    public ResponseEntity<TKBBatchResponse> generateTKBBatch(@RequestBody TKBBatchRequest request) {
+    public ResponseEntity<TKBBatchResponse> generateTKBBatch(@RequestBody TKBBatchRequest request,
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
-            log.info("Generating TKB batch with {} items", request.getItems().size());
-            TKBBatchResponse response = timetableSchedulingService.simulateExcelFlowBatch(request);
+            SchedulingSession session = sessionRegistry.getOrCreate(sessionId);
+            log.info("Generating TKB batch with {} items (session {})", request.getItems().size(), session.getId());
+            TKBBatchResponse response = timetableSchedulingService.simulateExcelFlowBatch(request, session);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error generating TKB batch: {}", e.getMessage(), e);
@@ -62,6 +80,109 @@ public class TKBController {
         }
     }
 
+    @Operation(summary = "Generate TKB batch (streaming)", description = "Tạo thời khóa biểu, trả từng môn dạng NDJSON ngay khi xếp xong, dòng cuối là summary")
+    @PostMapping(value = "/generate-batch/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> generateTKBBatchStream(@RequestBody TKBBatchRequest request,
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
+        SchedulingSession session = sessionRegistry.getOrCreate(sessionId);
+        log.info("Streaming TKB batch with {} items (session {})", request.getItems().size(), session.getId());
+
+        StreamingResponseBody body = out -> {
+            BatchStreamWriter writer = new BatchStreamWriter(objectMapper, out);
+            TKBBatchResponse summary;
+            try {
+                summary = timetableSchedulingService.streamExcelFlowBatch(request, session, writer);
+            } catch (CancellationException e) {
+                return; // Client disconnected
+            }
+            writer.writeSummary(summary);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    @Operation(summary = "Submit TKB batch job", description = "Tạo thời khóa biểu chạy nền, trả về jobId để theo dõi")
+    @PostMapping("/jobs")
+    public ResponseEntity<ApiResponse<GenerationJobStatus>> submitJob(@RequestBody TKBBatchRequest request,
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            return ResponseEntity.badRequest().body(ApiResponse.badRequest("Danh sách môn học không được để trống"));
+        }
+        try {
+            GenerationJob job = generationJobService.submit(request, sessionId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(job.toStatus(), "Đã tạo job xếp TKB"));
+        } catch (RejectedExecutionException e) {
+            log.warn("Generation job queue is full");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ApiResponse.error("Hàng đợi xếp TKB đang đầy, vui lòng thử lại sau", 503));
+        }
+    }
+
+    @Operation(summary = "Get TKB job status", description = "Tiến độ job: số môn đã xử lý, số dòng, thời gian còn lại")
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<GenerationJobStatus>> getJobStatus(@PathVariable String jobId) {
+        return generationJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(ApiResponse.success(job.toStatus())))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.notFound("Không tìm thấy job " + jobId)));
+    }
+
+    @Operation(summary = "Cancel TKB job", description = "Hủy job xếp TKB, kết quả dở dang của phiên bị bỏ")
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<ApiResponse<GenerationJobStatus>> cancelJob(@PathVariable String jobId) {
+        return generationJobService.cancel(jobId)
+                .map(job -> ResponseEntity.ok(ApiResponse.success(job.toStatus(), "Đã yêu cầu hủy job")))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.notFound("Không tìm thấy job " + jobId)));
+    }
+
+    @Operation(summary = "Get TKB job result", description = "Lấy kết quả của job đã hoàn thành")
+    @GetMapping("/jobs/{jobId}/result")
+    public ResponseEntity<TKBBatchResponse> getJobResult(@PathVariable String jobId) {
+        GenerationJob job = generationJobService.find(jobId).orElse(null);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(TKBBatchResponse.builder()
+                    .items(Collections.emptyList())
+                    .error("Không tìm thấy job " + jobId)
+                    .build());
+        }
+        if (job.getResult() == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(TKBBatchResponse.builder()
+                    .items(Collections.emptyList())
+                    .error("Job " + jobId + " chưa có kết quả (trạng thái " + job.getStatus() + ")")
+                    .build());
+        }
+        return ResponseEntity.ok(job.getResult());
+    }
+
+    @Operation(summary = "Open scheduling session", description = "Tạo phiên xếp TKB mới, gửi sessionId qua header X-Session-Id")
+    @PostMapping("/sessions")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> openSession() {
+        SchedulingSession session = sessionRegistry.create();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sessionId", session.getId());
+        result.put("header", SchedulingSessionRegistry.SESSION_HEADER);
+
+        return ResponseEntity.ok(ApiResponse.<Map<String, Object>>builder()
+                .success(true)
+                .message("Tạo phiên xếp TKB thành công")
+                .data(result)
+                .build());
+    }
+
+    @Operation(summary = "Close scheduling session", description = "Đóng phiên xếp TKB, bỏ kết quả chưa lưu")
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<ApiResponse<Void>> closeSession(@PathVariable String sessionId) {
+        boolean removed = sessionRegistry.remove(sessionId);
+        return ResponseEntity.ok(ApiResponse.<Void>builder()
+                .success(removed)
+                .message(removed ? "Đã đóng phiên xếp TKB" : "Không tìm thấy phiên " + sessionId)
+                .build());
+    }
+
     @Operation(summary = "Health check", description = "Kiểm tra trạng thái TKB controller")
     @GetMapping("/health")
     public ResponseEntity<String> health() {
@@ -73,12 +194,13 @@ public class TKBController {
     public ResponseEntity<Map<String, Object>> testData() {
         try {
             log.info("Testing data loading...");
-            var templateData = dataLoaderService.loadTemplateData();
-            log.info("Loaded {} template rows", templateData.size());
+            var templates = dataLoaderService.getTemplateSnapshot();
+            log.info("Loaded {} template rows (version {})", templates.getRows().size(), templates.getSourceHash());
 
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
-            response.put("template_rows_count", templateData.size());
+            response.put("template_rows_count", templates.getRows().size());
+            response.put("template_version", templates.getSourceHash());
             response.put("message", "Data loaded successfully");
 
             return ResponseEntity.ok(response);
@@ -111,9 +233,10 @@ public class TKBController {
 
     @Operation(summary = "Reset lastSlotIdx", description = "Reset lastSlotIdx về -1 và lưu vào file")
     @PostMapping("/reset-last-slot-idx")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> resetLastSlotIdx() {
+    public ResponseEntity<ApiResponse<Map<String, Object>>> resetLastSlotIdx(
+            @RequestHeader(value = SchedulingSessionRegistry.SESSION_HEADER, required = false) String sessionId) {
         try {
-            timetableSchedulingService.resetLastSlotIdx();
+            timetableSchedulingService.resetLastSlotIdx(sessionRegistry.getOrCreate(sessionId));
 
             Map<String, Object> result = new HashMap<>();
             result.put("lastSlotIdx", -1);
@@ -0,0 +1,31 @@
+package com.ptit.schedule.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Status of an asynchronous generate-batch job
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GenerationJobStatus {
+    private String jobId;
+    private String sessionId;
+    private String status; // QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    private Integer totalSubjects;
+    private Integer subjectsProcessed;
+    private Integer rowsEmitted;
+    private Long etaSeconds; // Estimated remaining time, only while RUNNING
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
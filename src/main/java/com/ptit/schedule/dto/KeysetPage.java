@@ -0,0 +1,22 @@
+package com.ptit.schedule.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Một trang phân trang theo khóa: trang sau lấy với afterId = nextAfterId
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPage<T> {
+    private List<T> items;
+    private int size;
+    private Long nextAfterId; // null khi đã hết dữ liệu
+    private boolean hasNext;
+}
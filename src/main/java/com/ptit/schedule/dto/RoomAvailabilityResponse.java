@@ -0,0 +1,26 @@
+package com.ptit.schedule.dto;
+
+import com.ptit.schedule.entity.Schedule;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Tình trạng một phòng ở (thứ, kíp) trong các tuần được hỏi, tính trên các lịch đã lưu
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomAvailabilityResponse {
+    private String roomNumber;
+    private Integer dayOfWeek;
+    private Integer sessionNumber;
+    private List<Integer> requestedWeeks;
+    private List<Integer> freeWeeks;      // Các tuần được hỏi mà phòng còn trống
+    private boolean free;                 // Trống trong tất cả các tuần được hỏi
+    private List<Schedule> occupiedBy;    // Các lịch đang giữ phòng trong các tuần được hỏi
+}
@@ -0,0 +1,41 @@
+package com.ptit.schedule.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Hai lịch học đã lưu (bảng schedules) dùng chung phòng vào cùng thứ, cùng tiết, cùng tuần
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleConflictResponse {
+
+    private String roomNumber;
+    private Integer dayOfWeek;
+    private List<Integer> periods;   // Các tiết bị trùng
+    private List<Integer> weeks;     // Các tuần bị trùng
+    private ScheduleSummary first;
+    private ScheduleSummary second;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ScheduleSummary {
+        private Long id;
+        private String subjectId;
+        private String subjectName;
+        private Integer classNumber;
+        private String major;
+        private String studentYear;
+        private Integer sessionNumber;
+        private Integer startPeriod;
+        private Integer periodLength;
+    }
+}
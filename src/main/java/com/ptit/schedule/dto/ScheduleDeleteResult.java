@@ -0,0 +1,16 @@
+package com.ptit.schedule.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleDeleteResult {
+    private String scope;       // "id=12", "all", "major=...", "studentYear=...", "semester=..."
+    private int deletedCount;   // Số lịch đã xóa
+    private long elapsedMs;     // Thời gian chạy câu DELETE (ms)
+}
@@ -0,0 +1,23 @@
+package com.ptit.schedule.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleSaveResult {
+    private int requested;          // Số lịch gửi lên
+    private int inserted;           // Số lịch mới (chưa có id) đã lưu
+    private int updated;            // Số lịch đã có id được cập nhật
+    private long elapsedMs;
+    private long rowsPerSecond;
+    private boolean complete;       // false = lỗi giữa chừng, chỉ một phần đã lưu
+    private List<Long> savedIds;    // Khi lỗi: id các lịch mới đã lưu, theo thứ tự gửi lên (gửi lại phần còn lại)
+    private String error;
+}
@@ -20,6 +20,7 @@ public class ScheduleValidationResult {
     private String fileName;
     private int totalEntries;
     private long fileSize;
+    private String contentHash; // SHA-256 của file, dùng cho /conflicts/{type}?hash=
     
     // Computed properties for easier frontend handling
     public boolean hasConflicts() {
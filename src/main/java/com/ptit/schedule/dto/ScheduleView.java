@@ -0,0 +1,40 @@
+package com.ptit.schedule.dto;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ptit.schedule.entity.WeekSet;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Projection đọc của Schedule (không qua persistence context), JSON giống hệt entity Schedule
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleView {
+    private Long id;
+    private Integer classNumber;
+    private String subjectId;
+    private String subjectName;
+    private String studentYear;
+    private String major;
+    private String specialSystem;
+    private Integer dayOfWeek;
+    private Integer sessionNumber;
+    private Integer startPeriod;
+    private Integer periodLength;
+    private String roomNumber;
+    private String semester;
+
+    @JsonIgnore
+    private WeekSet weeks;
+
+    @JsonAnyGetter
+    public Map<String, String> getWeekColumns() {
+        return (weeks != null ? weeks : WeekSet.EMPTY).toWeekColumns();
+    }
+}
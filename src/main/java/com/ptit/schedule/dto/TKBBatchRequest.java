@@ -18,5 +18,8 @@ public class TKBBatchRequest {
     @NotNull(message = "Items list is required")
     @NotEmpty(message = "Items list cannot be empty")
     private List<TKBRequest> items;
+
+    // Generate independent major clusters in parallel (default: sequential)
+    private Boolean parallel;
 }
 
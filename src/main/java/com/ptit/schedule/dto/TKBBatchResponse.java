@@ -20,6 +20,7 @@ public class TKBBatchResponse {
     private Integer totalClasses; // Total number of classes (subjects) successfully generated
     private Integer lastSlotIdx;
     private Integer occupiedRoomsCount; // Count of rooms used in this batch
+    private String templateVersion; // Template snapshot (real.json content hash) that produced this batch
     private String note;
     private String error;
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.ptit.schedule.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the streamed generate-batch response (NDJSON):
+ * an "item" per generated subject, then a single "summary" (items not repeated)
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TKBBatchStreamRecord {
+    public static final String TYPE_ITEM = "item";
+    public static final String TYPE_SUMMARY = "summary";
+
+    private String type;
+    private TKBBatchItemResponse item;
+    private TKBBatchResponse summary;
+}
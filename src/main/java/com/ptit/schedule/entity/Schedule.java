@@ -1,19 +1,29 @@
 package com.ptit.schedule.entity;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Entity
-@Table(name = "schedules")
+@Table(name = "schedules", indexes = {
+        @Index(name = "idx_schedules_room_day_session", columnList = "room_number, day_of_week, session_number"),
+        @Index(name = "idx_schedules_semester", columnList = "semester")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Schedule {
 
+    private static final String WEEK_PROPERTY = "week";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -51,41 +61,34 @@ public class Schedule {
     @Column(name = "room_number")
     private String roomNumber; // Mã phòng
 
-    // Tuần 1 đến tuần 18: mỗi tuần là một cột kiểu String (lưu "x" hoặc "")
-    @Column(name = "week_1")
-    private String week1;
-    @Column(name = "week_2")
-    private String week2;
-    @Column(name = "week_3")
-    private String week3;
-    @Column(name = "week_4")
-    private String week4;
-    @Column(name = "week_5")
-    private String week5;
-    @Column(name = "week_6")
-    private String week6;
-    @Column(name = "week_7")
-    private String week7;
-    @Column(name = "week_8")
-    private String week8;
-    @Column(name = "week_9")
-    private String week9;
-    @Column(name = "week_10")
-    private String week10;
-    @Column(name = "week_11")
-    private String week11;
-    @Column(name = "week_12")
-    private String week12;
-    @Column(name = "week_13")
-    private String week13;
-    @Column(name = "week_14")
-    private String week14;
-    @Column(name = "week_15")
-    private String week15;
-    @Column(name = "week_16")
-    private String week16;
-    @Column(name = "week_17")
-    private String week17;
-    @Column(name = "week_18")
-    private String week18;
-}
\ No newline at end of file
+    @Column(name = "semester", length = 20)
+    private String semester; // Học kỳ / phiên bản TKB, ví dụ "2025-2026-1"
+
+    // Tuần 1 đến tuần 18: một cột bitmask (bit w-1 = tuần w có học), thay cho 18 cột week_1..week_18
+    @Convert(converter = WeekSetConverter.class)
+    @Column(name = "week_mask", nullable = false)
+    @JsonIgnore
+    @Builder.Default
+    private WeekSet weeks = WeekSet.EMPTY;
+
+    /**
+     * JSON vẫn giữ dạng week1..week18 = "x" | "" như trước
+     */
+    @JsonAnyGetter
+    public Map<String, String> getWeekColumns() {
+        return (weeks != null ? weeks : WeekSet.EMPTY).toWeekColumns();
+    }
+
+    @JsonAnySetter
+    public void setWeekColumn(String name, Object value) {
+        if (!name.startsWith(WEEK_PROPERTY)) {
+            return;
+        }
+        String suffix = name.substring(WEEK_PROPERTY.length());
+        if (suffix.isEmpty() || suffix.length() > 2 || !suffix.chars().allMatch(Character::isDigit)) {
+            return;
+        }
+        boolean teaching = value != null && value.toString().trim().equalsIgnoreCase("x");
+        weeks = (weeks != null ? weeks : WeekSet.EMPTY).with(Integer.parseInt(suffix), teaching);
+    }
+}
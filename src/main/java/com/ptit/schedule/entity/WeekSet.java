@@ -0,0 +1,107 @@
+package com.ptit.schedule.entity;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Các tuần học (1-18) của một lịch, lưu thành bitmask: bit w-1 = tuần w có học ("x").
+ * Bất biến, lưu vào một cột INT qua {@link WeekSetConverter}.
+ */
+public final class WeekSet implements Serializable {
+
+    public static final int WEEKS = 18;
+    public static final int ALL_WEEKS_MASK = (1 << WEEKS) - 1;
+
+    public static final WeekSet EMPTY = new WeekSet(0);
+
+    private final int mask;
+
+    private WeekSet(int mask) {
+        this.mask = mask;
+    }
+
+    public static WeekSet ofMask(int mask) {
+        int weeks = mask & ALL_WEEKS_MASK;
+        return weeks == 0 ? EMPTY : new WeekSet(weeks);
+    }
+
+    /**
+     * Các tuần from..to (tính cả hai đầu), ví dụ range(5, 9) = tuần 5-9
+     */
+    public static WeekSet range(int from, int to) {
+        int start = Math.max(from, 1);
+        int end = Math.min(to, WEEKS);
+        if (start > end) {
+            return EMPTY;
+        }
+        return ofMask(((1 << (end - start + 1)) - 1) << (start - 1));
+    }
+
+    public int mask() {
+        return mask;
+    }
+
+    public boolean contains(int week) {
+        return week >= 1 && week <= WEEKS && (mask & (1 << (week - 1))) != 0;
+    }
+
+    public WeekSet with(int week, boolean teaching) {
+        if (week < 1 || week > WEEKS) {
+            return this;
+        }
+        int bit = 1 << (week - 1);
+        return ofMask(teaching ? mask | bit : mask & ~bit);
+    }
+
+    public boolean intersects(WeekSet other) {
+        return other != null && (mask & other.mask) != 0;
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    /**
+     * Số tuần có học, tăng dần
+     */
+    public List<Integer> weeks() {
+        List<Integer> weeks = new ArrayList<>(size());
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            weeks.add(Integer.numberOfTrailingZeros(rest) + 1);
+        }
+        return weeks;
+    }
+
+    /**
+     * Dạng JSON cũ của lịch: week1..week18 = "x" | ""
+     */
+    public Map<String, String> toWeekColumns() {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (int week = 1; week <= WEEKS; week++) {
+            columns.put("week" + week, contains(week) ? "x" : "");
+        }
+        return columns;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof WeekSet other && mask == other.mask);
+    }
+
+    @Override
+    public int hashCode() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return weeks().toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.ptit.schedule.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * WeekSet <-> cột week_mask (INT). WeekSet bất biến nên Hibernate so sánh dirty theo equals, không cần copy.
+ */
+@Converter(autoApply = true)
+@Immutable
+public class WeekSetConverter implements AttributeConverter<WeekSet, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(WeekSet weeks) {
+        return weeks == null ? 0 : weeks.mask();
+    }
+
+    @Override
+    public WeekSet convertToEntityAttribute(Integer mask) {
+        return mask == null ? WeekSet.EMPTY : WeekSet.ofMask(mask);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ptit.schedule.exception;
+
+import java.util.List;
+
+/**
+ * A bulk insert stopped part way: the chunks before the failing one are committed.
+ * savedIds are the ids of those rows, in input order (they are the first savedIds.size() rows),
+ * so a retry can send only the rest.
+ */
+public class BulkInsertException extends RuntimeException {
+
+    private final List<Long> savedIds;
+
+    public BulkInsertException(String message, List<Long> savedIds, Throwable cause) {
+        super(message, cause);
+        this.savedIds = List.copyOf(savedIds);
+    }
+
+    public List<Long> getSavedIds() {
+        return savedIds;
+    }
+}
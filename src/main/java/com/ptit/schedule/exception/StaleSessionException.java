@@ -0,0 +1,13 @@
+package com.ptit.schedule.exception;
+
+/**
+ * A session's generated result no longer fits the global (confirmed) occupancy:
+ * another session committed or the global state was reset since it was generated.
+ * The user has to regenerate before saving.
+ */
+public class StaleSessionException extends RuntimeException {
+
+    public StaleSessionException(String message) {
+        super(message);
+    }
+}
@@ -1,11 +1,155 @@
 package com.ptit.schedule.repository;
 
+import com.ptit.schedule.dto.ScheduleView;
 import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.entity.WeekSet;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
     List<Schedule> findBySubjectId(String subjectId);
     List<Schedule> findByMajor(String major);
     List<Schedule> findByStudentYear(String studentYear);
-}
\ No newline at end of file
+
+    // Đọc dạng projection ScheduleView, lọc tùy chọn theo môn / ngành / khóa (null = bỏ qua)
+
+    /**
+     * Trang theo khóa: các lịch có id > afterId, tăng dần theo id (range scan trên khóa chính)
+     */
+    @Query("""
+            SELECT new com.ptit.schedule.dto.ScheduleView(
+                s.id, s.classNumber, s.subjectId, s.subjectName, s.studentYear, s.major, s.specialSystem,
+                s.dayOfWeek, s.sessionNumber, s.startPeriod, s.periodLength, s.roomNumber, s.semester, s.weeks)
+            FROM Schedule s
+            WHERE s.id > :afterId
+              AND (:subjectId IS NULL OR s.subjectId = :subjectId)
+              AND (:major IS NULL OR s.major = :major)
+              AND (:studentYear IS NULL OR s.studentYear = :studentYear)
+            ORDER BY s.id
+            """)
+    List<ScheduleView> findViewsAfter(@Param("afterId") long afterId,
+                                      @Param("subjectId") String subjectId,
+                                      @Param("major") String major,
+                                      @Param("studentYear") String studentYear,
+                                      Limit limit);
+
+    /**
+     * Đọc tuần tự toàn bộ kết quả; phải dùng trong transaction và đóng stream sau khi đọc.
+     * Fetch size Integer.MIN_VALUE = MySQL Connector/J trả từng dòng thay vì nạp cả result set.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT new com.ptit.schedule.dto.ScheduleView(
+                s.id, s.classNumber, s.subjectId, s.subjectName, s.studentYear, s.major, s.specialSystem,
+                s.dayOfWeek, s.sessionNumber, s.startPeriod, s.periodLength, s.roomNumber, s.semester, s.weeks)
+            FROM Schedule s
+            WHERE (:subjectId IS NULL OR s.subjectId = :subjectId)
+              AND (:major IS NULL OR s.major = :major)
+              AND (:studentYear IS NULL OR s.studentYear = :studentYear)
+            ORDER BY s.id
+            """)
+    Stream<ScheduleView> streamViews(@Param("subjectId") String subjectId,
+                                     @Param("major") String major,
+                                     @Param("studentYear") String studentYear);
+
+    // Xóa theo tập (một câu DELETE, không nạp entity), trả về số dòng đã xóa.
+    // findIdsBy... đọc kèm khóa (SELECT ... FOR UPDATE) trong cùng transaction với câu DELETE:
+    // các dòng đã đọc không thể bị sửa/xóa trước khi DELETE chạy, nên DELETE xóa ít nhất các id này
+
+    @Modifying
+    @Query("DELETE FROM Schedule s WHERE s.id = :id")
+    int deleteScheduleById(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM Schedule s")
+    int deleteAllSchedules();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s.id FROM Schedule s WHERE s.major = :major")
+    List<Long> findIdsByMajor(@Param("major") String major);
+
+    @Modifying
+    @Query("DELETE FROM Schedule s WHERE s.major = :major")
+    int deleteSchedulesByMajor(@Param("major") String major);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s.id FROM Schedule s WHERE s.studentYear = :studentYear")
+    List<Long> findIdsByStudentYear(@Param("studentYear") String studentYear);
+
+    @Modifying
+    @Query("DELETE FROM Schedule s WHERE s.studentYear = :studentYear")
+    int deleteSchedulesByStudentYear(@Param("studentYear") String studentYear);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s.id FROM Schedule s WHERE s.semester = :semester")
+    List<Long> findIdsBySemester(@Param("semester") String semester);
+
+    @Modifying
+    @Query("DELETE FROM Schedule s WHERE s.semester = :semester")
+    int deleteSchedulesBySemester(@Param("semester") String semester);
+
+    // Các truy vấn chỗ trống dưới đây đi theo index (room_number, day_of_week, session_number),
+    // tuần được so bằng phép AND trên week_mask
+
+    /**
+     * Các lịch đang dùng phòng ở (thứ, kíp) trong ít nhất một tuần của weekMask
+     */
+    @Query(value = """
+            SELECT * FROM schedules
+            WHERE room_number = :roomNumber AND day_of_week = :dayOfWeek AND session_number = :sessionNumber
+              AND (week_mask & :weekMask) <> 0
+            """, nativeQuery = true)
+    List<Schedule> findOccupying(@Param("roomNumber") String roomNumber,
+                                 @Param("dayOfWeek") Integer dayOfWeek,
+                                 @Param("sessionNumber") Integer sessionNumber,
+                                 @Param("weekMask") int weekMask);
+
+    /**
+     * Các tuần phòng đã có lịch ở (thứ, kíp), gộp bằng BIT_OR (0 nếu phòng trống cả kỳ)
+     */
+    @Query(value = """
+            SELECT CAST(COALESCE(BIT_OR(week_mask), 0) AS SIGNED) FROM schedules
+            WHERE room_number = :roomNumber AND day_of_week = :dayOfWeek AND session_number = :sessionNumber
+            """, nativeQuery = true)
+    Long findOccupiedWeekMask(@Param("roomNumber") String roomNumber,
+                              @Param("dayOfWeek") Integer dayOfWeek,
+                              @Param("sessionNumber") Integer sessionNumber);
+
+    /**
+     * Các phòng trong danh sách đã kín ít nhất một tuần của weekMask ở (thứ, kíp)
+     */
+    @Query(value = """
+            SELECT DISTINCT room_number FROM schedules
+            WHERE room_number IN (:roomNumbers) AND day_of_week = :dayOfWeek AND session_number = :sessionNumber
+              AND (week_mask & :weekMask) <> 0
+            """, nativeQuery = true)
+    List<String> findOccupiedRooms(@Param("roomNumbers") Collection<String> roomNumbers,
+                                   @Param("dayOfWeek") Integer dayOfWeek,
+                                   @Param("sessionNumber") Integer sessionNumber,
+                                   @Param("weekMask") int weekMask);
+
+    /**
+     * Các tuần trong weeks mà phòng còn trống ở (thứ, kíp)
+     */
+    default WeekSet findFreeWeeks(String roomNumber, Integer dayOfWeek, Integer sessionNumber, WeekSet weeks) {
+        Long occupied = findOccupiedWeekMask(roomNumber, dayOfWeek, sessionNumber);
+        return occupied == null ? weeks : WeekSet.ofMask(weeks.mask() & ~occupied.intValue());
+    }
+}
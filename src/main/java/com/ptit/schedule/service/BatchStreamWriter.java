@@ -0,0 +1,67 @@
+package com.ptit.schedule.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ptit.schedule.dto.TKBBatchItemResponse;
+import com.ptit.schedule.dto.TKBBatchResponse;
+import com.ptit.schedule.dto.TKBBatchStreamRecord;
+import com.ptit.schedule.dto.TKBRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes generate-batch results as NDJSON while the batch runs: one line per subject
+ * as soon as it is generated, then a summary line. If the client goes away the
+ * generation is cancelled at the next subject.
+ */
+@Slf4j
+public class BatchStreamWriter implements GenerationListener {
+
+    private final ObjectMapper objectMapper;
+    private final OutputStream out;
+    private volatile boolean clientGone;
+
+    public BatchStreamWriter(ObjectMapper objectMapper, OutputStream out) {
+        // Do not let Jackson close the response stream after each line
+        this.objectMapper = objectMapper.copy().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.out = out;
+    }
+
+    @Override
+    public void onSubject(TKBRequest request, TKBBatchItemResponse item) {
+        if (item != null) {
+            write(TKBBatchStreamRecord.builder()
+                    .type(TKBBatchStreamRecord.TYPE_ITEM)
+                    .item(item)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return clientGone;
+    }
+
+    public void writeSummary(TKBBatchResponse summary) {
+        write(TKBBatchStreamRecord.builder()
+                .type(TKBBatchStreamRecord.TYPE_SUMMARY)
+                .summary(summary)
+                .build());
+    }
+
+    private void write(TKBBatchStreamRecord record) {
+        if (clientGone) {
+            return;
+        }
+        try {
+            objectMapper.writeValue(out, record);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Stream client disconnected: {}", e.getMessage());
+            clientGone = true;
+        }
+    }
+}
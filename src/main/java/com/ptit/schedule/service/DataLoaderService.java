@@ -1,63 +1,164 @@
 package com.ptit.schedule.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
 public class DataLoaderService {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private List<TKBTemplateRow> templateData = null;
+
+    @Value("${tkb.data-dir:./data}")
+    private String dataDir;
+
+    // Current template version; generations keep the snapshot they started with
+    private final AtomicReference<TemplateSnapshot> currentTemplates = new AtomicReference<>();
+    private final Object templateLoadLock = new Object();
 
     public List<TKBTemplateRow> loadTemplateData() {
-        if (templateData != null) {
-            log.info("Returning cached template data: {} rows", templateData.size());
-            return templateData;
+        return getTemplateSnapshot().getRows();
+    }
+
+    /**
+     * Current template snapshot, loaded from real.json on first use
+     */
+    public TemplateSnapshot getTemplateSnapshot() {
+        TemplateSnapshot snapshot = currentTemplates.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (templateLoadLock) {
+            snapshot = currentTemplates.get();
+            if (snapshot != null) {
+                return snapshot;
+            }
+            try {
+                log.info("Loading template data from real.json...");
+                snapshot = loadTemplateSnapshot(new ClassPathResource("real.json"));
+                currentTemplates.set(snapshot);
+                return snapshot;
+
+            } catch (Exception e) {
+                // Not cached: the next call tries again
+                log.error("Error loading template data from real.json: {}", e.getMessage(), e);
+                return TemplateSnapshot.empty();
+            }
+        }
+    }
+
+    /**
+     * Build a new snapshot from real.json (not published yet). The content is hashed in a
+     * first streaming pass; the JSON is only parsed if there is no sidecar for that hash.
+     */
+    private TemplateSnapshot loadTemplateSnapshot(Resource json) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(json.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
         }
+        byte[] hash = digest.digest();
 
+        // Binary sidecar of this exact real.json content: memory-map it instead of parsing JSON
+        Path sidecar = templateSidecarPath(hash);
+        TemplateTable table;
         try {
-            log.info("Loading template data from real.json...");
-            ClassPathResource resource = new ClassPathResource("real.json");
-            JsonNode root = objectMapper.readTree(resource.getInputStream());
-            JsonNode dataArray = root.get("Data");
-
-            if (dataArray == null) {
-                log.warn("No 'Data' array found in real.json");
-                templateData = new ArrayList<>();
-                return templateData;
+            table = TemplateTable.read(sidecar, hash);
+        } catch (IOException e) {
+            // Unreadable sidecar = cache miss: parse real.json and rewrite it
+            log.warn("Could not read template sidecar {}, parsing real.json: {}", sidecar, e.getMessage());
+            table = null;
+        }
+        if (table != null) {
+            log.info("Loaded {} template rows from binary sidecar {}", table.size(), sidecar.getFileName());
+        } else {
+            TemplateTable.Builder builder = TemplateTable.builder();
+            try (InputStream in = json.getInputStream()) {
+                parseTemplateJson(in, builder);
             }
+            table = builder.build(hash);
+            log.info("Loaded {} template rows from real.json", table.size());
+            writeTemplateSidecar(table, sidecar);
+        }
+        return snapshotOf(table);
+    }
 
-            log.info("Found Data array with {} elements", dataArray.size());
+    /**
+     * Snapshot of a table (not published yet), its version is the table's source hash
+     */
+    TemplateSnapshot snapshotOf(TemplateTable table) {
+        TemplateSnapshot snapshot = new TemplateSnapshot(shortHex(table.getSourceHash()), table,
+                TemplateIndex.build(table.getRows()));
+        log.info("Built template snapshot version {} ({} rows)", snapshot.getSourceHash(), table.size());
+        return snapshot;
+    }
 
-            templateData = new ArrayList<>();
+    /**
+     * Make a snapshot current; generations that pinned the previous one keep using it
+     */
+    void publish(TemplateSnapshot snapshot) {
+        currentTemplates.set(snapshot);
+    }
+
+    /**
+     * Stream {"Data": [[...], ...]} one row at a time (only the current row is held as a tree)
+     */
+    private void parseTemplateJson(InputStream in, TemplateTable.Builder builder) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("real.json is not a JSON object");
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"Data".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
 
-            // Skip header row (index 0)
-            for (int i = 1; i < dataArray.size(); i++) {
-                JsonNode row = dataArray.get(i);
-                if (row.isArray() && row.size() >= 24) {
-                    TKBTemplateRow templateRow = parseTemplateRow(row);
-                    if (templateRow != null) {
-                        templateData.add(templateRow);
+                int index = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    // Skip header row (index 0)
+                    if (index++ == 0 || parser.currentToken() != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    JsonNode row = parser.readValueAsTree();
+                    if (row.size() >= 24) {
+                        parseTemplateRow(row, builder);
                     }
                 }
+                log.info("Found Data array with {} elements", index);
+                return;
             }
-
-            log.info("Loaded {} template rows from real.json", templateData.size());
-            return templateData;
-
-        } catch (Exception e) {
-            log.error("Error loading template data from real.json: {}", e.getMessage(), e);
-            templateData = new ArrayList<>();
-            return templateData;
+            log.warn("No 'Data' array found in real.json");
         }
     }
 
-    private TKBTemplateRow parseTemplateRow(JsonNode row) {
+    private void parseTemplateRow(JsonNode row, TemplateTable.Builder builder) {
         try {
             // Parse basic info: [totalPeriods, dayOfWeek, kip, startPeriod, periodLength,
             // id, ...]
@@ -68,235 +169,128 @@ public class DataLoaderService {
             int periodLength = row.get(4).asInt();
             String id = row.get(5).asText();
 
-            // Parse week schedule (columns 6-23, weeks 1-18) - Python logic
-            List<Integer> weekSchedule = new ArrayList<>();
+            // Parse week schedule (columns 6-23, weeks 1-18) - Python logic, bit w-1 = week w
+            int weekMask = 0;
             for (int i = 6; i < 24; i++) {
                 JsonNode weekNode = row.get(i);
                 if (weekNode.isTextual() && ("x".equals(weekNode.asText()) || "X".equals(weekNode.asText()))) {
-                    weekSchedule.add(1);
-                } else {
-                    weekSchedule.add(0);
+                    weekMask |= 1 << (i - 6);
                 }
             }
 
-            // Calculate total used periods
-            int totalUsed = weekSchedule.stream().mapToInt(Integer::intValue).sum() * periodLength;
-
-            return new TKBTemplateRow(
-                    totalPeriods, dayOfWeek, kip, startPeriod, periodLength,
-                    id, weekSchedule, totalUsed);
+            builder.add(totalPeriods, dayOfWeek, kip, startPeriod, periodLength, id, weekMask);
 
         } catch (Exception e) {
             log.warn("Error parsing template row: {}", e.getMessage());
-            return null;
         }
     }
 
-    public List<TKBTemplateRow> getTemplateByPeriods(int totalPeriods) {
-        List<TKBTemplateRow> allData = loadTemplateData();
-        return allData.stream()
-                .filter(row -> row.getTotalPeriods() == totalPeriods)
-                .toList();
+    private Path templateSidecarPath(byte[] hash) {
+        return Paths.get(dataDir, "templates", "real-" + shortHex(hash) + ".tkbt").toAbsolutePath().normalize();
     }
 
-    public static class TKBTemplateRow {
-        private final Integer totalPeriods;
-        private final Integer dayOfWeek;
-        private final Integer kip;
-        private final Integer startPeriod;
-        private final Integer periodLength;
-        private final String id;
-        private final List<Integer> weekSchedule;
-        private final Integer totalUsed;
-
-        public TKBTemplateRow(Integer totalPeriods, Integer dayOfWeek, Integer kip,
-                Integer startPeriod, Integer periodLength, String id,
-                List<Integer> weekSchedule, Integer totalUsed) {
-            this.totalPeriods = totalPeriods;
-            this.dayOfWeek = dayOfWeek;
-            this.kip = kip;
-            this.startPeriod = startPeriod;
-            this.periodLength = periodLength;
-            this.id = id;
-            this.weekSchedule = weekSchedule;
-            this.totalUsed = totalUsed;
-        }
-
-        // Getters
-        public Integer getTotalPeriods() {
-            return totalPeriods;
-        }
-
-        public Integer getDayOfWeek() {
-            return dayOfWeek;
-        }
-
-        public Integer getKip() {
-            return kip;
-        }
-
-        public Integer getStartPeriod() {
-            return startPeriod;
-        }
-
-        public Integer getPeriodLength() {
-            return periodLength;
-        }
-
-        public String getId() {
-            return id;
-        }
-
-        public List<Integer> getWeekSchedule() {
-            return weekSchedule;
-        }
-
-        public Integer getTotalUsed() {
-            return totalUsed;
+    private static String shortHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            hex.append(String.format("%02x", hash[i]));
         }
+        return hex.toString();
     }
 
     /**
-     * Load global occupied rooms from global_occupied_rooms.json
+     * Save the sidecar and drop the ones built from older real.json content
      */
-    public Set<Object> loadGlobalOccupiedRooms() {
+    private void writeTemplateSidecar(TemplateTable table, Path sidecar) {
         try {
-            log.info("Loading global occupied rooms from global_occupied_rooms.json...");
-            ClassPathResource resource = new ClassPathResource("global_occupied_rooms.json");
-
-            if (!resource.exists()) {
-                log.info("global_occupied_rooms.json not found, returning empty set");
-                return new HashSet<>();
-            }
-
-            JsonNode root = objectMapper.readTree(resource.getInputStream());
-
-            if (!root.isArray()) {
-                log.warn("global_occupied_rooms.json is not an array");
-                return new HashSet<>();
-            }
-
-            Set<Object> occupiedRooms = new HashSet<>();
-            for (JsonNode node : root) {
-                if (node.isTextual()) {
-                    occupiedRooms.add(node.asText());
+            Files.createDirectories(sidecar.getParent());
+            table.write(sidecar);
+            try (DirectoryStream<Path> old = Files.newDirectoryStream(sidecar.getParent(), "real-*.tkbt")) {
+                for (Path path : old) {
+                    if (!path.equals(sidecar)) {
+                        Files.deleteIfExists(path);
+                    }
                 }
             }
-
-            log.info("Loaded {} occupied room entries", occupiedRooms.size());
-            return occupiedRooms;
-        } catch (Exception e) {
-            log.error("Error loading global occupied rooms", e);
-            return new HashSet<>();
+            log.info("Wrote template sidecar {} ({} bytes)", sidecar, Files.size(sidecar));
+        } catch (IOException e) {
+            // Not fatal: next start parses real.json again
+            log.warn("Could not write template sidecar {}: {}", sidecar, e.getMessage());
         }
     }
 
     /**
-     * Save global occupied rooms to global_occupied_rooms.json
-     * Saves to both target/classes and src/main/resources for persistence
+     * Template rows indexed by total periods and (thu, kip), built once per load
      */
-    public void saveGlobalOccupiedRooms(Set<Object> occupiedRooms) {
-        try {
-            log.info("Saving {} occupied room entries to global_occupied_rooms.json", occupiedRooms.size());
+    public TemplateIndex getTemplateIndex() {
+        return getTemplateSnapshot().getIndex();
+    }
 
-            // Convert set to list for JSON array
-            List<String> occupiedList = new ArrayList<>();
-            for (Object obj : occupiedRooms) {
-                if (obj != null) {
-                    occupiedList.add(obj.toString());
-                }
-            }
+    public List<TKBTemplateRow> getTemplateByPeriods(int totalPeriods) {
+        TemplateIndex.Pool pool = getTemplateIndex().getPool(totalPeriods);
+        return pool != null ? pool.getRows() : Collections.emptyList();
+    }
 
-            // Try to save to both target/classes and src/main/resources
-            try {
-                // Save to target/classes (for current runtime)
-                ClassPathResource resource = new ClassPathResource("global_occupied_rooms.json");
-                String targetPath = resource.getFile().getAbsolutePath();
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(targetPath), occupiedList);
-                log.info("Saved to target: {}", targetPath);
-
-                // Also save to src/main/resources (for persistence across rebuilds)
-                String projectRoot = System.getProperty("user.dir");
-                String srcPath = projectRoot + "/src/main/resources/global_occupied_rooms.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(srcPath), occupiedList);
-                log.info("Saved to source: {}", srcPath);
+    /**
+     * View of one row of the columnar TemplateTable (no per-row boxed fields)
+     */
+    public static final class TKBTemplateRow {
+        private final TemplateTable table;
+        private final int index;
 
-            } catch (Exception e) {
-                // If above fails, just save to working directory as fallback
-                String fallbackPath = System.getProperty("user.dir") + "/global_occupied_rooms.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(fallbackPath), occupiedList);
-                log.info("Saved to fallback location: {}", fallbackPath);
-            }
+        TKBTemplateRow(TemplateTable table, int index) {
+            this.table = table;
+            this.index = index;
+        }
 
-            log.info("Successfully saved global occupied rooms");
-        } catch (Exception e) {
-            log.error("Error saving global occupied rooms", e);
+        // Getters
+        public int getTotalPeriods() {
+            return table.totalPeriods(index);
         }
-    }
 
-    /**
-     * Load lastSlotIdx from last_slot_idx.json
-     * Returns -1 if file doesn't exist or on error
-     */
-    public int loadLastSlotIdx() {
-        try {
-            ClassPathResource resource = new ClassPathResource("last_slot_idx.json");
-            if (resource.exists()) {
-                Map<String, Integer> data = objectMapper.readValue(resource.getInputStream(),
-                        new com.fasterxml.jackson.core.type.TypeReference<Map<String, Integer>>() {
-                        });
-                int lastSlotIdx = data.getOrDefault("lastSlotIdx", -1);
-                log.info("Loaded lastSlotIdx: {}", lastSlotIdx);
-                return lastSlotIdx;
-            }
-        } catch (Exception e) {
-            log.warn("Could not load last_slot_idx.json, using default -1", e);
+        public int getDayOfWeek() {
+            return table.dayOfWeek(index);
         }
-        return -1;
-    }
 
-    /**
-     * Save lastSlotIdx to last_slot_idx.json
-     * Saves to both target/classes and src/main/resources for persistence
-     */
-    public void saveLastSlotIdx(int lastSlotIdx) {
-        try {
-            log.info("Saving lastSlotIdx: {} to last_slot_idx.json", lastSlotIdx);
+        public int getKip() {
+            return table.kip(index);
+        }
 
-            Map<String, Integer> data = new HashMap<>();
-            data.put("lastSlotIdx", lastSlotIdx);
+        public int getStartPeriod() {
+            return table.startPeriod(index);
+        }
 
-            // Try to save to both target/classes and src/main/resources
-            try {
-                // Save to target/classes (for current runtime)
-                ClassPathResource resource = new ClassPathResource("last_slot_idx.json");
-                String targetPath = resource.getFile().getAbsolutePath();
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(targetPath), data);
-                log.info("Saved lastSlotIdx to target: {}", targetPath);
-
-                // Also save to src/main/resources (for persistence across rebuilds)
-                String projectRoot = System.getProperty("user.dir");
-                String srcPath = projectRoot + "/src/main/resources/last_slot_idx.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(srcPath), data);
-                log.info("Saved lastSlotIdx to source: {}", srcPath);
+        public int getPeriodLength() {
+            return table.periodLength(index);
+        }
 
-            } catch (Exception e) {
-                // If above fails, just save to working directory as fallback
-                String fallbackPath = System.getProperty("user.dir") + "/last_slot_idx.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(fallbackPath), data);
-                log.info("Saved lastSlotIdx to fallback location: {}", fallbackPath);
-            }
+        public String getId() {
+            return table.id(index);
+        }
 
-            log.info("Successfully saved lastSlotIdx");
-        } catch (Exception e) {
-            log.error("Error saving lastSlotIdx", e);
+        /**
+         * Weeks 1-18 as bits (bit w-1 set = class in week w)
+         */
+        public int getWeekMask() {
+            return table.weekMask(index);
+        }
+
+        public boolean hasWeek(int week) {
+            return (getWeekMask() & (1 << (week - 1))) != 0;
+        }
+
+        /**
+         * periodLength * number of weeks (AH), precomputed
+         */
+        public int getTotalUsed() {
+            return table.totalUsed(index);
         }
     }
 
     /**
-     * Import data from Excel file and overwrite real.json
+     * Import data from Excel file, overwrite real.json and publish it as a new template
+     * snapshot (imports run one at a time)
      */
-    public void importDataFromExcel(org.springframework.web.multipart.MultipartFile file) {
+    public synchronized void importDataFromExcel(org.springframework.web.multipart.MultipartFile file) {
         try {
             log.info("Importing data from Excel file: {}", file.getOriginalFilename());
             
@@ -310,131 +304,154 @@ public class DataLoaderService {
             }
 
             org.apache.poi.ss.usermodel.Sheet sheet = workbook.getSheetAt(0);
-            List<List<Object>> dataArray = new ArrayList<>();
+
+            // Save to real.json in target/classes (for current runtime) + src/main/resources
+            // (for persistence), or the working directory if not running from classes
+            Path targetPath;
+            Path sourceCopy = null;
+            try {
+                targetPath = new ClassPathResource("real.json").getFile().toPath();
+                sourceCopy = Paths.get(System.getProperty("user.dir"), "src", "main", "resources", "real.json");
+            } catch (IOException e) {
+                targetPath = Paths.get(System.getProperty("user.dir"), "real.json");
+            }
+
+            // Rows are streamed one at a time into compact JSON and into the new template table,
+            // so memory does not grow with the size of the imported sheet
+            Path tmp = targetPath.resolveSibling("real.json.tmp");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            TemplateTable.Builder builder = TemplateTable.builder();
+            int rowCount = 0;
 
             // Create FormulaEvaluator to evaluate formulas
             org.apache.poi.ss.usermodel.FormulaEvaluator formulaEvaluator = workbook.getCreationHelper().createFormulaEvaluator();
-            
-            // Read all rows from Excel
-            for (org.apache.poi.ss.usermodel.Row row : sheet) {
-                if (row == null) {
-                    continue;
-                }
-                
-                List<Object> rowData = new ArrayList<>();
-                // Get the last column number from the row to include all cells
-                int lastColumn = Math.max(row.getLastCellNum(), 0);
-                
-                for (int cn = 0; cn < lastColumn; cn++) {
-                    org.apache.poi.ss.usermodel.Cell cell = row.getCell(cn, org.apache.poi.ss.usermodel.Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
-                    
-                    if (cell == null) {
-                        rowData.add(null);
+
+            try (JsonGenerator generator = objectMapper.getFactory()
+                    .createGenerator(new DigestOutputStream(Files.newOutputStream(tmp), digest))) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("Data");
+
+                // Read all rows from Excel
+                for (org.apache.poi.ss.usermodel.Row row : sheet) {
+                    if (row == null) {
                         continue;
                     }
-                    
-                    // Get the cell type, evaluating formulas to their result type
-                    org.apache.poi.ss.usermodel.CellType cellType = cell.getCellType();
-                    
-                    // If it's a formula, evaluate it to get the result type
-                    if (cellType == org.apache.poi.ss.usermodel.CellType.FORMULA) {
-                        cellType = cell.getCachedFormulaResultType();
-                    }
-                    
-                    switch (cellType) {
-                        case STRING:
-                            rowData.add(cell.getStringCellValue());
-                            break;
-                        case NUMERIC:
-                            if (org.apache.poi.ss.usermodel.DateUtil.isCellDateFormatted(cell)) {
-                                rowData.add(cell.getDateCellValue().toString());
-                            } else {
-                                // Check if it's an integer
-                                double numValue = cell.getNumericCellValue();
-                                if (numValue == (int) numValue) {
-                                    rowData.add((int) numValue);
+
+                    List<Object> rowData = new ArrayList<>();
+                    // Get the last column number from the row to include all cells
+                    int lastColumn = Math.max(row.getLastCellNum(), 0);
+
+                    for (int cn = 0; cn < lastColumn; cn++) {
+                        org.apache.poi.ss.usermodel.Cell cell = row.getCell(cn, org.apache.poi.ss.usermodel.Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
+
+                        if (cell == null) {
+                            rowData.add(null);
+                            continue;
+                        }
+
+                        // Get the cell type, evaluating formulas to their result type
+                        org.apache.poi.ss.usermodel.CellType cellType = cell.getCellType();
+
+                        // If it's a formula, evaluate it to get the result type
+                        if (cellType == org.apache.poi.ss.usermodel.CellType.FORMULA) {
+                            cellType = cell.getCachedFormulaResultType();
+                        }
+
+                        switch (cellType) {
+                            case STRING:
+                                rowData.add(cell.getStringCellValue());
+                                break;
+                            case NUMERIC:
+                                if (org.apache.poi.ss.usermodel.DateUtil.isCellDateFormatted(cell)) {
+                                    rowData.add(cell.getDateCellValue().toString());
                                 } else {
-                                    rowData.add(numValue);
+                                    // Check if it's an integer
+                                    double numValue = cell.getNumericCellValue();
+                                    if (numValue == (int) numValue) {
+                                        rowData.add((int) numValue);
+                                    } else {
+                                        rowData.add(numValue);
+                                    }
                                 }
-                            }
-                            break;
-                        case BOOLEAN:
-                            rowData.add(cell.getBooleanCellValue());
-                            break;
-                        case BLANK:
-                            rowData.add(null);
-                            break;
-                        case FORMULA:
-                            // This should not happen as we handle FORMULA above
-                            // But as a fallback, try to evaluate the formula
-                            try {
-                                org.apache.poi.ss.usermodel.CellValue cellValue = formulaEvaluator.evaluate(cell);
-                                switch (cellValue.getCellType()) {
-                                    case STRING:
-                                        rowData.add(cellValue.getStringValue());
-                                        break;
-                                    case NUMERIC:
-                                        double evalNumValue = cellValue.getNumberValue();
-                                        if (evalNumValue == (int) evalNumValue) {
-                                            rowData.add((int) evalNumValue);
-                                        } else {
-                                            rowData.add(evalNumValue);
-                                        }
-                                        break;
-                                    case BOOLEAN:
-                                        rowData.add(cellValue.getBooleanValue());
-                                        break;
-                                    default:
-                                        rowData.add(null);
+                                break;
+                            case BOOLEAN:
+                                rowData.add(cell.getBooleanCellValue());
+                                break;
+                            case BLANK:
+                                rowData.add(null);
+                                break;
+                            case FORMULA:
+                                // This should not happen as we handle FORMULA above
+                                // But as a fallback, try to evaluate the formula
+                                try {
+                                    org.apache.poi.ss.usermodel.CellValue cellValue = formulaEvaluator.evaluate(cell);
+                                    switch (cellValue.getCellType()) {
+                                        case STRING:
+                                            rowData.add(cellValue.getStringValue());
+                                            break;
+                                        case NUMERIC:
+                                            double evalNumValue = cellValue.getNumberValue();
+                                            if (evalNumValue == (int) evalNumValue) {
+                                                rowData.add((int) evalNumValue);
+                                            } else {
+                                                rowData.add(evalNumValue);
+                                            }
+                                            break;
+                                        case BOOLEAN:
+                                            rowData.add(cellValue.getBooleanValue());
+                                            break;
+                                        default:
+                                            rowData.add(null);
+                                    }
+                                } catch (Exception e) {
+                                    log.warn("Failed to evaluate formula in cell, using null", e);
+                                    rowData.add(null);
                                 }
-                            } catch (Exception e) {
-                                log.warn("Failed to evaluate formula in cell, using null", e);
+                                break;
+                            default:
                                 rowData.add(null);
-                            }
-                            break;
-                        default:
-                            rowData.add(null);
+                        }
                     }
-                }
-                dataArray.add(rowData);
-            }
-
-            workbook.close();
+                    generator.writeObject(rowData);
 
-            log.info("Parsed {} rows from Excel", dataArray.size());
-
-            // Create JSON structure
-            Map<String, Object> jsonData = new HashMap<>();
-            jsonData.put("Data", dataArray);
+                    // Same rules as loading real.json: skip header row (index 0), rows need 24 columns
+                    if (rowCount > 0 && rowData.size() >= 24) {
+                        parseTemplateRow(objectMapper.valueToTree(rowData), builder);
+                    }
+                    rowCount++;
+                }
 
-            // Save to real.json (both target and source)
-            try {
-                // Save to target/classes (for current runtime)
-                ClassPathResource resource = new ClassPathResource("real.json");
-                String targetPath = resource.getFile().getAbsolutePath();
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(targetPath), jsonData);
-                log.info("Saved imported data to target: {}", targetPath);
-
-                // Also save to src/main/resources (for persistence)
-                String projectRoot = System.getProperty("user.dir");
-                String srcPath = projectRoot + "/src/main/resources/real.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(srcPath), jsonData);
-                log.info("Saved imported data to source: {}", srcPath);
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } finally {
+                workbook.close();
+            }
 
-            } catch (Exception e) {
-                // Fallback: save to working directory
-                String fallbackPath = System.getProperty("user.dir") + "/real.json";
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(fallbackPath), jsonData);
-                log.info("Saved imported data to fallback location: {}", fallbackPath);
+            log.info("Parsed {} rows from Excel", rowCount);
+
+            byte[] hash = digest.digest();
+            TemplateTable table = builder.build(hash);
+            writeTemplateSidecar(table, templateSidecarPath(hash));
+            TemplateSnapshot snapshot = snapshotOf(table);
+
+            Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved imported data to target: {}", targetPath);
+            if (sourceCopy != null) {
+                try {
+                    Files.copy(targetPath, sourceCopy, StandardCopyOption.REPLACE_EXISTING);
+                    log.info("Saved imported data to source: {}", sourceCopy);
+                } catch (IOException e) {
+                    // Fallback: save to working directory
+                    Path fallbackPath = Paths.get(System.getProperty("user.dir"), "real.json");
+                    Files.copy(targetPath, fallbackPath, StandardCopyOption.REPLACE_EXISTING);
+                    log.info("Saved imported data to fallback location: {}", fallbackPath);
+                }
             }
 
-            // Clear cached template data and immediately reload from the new file
-            templateData = null;
-            log.info("Cache cleared, reloading template data from updated real.json...");
-            
-            // Force reload the new data immediately
-            loadTemplateData();
-            log.info("Successfully imported data from Excel, updated real.json, and reloaded {} rows", templateData.size());
+            // Publish the new version atomically: running generations keep the snapshot they pinned
+            publish(snapshot);
+            log.info("Successfully imported data from Excel, updated real.json, published template version {} ({} rows)",
+                    snapshot.getSourceHash(), snapshot.getRows().size());
 
         } catch (Exception e) {
             log.error("Error importing data from Excel", e);
@@ -0,0 +1,136 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.GenerationJobStatus;
+import com.ptit.schedule.dto.TKBBatchItemResponse;
+import com.ptit.schedule.dto.TKBBatchResponse;
+import com.ptit.schedule.dto.TKBRequest;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One asynchronous generate-batch run, also its own progress listener
+ */
+@Getter
+public class GenerationJob implements GenerationListener {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final String sessionId;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int totalSubjects;
+    private final AtomicInteger subjectsProcessed = new AtomicInteger();
+    private final AtomicInteger rowsEmitted = new AtomicInteger();
+    private volatile boolean cancelRequested;
+    private volatile TKBBatchResponse result;
+    private volatile String error;
+
+    GenerationJob(String id, String sessionId, int totalSubjects) {
+        this.id = id;
+        this.sessionId = sessionId;
+        this.totalSubjects = totalSubjects;
+    }
+
+    @Override
+    public void onStart(int totalSubjects) {
+        this.totalSubjects = totalSubjects;
+    }
+
+    @Override
+    public void onSubject(TKBRequest request, TKBBatchItemResponse item) {
+        subjectsProcessed.incrementAndGet();
+        if (item != null && item.getRows() != null) {
+            rowsEmitted.addAndGet(item.getRows().size());
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    /**
+     * Returns false if the job was cancelled while still queued
+     */
+    synchronized boolean markRunning() {
+        if (cancelRequested) {
+            return false;
+        }
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+        return true;
+    }
+
+    synchronized void complete(TKBBatchResponse result) {
+        this.result = result;
+        this.error = result.getError();
+        finish(result.getError() == null ? Status.COMPLETED : Status.FAILED);
+    }
+
+    synchronized void fail(String error) {
+        this.error = error;
+        finish(Status.FAILED);
+    }
+
+    /**
+     * Request cancellation, returns true if the job finished right away (it was still queued).
+     * A running job stops before its next subject.
+     */
+    synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (status == Status.QUEUED) {
+            finish(Status.CANCELLED);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void finish(Status status) {
+        finishedAt = Instant.now();
+        this.status = status;
+    }
+
+    public GenerationJobStatus toStatus() {
+        return GenerationJobStatus.builder()
+                .jobId(id)
+                .sessionId(sessionId)
+                .status(status.name())
+                .totalSubjects(totalSubjects)
+                .subjectsProcessed(subjectsProcessed.get())
+                .rowsEmitted(rowsEmitted.get())
+                .etaSeconds(estimateRemainingSeconds())
+                .submittedAt(submittedAt)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .error(error)
+                .build();
+    }
+
+    /**
+     * Average time per processed subject x remaining subjects
+     */
+    private Long estimateRemainingSeconds() {
+        int processed = subjectsProcessed.get();
+        if (status != Status.RUNNING || processed == 0 || startedAt == null) {
+            return null;
+        }
+        long elapsedMillis = Instant.now().toEpochMilli() - startedAt.toEpochMilli();
+        long remaining = Math.max(0, totalSubjects - processed);
+        return (elapsedMillis * remaining / processed + 999) / 1000;
+    }
+}
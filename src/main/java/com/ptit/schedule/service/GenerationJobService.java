@@ -0,0 +1,142 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.TKBBatchRequest;
+import com.ptit.schedule.dto.TKBBatchResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs generate-batch as background jobs so big batches do not hold a request thread.
+ * Jobs run on a bounded pool (tkb.jobs.workers threads, tkb.jobs.queue-capacity waiting);
+ * only the last tkb.jobs.max-retained finished jobs (with their results) are kept.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GenerationJobService {
+
+    private final TimetableSchedulingService timetableSchedulingService;
+    private final SchedulingSessionRegistry sessionRegistry;
+
+    @Value("${tkb.jobs.workers:2}")
+    private int workers;
+
+    @Value("${tkb.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${tkb.jobs.max-retained:50}")
+    private int maxRetained;
+
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<String> finishedOrder = new ConcurrentLinkedQueue<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "tkb-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Generation job executor started with {} workers, queue capacity {}", workers, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue a batch for the given session.
+     * Throws RejectedExecutionException when the queue is full.
+     */
+    public GenerationJob submit(TKBBatchRequest request, String sessionId) {
+        SchedulingSession session = sessionRegistry.getOrCreate(sessionId);
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), session.getId(),
+                request.getItems().size());
+        jobs.put(job.getId(), job);
+
+        // Keep the session while the job waits in the queue and runs
+        session.pin();
+        try {
+            executor.execute(() -> run(job, request, session));
+        } catch (RejectedExecutionException e) {
+            session.unpin();
+            jobs.remove(job.getId());
+            throw e;
+        }
+
+        log.info("Queued generation job {} ({} subjects, session {})",
+                job.getId(), request.getItems().size(), session.getId());
+        return job;
+    }
+
+    public Optional<GenerationJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Request cancellation, empty if the job is unknown (or already evicted)
+     */
+    public Optional<GenerationJob> cancel(String jobId) {
+        GenerationJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.cancel()) {
+            onFinished(job);
+        }
+        log.info("Cancellation requested for generation job {}", jobId);
+        return Optional.of(job);
+    }
+
+    private void run(GenerationJob job, TKBBatchRequest request, SchedulingSession session) {
+        try {
+            execute(job, request, session);
+        } finally {
+            session.unpin();
+        }
+    }
+
+    private void execute(GenerationJob job, TKBBatchRequest request, SchedulingSession session) {
+        if (!job.markRunning()) {
+            return;
+        }
+        try {
+            TKBBatchResponse response = timetableSchedulingService.simulateExcelFlowBatch(request, session, job);
+            job.complete(response);
+            log.info("Generation job {} finished: {} rows", job.getId(), response.getTotalRows());
+        } catch (CancellationException e) {
+            job.finish(GenerationJob.Status.CANCELLED);
+        } catch (Exception e) {
+            log.error("Generation job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.fail(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        onFinished(job);
+    }
+
+    private void onFinished(GenerationJob job) {
+        finishedOrder.add(job.getId());
+        while (finishedOrder.size() > maxRetained) {
+            String evicted = finishedOrder.poll();
+            if (evicted != null) {
+                jobs.remove(evicted);
+                log.debug("Evicted generation job {}", evicted);
+            }
+        }
+    }
+}
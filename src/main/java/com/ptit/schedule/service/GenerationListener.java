@@ -0,0 +1,34 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.TKBBatchItemResponse;
+import com.ptit.schedule.dto.TKBRequest;
+
+/**
+ * Callbacks of one generate-batch run (progress of async jobs, streaming, ...)
+ */
+public interface GenerationListener {
+
+    GenerationListener NONE = new GenerationListener() {
+    };
+
+    /**
+     * Called once before the first subject
+     */
+    default void onStart(int totalSubjects) {
+    }
+
+    /**
+     * Called when a subject is finished: in batch order, or cluster by cluster in parallel mode.
+     * item is null if the subject produced no row.
+     */
+    default void onSubject(TKBRequest request, TKBBatchItemResponse item) {
+    }
+
+    /**
+     * Checked before each subject (also inside parallel cluster tasks);
+     * the run stops with CancellationException when true
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
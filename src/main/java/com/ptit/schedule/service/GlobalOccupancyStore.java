@@ -0,0 +1,159 @@
+package com.ptit.schedule.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Confirmed (global) occupancy held in memory: loaded once from OccupancyJournal at
+ * startup, then the only source for reads. Mutations are applied here right away and
+ * written behind to the journal every tkb.occupancy.flush-interval-ms (coalesced into
+ * one fsync), plus a final flush on shutdown.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GlobalOccupancyStore {
+
+    private final OccupancyJournal occupancyJournal;
+
+    // Keeps journal appends in the same order as the changes
+    private final Object flushLock = new Object();
+
+    private RoomOccupancy occupied = new RoomOccupancy();
+    private int lastSlotIdx = -1;
+
+    // Bumped on every change, sessions remember the version they generated from
+    private long version;
+
+    // Changes not yet in the journal
+    private boolean pendingReset;
+    private RoomOccupancy pendingAdded = new RoomOccupancy();
+    private Integer pendingLastSlotIdx;
+
+    @PostConstruct
+    public void init() {
+        OccupancyJournal.State state = occupancyJournal.load();
+        synchronized (this) {
+            occupied = state.getOccupied();
+            lastSlotIdx = state.getLastSlotIdx();
+        }
+        log.info("Loaded {} global occupied rooms into memory, lastSlotIdx {}", state.getOccupied().size(),
+                state.getLastSlotIdx());
+    }
+
+    /**
+     * Copy of the confirmed occupancy (callers may modify it)
+     */
+    public synchronized RoomOccupancy copyOccupied() {
+        return occupied.copy();
+    }
+
+    public synchronized int size() {
+        return occupied.size();
+    }
+
+    public synchronized int getLastSlotIdx() {
+        return lastSlotIdx;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Whether any of the given rooms is already confirmed
+     */
+    public synchronized boolean intersects(RoomOccupancy rooms) {
+        return occupied.intersects(rooms);
+    }
+
+    /**
+     * Add a committed session's rooms and its lastSlotIdx, returns the number of new entries
+     */
+    public synchronized int commit(RoomOccupancy rooms, int newLastSlotIdx) {
+        // Move to the current room catalog's ids so the old registry can be dropped
+        occupied = occupied.rebase(RoomIdRegistry.current());
+        int before = occupied.size();
+        occupied.addAll(rooms);
+        pendingAdded.addAll(rooms);
+        lastSlotIdx = newLastSlotIdx;
+        pendingLastSlotIdx = newLastSlotIdx;
+        version++;
+        return occupied.size() - before;
+    }
+
+    /**
+     * Clear every confirmed room and lastSlotIdx
+     */
+    public synchronized void reset() {
+        occupied = new RoomOccupancy();
+        lastSlotIdx = -1;
+        pendingReset = true;
+        pendingAdded = new RoomOccupancy();
+        pendingLastSlotIdx = null;
+        version++;
+    }
+
+    public synchronized void setLastSlotIdx(int newLastSlotIdx) {
+        lastSlotIdx = newLastSlotIdx;
+        pendingLastSlotIdx = newLastSlotIdx;
+        version++;
+    }
+
+    /**
+     * Write pending changes to the journal; on failure they stay pending for the next run
+     */
+    @Scheduled(fixedDelayString = "${tkb.occupancy.flush-interval-ms:1000}")
+    public void flush() {
+        synchronized (flushLock) {
+            boolean reset;
+            RoomOccupancy added;
+            Integer slotIdx;
+            synchronized (this) {
+                if (!pendingReset && pendingAdded.isEmpty() && pendingLastSlotIdx == null) {
+                    return;
+                }
+                reset = pendingReset;
+                added = pendingAdded;
+                slotIdx = pendingLastSlotIdx;
+                pendingReset = false;
+                pendingAdded = new RoomOccupancy();
+                pendingLastSlotIdx = null;
+            }
+
+            try {
+                occupancyJournal.appendChanges(reset, added, slotIdx);
+            } catch (RuntimeException e) {
+                log.error("Flushing global occupancy failed, will retry: {}", e.getMessage(), e);
+                requeue(reset, added, slotIdx);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        log.info("Flushed global occupancy on shutdown");
+    }
+
+    /**
+     * Put a failed flush back in front of whatever changed meanwhile
+     */
+    private synchronized void requeue(boolean reset, RoomOccupancy added, Integer slotIdx) {
+        if (pendingReset) {
+            // A newer reset supersedes the failed changes
+            return;
+        }
+        pendingReset = reset;
+        added.addAll(pendingAdded);
+        pendingAdded = added;
+        if (pendingLastSlotIdx == null) {
+            pendingLastSlotIdx = slotIdx;
+        }
+    }
+}
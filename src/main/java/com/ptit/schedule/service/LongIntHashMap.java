@@ -0,0 +1,119 @@
+package com.ptit.schedule.service;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) map from long keys to non-negative int values,
+ * backed by two primitive arrays: no boxing and no per-entry objects.
+ * Meant for packed keys (several interned ids in one long) in hot loops.
+ */
+public final class LongIntHashMap {
+
+    public static final int NO_VALUE = -1;
+
+    private long[] keys;
+    private int[] values; // NO_VALUE = free slot
+    private int size;
+    private int mask;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Value of key, NO_VALUE if absent
+     */
+    public int get(long key) {
+        int i = slot(key);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Set key to value (value must be >= 0), returns the previous value or NO_VALUE
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must be >= 0: " + value);
+        }
+        int i = slot(key);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Existing value of key, or store value and return NO_VALUE
+     */
+    public int putIfAbsent(long key, int value) {
+        int existing = get(key);
+        if (existing != NO_VALUE) {
+            return existing;
+        }
+        put(key, value);
+        return NO_VALUE;
+    }
+
+    public void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // murmur3 fmix64, keys are often small dense ids packed together
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != NO_VALUE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
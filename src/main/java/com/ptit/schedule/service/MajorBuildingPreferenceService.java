@@ -1,17 +1,24 @@
 package com.ptit.schedule.service;
 
+import com.ptit.schedule.dto.MajorBuildingPreferenceRequest;
 import com.ptit.schedule.entity.MajorBuildingPreference;
 import com.ptit.schedule.repository.MajorBuildingPreferenceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Transactional
@@ -21,15 +28,42 @@ public class MajorBuildingPreferenceService {
 
     private final MajorBuildingPreferenceRepository repository;
 
+    // Bảng ưu tiên trong bộ nhớ: rebuild khi version đổi (sau commit của mọi thao tác ghi)
+    private final AtomicLong tableVersion = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private volatile PreferenceTable preferenceTable;
+
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<String> getPreferredBuildingsForMajor(String nganh) {
         if (nganh == null || nganh.trim().isEmpty()) {
             return Collections.emptyList();
         }
 
-        return repository.findByNganhAndIsActiveTrueOrderByPriorityLevelAsc(nganh)
-                .stream()
-                .map(MajorBuildingPreference::getPreferredBuilding)
-                .collect(Collectors.toList());
+        return getPreferenceTable().byMajor.getOrDefault(nganh, Collections.emptyList());
+    }
+
+    /**
+     * All active preferences: major -> buildings by priority (immutable, served from memory)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<String, List<String>> getPreferredBuildingsByMajor() {
+        return getPreferenceTable().byMajor;
+    }
+
+    /**
+     * Hit/miss counters of the preference table (a miss = one DB load)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<String, Object> getCacheStats() {
+        PreferenceTable table = preferenceTable;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", cacheHits.get());
+        stats.put("misses", cacheMisses.get());
+        stats.put("version", tableVersion.get());
+        stats.put("loaded", table != null && table.version == tableVersion.get());
+        stats.put("cachedMajors", table != null ? table.byMajor.size() : 0);
+        return stats;
     }
 
     public MajorBuildingPreference createOrUpdatePreference(String nganh, String building,
@@ -44,7 +78,9 @@ public class MajorBuildingPreferenceService {
             pref.setUpdatedAt(LocalDateTime.now());
             log.info("Updated preference for major {} building {} to priority {}",
                     nganh, building, priorityLevel);
-            return repository.save(pref);
+            MajorBuildingPreference saved = repository.save(pref);
+            invalidatePreferenceTable();
+            return saved;
         }
 
         MajorBuildingPreference newPref = repository.save(MajorBuildingPreference.builder()
@@ -59,15 +95,28 @@ public class MajorBuildingPreferenceService {
 
         log.info("Created new preference for major {} building {} with priority {}",
                 nganh, building, priorityLevel);
+        invalidatePreferenceTable();
         return newPref;
     }
 
+    /**
+     * Import nhiều ưu tiên trong một transaction, bảng ưu tiên chỉ rebuild một lần
+     */
+    public int bulkCreateOrUpdatePreferences(List<MajorBuildingPreferenceRequest> requests) {
+        for (MajorBuildingPreferenceRequest req : requests) {
+            createOrUpdatePreference(req.getNganh(), req.getPreferredBuilding(),
+                    req.getPriorityLevel(), req.getNotes());
+        }
+        return requests.size();
+    }
+
     public void deactivatePreference(String nganh, String building) {
         repository.findByNganhAndPreferredBuildingAndIsActiveTrue(nganh, building)
                 .ifPresent(pref -> {
                     pref.setIsActive(false);
                     pref.setUpdatedAt(LocalDateTime.now());
                     repository.save(pref);
+                    invalidatePreferenceTable();
                     log.info("Deactivated preference for major {} building {}", nganh, building);
                 });
     }
@@ -79,4 +128,52 @@ public class MajorBuildingPreferenceService {
     public List<String> getAllActiveMajors() {
         return repository.findDistinctActiveMajors();
     }
+
+    private PreferenceTable getPreferenceTable() {
+        long version = tableVersion.get();
+        PreferenceTable table = preferenceTable;
+        if (table != null && table.version == version) {
+            cacheHits.incrementAndGet();
+            return table;
+        }
+
+        cacheMisses.incrementAndGet();
+        Map<String, List<String>> byMajor = new LinkedHashMap<>();
+        for (MajorBuildingPreference pref : repository.findByIsActiveTrueOrderByNganhAscPriorityLevelAsc()) {
+            byMajor.computeIfAbsent(pref.getNganh(), k -> new ArrayList<>()).add(pref.getPreferredBuilding());
+        }
+        byMajor.replaceAll((nganh, buildings) -> Collections.unmodifiableList(buildings));
+
+        // Nếu có thao tác ghi trong lúc load, version đã tăng nên lần đọc sau sẽ load lại
+        table = new PreferenceTable(version, Collections.unmodifiableMap(byMajor));
+        preferenceTable = table;
+        log.info("Loaded major building preference table (version {}) with {} majors", version, byMajor.size());
+        return table;
+    }
+
+    /**
+     * Rebuild the table once the current transaction commits (right away outside a transaction)
+     */
+    private void invalidatePreferenceTable() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tableVersion.incrementAndGet();
+                }
+            });
+        } else {
+            tableVersion.incrementAndGet();
+        }
+    }
+
+    private static final class PreferenceTable {
+        private final long version;
+        private final Map<String, List<String>> byMajor;
+
+        private PreferenceTable(long version, Map<String, List<String>> byMajor) {
+            this.version = version;
+            this.byMajor = byMajor;
+        }
+    }
 }
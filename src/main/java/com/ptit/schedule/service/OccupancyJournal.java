@@ -0,0 +1,355 @@
+package com.ptit.schedule.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable confirmed occupancy (global occupied rooms + lastSlotIdx) in tkb.data-dir:
+ * occupancy.snapshot.json holds the compacted state, occupancy.journal gets NDJSON
+ * records for commits/resets (fsync'ed once per append), so a write only costs its own delta.
+ * A background compaction folds the journal into the snapshot.
+ * On first start the legacy classpath files (global_occupied_rooms.json,
+ * last_slot_idx.json) seed the snapshot; they are never written again.
+ */
+@Service
+@Slf4j
+public class OccupancyJournal {
+
+    static final String SNAPSHOT_FILE = "occupancy.snapshot.json";
+    static final String JOURNAL_FILE = "occupancy.journal";
+
+    private static final String OP_COMMIT = "commit";
+    private static final String OP_RESET = "reset";
+    private static final String OP_LAST_SLOT_IDX = "lastSlotIdx";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Appends, replays and compaction all go through this lock
+    private final Object fileLock = new Object();
+
+    @Value("${tkb.data-dir:./data}")
+    private String dataDir;
+
+    @Value("${tkb.occupancy.compact-after-records:100}")
+    private int compactAfterRecords;
+
+    private Path snapshotPath;
+    private Path journalPath;
+    private volatile int journalRecords;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path dir = Paths.get(dataDir).toAbsolutePath().normalize();
+        Files.createDirectories(dir);
+        snapshotPath = dir.resolve(SNAPSHOT_FILE);
+        journalPath = dir.resolve(JOURNAL_FILE);
+
+        synchronized (fileLock) {
+            if (!Files.exists(snapshotPath) && !Files.exists(journalPath)) {
+                State legacy = loadLegacyClasspathState();
+                writeSnapshot(legacy);
+                log.info("Seeded occupancy snapshot from classpath: {} entries, lastSlotIdx {}",
+                        legacy.getOccupied().size(), legacy.getLastSlotIdx());
+            }
+            if (Files.exists(journalPath)) {
+                truncateTornTail(journalPath);
+                journalRecords = countLines(journalPath);
+            }
+        }
+        log.info("Occupancy journal in {} ({} pending records)", dir, journalRecords);
+    }
+
+    /**
+     * Current confirmed state: snapshot + journal replay
+     */
+    public State load() {
+        synchronized (fileLock) {
+            try {
+                return replay();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read occupancy store in " + dataDir, e);
+            }
+        }
+    }
+
+    /**
+     * Append coalesced changes with a single fsync: optional reset, then added rooms
+     * and/or the latest lastSlotIdx (null = unchanged)
+     */
+    public void appendChanges(boolean reset, RoomOccupancy added, Integer lastSlotIdx) {
+        List<JournalRecord> records = new ArrayList<>(2);
+        if (reset) {
+            records.add(new JournalRecord(OP_RESET, null, null));
+        }
+        if (added != null && !added.isEmpty()) {
+            records.add(new JournalRecord(OP_COMMIT, added.toKeys(), lastSlotIdx));
+        } else if (lastSlotIdx != null) {
+            records.add(new JournalRecord(OP_LAST_SLOT_IDX, null, lastSlotIdx));
+        }
+        if (!records.isEmpty()) {
+            append(records);
+        }
+    }
+
+    /**
+     * Fold the journal into the snapshot once it has enough records
+     */
+    @Scheduled(fixedDelayString = "${tkb.occupancy.compaction-interval-ms:300000}")
+    public void compactIfNeeded() {
+        if (journalRecords >= compactAfterRecords) {
+            compact();
+        }
+    }
+
+    /**
+     * Write snapshot + journal as a new snapshot, then truncate the journal.
+     * Records are idempotent, so a crash between the two steps only replays them again.
+     */
+    public void compact() {
+        synchronized (fileLock) {
+            if (journalRecords == 0) {
+                return;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                int records = journalRecords;
+                State state = replay();
+                writeSnapshot(state);
+                Files.deleteIfExists(journalPath);
+                journalRecords = 0;
+                log.info("Compacted {} journal records into snapshot ({} entries) in {} ms",
+                        records, state.getOccupied().size(), System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                log.error("Occupancy journal compaction failed, journal kept", e);
+            }
+        }
+    }
+
+    private void append(List<JournalRecord> records) {
+        synchronized (fileLock) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                StringBuilder lines = new StringBuilder();
+                for (JournalRecord record : records) {
+                    lines.append(objectMapper.writeValueAsString(record)).append('\n');
+                }
+                byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                journalRecords += records.size();
+                log.info("Journaled {} record(s) ({} bytes, {} pending records)",
+                        records.size(), bytes.length, journalRecords);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot append to occupancy journal " + journalPath, e);
+            }
+        }
+    }
+
+    private State replay() throws IOException {
+        State state = Files.exists(snapshotPath) ? readSnapshot() : new State(new RoomOccupancy(), -1);
+        if (!Files.exists(journalPath)) {
+            return state;
+        }
+
+        RoomOccupancy occupied = state.getOccupied();
+        int lastSlotIdx = state.getLastSlotIdx();
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                JournalRecord record;
+                try {
+                    record = objectMapper.readValue(line, JournalRecord.class);
+                } catch (IOException e) {
+                    // Torn write of the last record (crash while appending): ignore it
+                    log.warn("Skipping unreadable occupancy journal record at line {}", lineNumber);
+                    continue;
+                }
+                switch (String.valueOf(record.getOp())) {
+                    case OP_COMMIT:
+                        occupied.addAll(RoomOccupancy.fromKeys(record.getKeys()));
+                        if (record.getLastSlotIdx() != null) {
+                            lastSlotIdx = record.getLastSlotIdx();
+                        }
+                        break;
+                    case OP_RESET:
+                        occupied.clear();
+                        lastSlotIdx = -1;
+                        break;
+                    case OP_LAST_SLOT_IDX:
+                        if (record.getLastSlotIdx() != null) {
+                            lastSlotIdx = record.getLastSlotIdx();
+                        }
+                        break;
+                    default:
+                        log.warn("Unknown occupancy journal op '{}' at line {}", record.getOp(), lineNumber);
+                }
+            }
+        }
+        return new State(occupied, lastSlotIdx);
+    }
+
+    private State readSnapshot() throws IOException {
+        JsonNode root = objectMapper.readTree(snapshotPath.toFile());
+        List<String> keys = new ArrayList<>();
+        for (JsonNode node : root.path("occupied")) {
+            if (node.isTextual()) {
+                keys.add(node.asText());
+            }
+        }
+        return new State(RoomOccupancy.fromKeys(keys), root.path("lastSlotIdx").asInt(-1));
+    }
+
+    /**
+     * Write to a temp file, fsync, then atomically replace the snapshot
+     */
+    private void writeSnapshot(State state) throws IOException {
+        Path tmp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        byte[] bytes = objectMapper.writeValueAsBytes(
+                new SnapshotFile(state.getLastSlotIdx(), state.getOccupied().toKeys()));
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * global_occupied_rooms.json / last_slot_idx.json bundled with the app (read-only)
+     */
+    private State loadLegacyClasspathState() {
+        RoomOccupancy occupied = new RoomOccupancy();
+        int lastSlotIdx = -1;
+        try {
+            ClassPathResource rooms = new ClassPathResource("global_occupied_rooms.json");
+            if (rooms.exists()) {
+                try (InputStream in = rooms.getInputStream()) {
+                    JsonNode root = objectMapper.readTree(in);
+                    List<String> keys = new ArrayList<>();
+                    for (JsonNode node : root) {
+                        if (node.isTextual()) {
+                            keys.add(node.asText());
+                        }
+                    }
+                    occupied = RoomOccupancy.fromKeys(keys);
+                }
+            }
+            ClassPathResource slot = new ClassPathResource("last_slot_idx.json");
+            if (slot.exists()) {
+                try (InputStream in = slot.getInputStream()) {
+                    lastSlotIdx = objectMapper.readTree(in).path("lastSlotIdx").asInt(-1);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read legacy occupancy files, starting empty", e);
+        }
+        return new State(occupied, lastSlotIdx);
+    }
+
+    /**
+     * Drop a partial last record (crash mid-append) so the next append starts on a new line
+     */
+    private static void truncateTornTail(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long validLength = end;
+            while (validLength > 0) {
+                one.clear();
+                channel.read(one, validLength - 1);
+                if (one.get(0) == '\n') {
+                    break;
+                }
+                validLength--;
+            }
+            if (validLength < end) {
+                channel.truncate(validLength);
+                log.warn("Dropped {} bytes of a torn record at the end of {}", end - validLength, path);
+            }
+        }
+    }
+
+    private static int countLines(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return (int) reader.lines().filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    /**
+     * Confirmed occupancy and lastSlotIdx
+     */
+    public static final class State {
+        private final RoomOccupancy occupied;
+        private final int lastSlotIdx;
+
+        public State(RoomOccupancy occupied, int lastSlotIdx) {
+            this.occupied = occupied;
+            this.lastSlotIdx = lastSlotIdx;
+        }
+
+        public RoomOccupancy getOccupied() {
+            return occupied;
+        }
+
+        public int getLastSlotIdx() {
+            return lastSlotIdx;
+        }
+    }
+
+    /**
+     * One journal line: {"op":"commit","keys":[...],"lastSlotIdx":3}, lastSlotIdx omitted when unchanged
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class JournalRecord {
+        private String op;
+        private List<String> keys;
+        private Integer lastSlotIdx;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class SnapshotFile {
+        private int lastSlotIdx;
+        private List<String> occupied;
+    }
+}
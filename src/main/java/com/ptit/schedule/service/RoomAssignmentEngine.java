@@ -0,0 +1,223 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.RoomPickResult;
+import com.ptit.schedule.entity.Room;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Room assignment for one generate-batch run (matching Python _pick_room logic).
+ * Works on a snapshot taken at the start of the batch (room index + major building
+ * preferences), so the scheduling loop does no DB access and opens no transaction.
+ * Thread-safe: the snapshot is immutable, occupancy and subject-room maps are passed in.
+ */
+@Slf4j
+public final class RoomAssignmentEngine {
+
+    private static final List<String> DEFAULT_BUILDINGS = Arrays.asList("A2", "A1", "A3");
+
+    private static final Map<String, Integer> BUILDING_POSITIONS = Map.of(
+            "A1", 0, "A2", 1, "A3", 2, "NT", 3);
+
+    private static final RoomPickResult NO_ROOM = RoomPickResult.builder()
+            .roomCode(null)
+            .roomId(null)
+            .building(null)
+            .distanceScore(null)
+            .isPreferredBuilding(false)
+            .build();
+
+    private final RoomCandidateIndex rooms;
+    private final Map<String, List<String>> preferredBuildingsByMajor;
+
+    public RoomAssignmentEngine(RoomCandidateIndex rooms, Map<String, List<String>> preferredBuildingsByMajor) {
+        this.rooms = rooms;
+        this.preferredBuildingsByMajor = preferredBuildingsByMajor != null ? preferredBuildingsByMajor
+                : Collections.emptyMap();
+    }
+
+    public RoomCandidateIndex getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Preferred buildings of a major by priority, A2 > A1 > A3 if it has none
+     */
+    public List<String> getPreferredBuildings(String nganh) {
+        List<String> preferred = nganh != null ? preferredBuildingsByMajor.get(nganh) : null;
+        return preferred == null || preferred.isEmpty() ? DEFAULT_BUILDINGS : preferred;
+    }
+
+    /**
+     * Pick a room for one class at (thu, kip) and remember it in subjectRooms
+     */
+    public RoomPickResult pickRoom(Integer sisoPerClass, RoomOccupancy occupied,
+            Integer thu, Integer kip, String subjectType, String studentYear,
+            String heDacThu, List<String> weekSchedule, String nganh, String maMon,
+            Map<String, String> subjectRooms) {
+
+        // Skip room assignment for rows with tiet_bd = 12 (no room needed)
+        if (thu == null || kip == null) {
+            return NO_ROOM;
+        }
+
+        RoomCandidateIndex.Profile profile = RoomCandidateIndex.profileOf(subjectType, studentYear, heDacThu);
+        int minCapacity = sisoPerClass != null ? sisoPerClass : 0;
+        boolean checkWeeks = weekSchedule != null && !weekSchedule.isEmpty() && !occupied.getExtraKeys().isEmpty();
+
+        // 1. Check if subject already has assigned room (highest priority)
+        String existingRoom = subjectRooms.get(maMon);
+        if (existingRoom != null) {
+            Room room = rooms.findByCode(existingRoom);
+            if (room != null && !occupied.isOccupied(room.getPhong(), thu, kip)
+                    && room.getCapacity() >= minCapacity && RoomCandidateIndex.matches(profile, room)) {
+                return createRoomPickResult(room, 0, true);
+            }
+        }
+
+        // 2. Preferred buildings for major (from the snapshot)
+        List<String> preferredBuildings = getPreferredBuildings(nganh);
+        log.debug("Picking room for subject: {}, major: {}, preferred buildings: {}",
+                maMon, nganh, preferredBuildings);
+
+        // 3. Suitable free rooms: the subject's room code (in any building) first, otherwise
+        // best fit = smallest free room per building, then building priority + capacity fit
+        Room selectedRoom = findSameCode(existingRoom, minCapacity, occupied, thu, kip, profile,
+                checkWeeks ? weekSchedule : null);
+        if (selectedRoom == null) {
+            selectedRoom = findBestFit(rooms.getBuckets(profile), minCapacity, preferredBuildings, occupied, thu, kip,
+                    checkWeeks ? weekSchedule : null);
+        }
+
+        if (selectedRoom == null) {
+            log.warn(
+                    "No suitable rooms found for subject: {}, major: {}, subjectType: {}, studentYear: {}, heDacThu: {}",
+                    maMon, nganh, subjectType, studentYear, heDacThu);
+
+            // Fallback: try to find any available room (relax constraints),
+            // the subject's previous room still comes first
+            selectedRoom = findSameCode(existingRoom, minCapacity, occupied, thu, kip,
+                    RoomCandidateIndex.Profile.ANY, null);
+            if (selectedRoom == null) {
+                selectedRoom = findBestFit(rooms.getBuckets(RoomCandidateIndex.Profile.ANY), minCapacity,
+                        preferredBuildings, occupied, thu, kip, null);
+            }
+
+            if (selectedRoom == null) {
+                log.error("No rooms available even with fallback logic");
+                return NO_ROOM;
+            }
+            log.info("Fallback: selected room {}", selectedRoom.getPhong());
+        }
+
+        // 4. Save mapping
+        subjectRooms.put(maMon, selectedRoom.getPhong());
+
+        boolean isPreferredBuilding = selectedRoom.getDay().equals(preferredBuildings.get(0));
+        int distanceToPreferred = calculateDistance(selectedRoom.getDay(), preferredBuildings.get(0));
+        return createRoomPickResult(selectedRoom, distanceToPreferred, isPreferredBuilding);
+    }
+
+    /**
+     * First room (catalog order) with the subject's previous room code that is big enough, suitable and free
+     */
+    private Room findSameCode(String roomCode, int minCapacity, RoomOccupancy occupied, int thu, int kip,
+            RoomCandidateIndex.Profile profile, List<String> weekSchedule) {
+        for (Room room : rooms.findAllByCode(roomCode)) {
+            if (room.getCapacity() >= minCapacity && RoomCandidateIndex.matches(profile, room)
+                    && !occupied.isOccupied(room.getPhong(), thu, kip)
+                    && !hasWeekConflict(room.getPhong(), thu, kip, occupied, weekSchedule)) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lowest score = building priority + (capacity - siso), ties go to catalog order
+     */
+    private Room findBestFit(List<RoomCandidateIndex.Bucket> buckets, int minCapacity,
+            List<String> preferredBuildings, RoomOccupancy occupied, int thu, int kip, List<String> weekSchedule) {
+        Room best = null;
+        int bestScore = Integer.MAX_VALUE;
+        int bestOrder = Integer.MAX_VALUE;
+
+        for (RoomCandidateIndex.Bucket bucket : buckets) {
+            int position = weekSchedule == null
+                    ? bucket.bestFreeFit(minCapacity, occupied, thu, kip)
+                    : bucket.bestFit(minCapacity, room -> !occupied.isOccupied(room.getPhong(), thu, kip)
+                            && !hasWeekConflict(room.getPhong(), thu, kip, occupied, weekSchedule));
+            if (position < 0) {
+                continue;
+            }
+            Room room = bucket.getRoom(position);
+            int score = calculateBuildingScore(bucket.getBuilding(), preferredBuildings)
+                    + room.getCapacity() - minCapacity;
+            int order = bucket.getCatalogOrder(position);
+            if (score < bestScore || (score == bestScore && order < bestOrder)) {
+                best = room;
+                bestScore = score;
+                bestOrder = order;
+            }
+        }
+        return best;
+    }
+
+    private static int calculateBuildingScore(String building, List<String> preferredBuildings) {
+        int buildingIndex = preferredBuildings.indexOf(building);
+        if (buildingIndex >= 0) {
+            // Preferred building: lower index = higher priority
+            return buildingIndex * 100; // Priority 1=0, 2=100, 3=200
+        }
+
+        // Not in preferred list: calculate distance to closest preferred building
+        int minDistance = Integer.MAX_VALUE;
+        for (String preferredBuilding : preferredBuildings) {
+            minDistance = Math.min(minDistance, calculateDistance(building, preferredBuilding));
+        }
+        return 1000 + (minDistance * 50); // Base penalty + distance penalty
+    }
+
+    /**
+     * Week-qualified occupied keys ("phong|thu|kip|w1,w2") sharing a week with weekSchedule
+     */
+    private static boolean hasWeekConflict(String code, int thu, int kip, RoomOccupancy occupied,
+            List<String> weekSchedule) {
+        if (weekSchedule == null) {
+            return false;
+        }
+        for (String occupiedKey : occupied.getExtraKeys()) {
+            String[] parts = occupiedKey.split("\\|");
+            if (parts.length >= 4 && parts[0].equals(code) && parts[1].equals(String.valueOf(thu))
+                    && parts[2].equals(String.valueOf(kip))) {
+                List<String> occWeekList = Arrays.asList(parts[3].split(","));
+                if (weekSchedule.stream().anyMatch(occWeekList::contains)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int calculateDistance(String building1, String building2) {
+        if (building1.equals(building2))
+            return 0;
+
+        return Math.abs(BUILDING_POSITIONS.getOrDefault(building1, 0) -
+                BUILDING_POSITIONS.getOrDefault(building2, 0));
+    }
+
+    private static RoomPickResult createRoomPickResult(Room room, int distanceScore, boolean isPreferred) {
+        return RoomPickResult.builder()
+                .roomCode(room.getPhong())
+                .roomId(room.getPhong() + "-" + room.getDay())
+                .building(room.getDay())
+                .distanceScore(distanceScore)
+                .isPreferredBuilding(isPreferred)
+                .build();
+    }
+}
@@ -0,0 +1,271 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.entity.Room;
+import com.ptit.schedule.entity.RoomType;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Immutable index over the room catalog for pickRoom.
+ * Rooms are partitioned by suitability profile (which kind of class may use them)
+ * and by building; each bucket is ordered by capacity so the best fit is a ceiling search.
+ * Rebuilt when the room catalog changes.
+ */
+public final class RoomCandidateIndex {
+
+    /**
+     * Kind of class, decides which rooms are suitable (same rules as the old isRoomSuitable)
+     */
+    public enum Profile {
+        REGULAR, // Hệ thường, khóa khác: phòng general
+        YEAR_2024, // Hệ thường, khóa 2024: phòng khoa_2024 hoặc general
+        NT, // Khóa 2022: phòng Ngọc Trúc
+        ENGLISH, // Môn Tiếng Anh: phòng tiếng Anh
+        CLC_2024, // CLC khóa 2024: note có "lớp clc 2024"
+        CLC_OTHER, // CLC khóa khác: phòng CLC, note không có "2024"
+        NONE, // Hệ đặc thù khác (CTTT, ...): không có phòng phù hợp
+        ANY // Fallback: mọi phòng
+    }
+
+    private final long version;
+    private final RoomIdRegistry roomIds;
+    private final List<Room> rooms;
+    private final Map<String, List<Room>> roomsByCode;
+    private final Map<Profile, List<Bucket>> buckets;
+
+    private RoomCandidateIndex(long version, RoomIdRegistry roomIds, List<Room> rooms,
+            Map<String, List<Room>> roomsByCode, Map<Profile, List<Bucket>> buckets) {
+        this.version = version;
+        this.roomIds = roomIds;
+        this.rooms = rooms;
+        this.roomsByCode = roomsByCode;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Build from the catalog; catalog order breaks ties between equally good rooms
+     */
+    public static RoomCandidateIndex build(List<Room> catalog, long version) {
+        List<Room> rooms = new ArrayList<>();
+        for (Room room : catalog) {
+            if (room.getPhong() != null && !room.getPhong().trim().isEmpty()) {
+                rooms.add(room);
+            }
+        }
+
+        // Room codes are not unique across buildings (e.g. 303-A3 and 303-NT)
+        Map<String, List<Room>> roomsByCode = new HashMap<>();
+        for (Room room : rooms) {
+            roomsByCode.computeIfAbsent(room.getPhong(), k -> new ArrayList<>()).add(room);
+        }
+        RoomIdRegistry roomIds = RoomIdRegistry.forCatalog(version, roomsByCode.keySet());
+
+        Map<Profile, List<Bucket>> buckets = new EnumMap<>(Profile.class);
+        for (Profile profile : Profile.values()) {
+            Map<String, List<Integer>> byBuilding = new LinkedHashMap<>();
+            for (int i = 0; i < rooms.size(); i++) {
+                if (matches(profile, rooms.get(i))) {
+                    byBuilding.computeIfAbsent(buildingOf(rooms.get(i)), k -> new ArrayList<>()).add(i);
+                }
+            }
+            List<Bucket> profileBuckets = new ArrayList<>(byBuilding.size());
+            for (Map.Entry<String, List<Integer>> entry : byBuilding.entrySet()) {
+                profileBuckets.add(new Bucket(entry.getKey(), rooms, entry.getValue(), roomIds));
+            }
+            buckets.put(profile, Collections.unmodifiableList(profileBuckets));
+        }
+
+        return new RoomCandidateIndex(version, roomIds, Collections.unmodifiableList(rooms),
+                Collections.unmodifiableMap(roomsByCode), buckets);
+    }
+
+    public static Profile profileOf(String subjectType, String studentYear, String heDacThu) {
+        // Special system room assignment rules (Hệ đặc thù)
+        if (heDacThu != null && !heDacThu.trim().isEmpty()) {
+            if ("CLC".equals(heDacThu)) {
+                return "2024".equals(studentYear) ? Profile.CLC_2024 : Profile.CLC_OTHER;
+            }
+            // Other special systems (CTTT, etc.): NO room assignment
+            return Profile.NONE;
+        }
+        if ("2022".equals(studentYear)) {
+            return Profile.NT;
+        }
+        if ("english".equals(subjectType)) {
+            return Profile.ENGLISH;
+        }
+        return "2024".equals(studentYear) ? Profile.YEAR_2024 : Profile.REGULAR;
+    }
+
+    /**
+     * Whether a room is suitable for a profile
+     */
+    public static boolean matches(Profile profile, Room room) {
+        RoomType type = room.getType();
+        String note = room.getNote() != null ? room.getNote().toLowerCase() : "";
+
+        switch (profile) {
+            case CLC_2024:
+                return note.contains("lớp clc 2024");
+            case CLC_OTHER:
+                return (note.contains("clc") || type == RoomType.CLC) && !note.contains("2024");
+            case NT:
+                return type == RoomType.NGOC_TRUC;
+            case ENGLISH:
+                return type == RoomType.ENGLISH_CLASS;
+            case YEAR_2024:
+            case REGULAR:
+                // Không được dùng phòng NT, Tiếng Anh, CLC
+                if (type == RoomType.NGOC_TRUC || type == RoomType.ENGLISH_CLASS || type == RoomType.CLC
+                        || note.contains("nt") || note.contains("phòng học ta") || note.contains("lớp clc")) {
+                    return false;
+                }
+                return type == RoomType.GENERAL || (profile == Profile.YEAR_2024 && type == RoomType.KHOA_2024);
+            case ANY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Room ids of this catalog version, occupancies checked against the buckets should use it
+     */
+    public RoomIdRegistry getRoomIds() {
+        return roomIds;
+    }
+
+    /**
+     * Rooms with a code, in catalog order
+     */
+    public List<Room> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * First room with this code in catalog order, or null
+     */
+    public Room findByCode(String roomCode) {
+        List<Room> sameCode = findAllByCode(roomCode);
+        return sameCode.isEmpty() ? null : sameCode.get(0);
+    }
+
+    /**
+     * Every room with this code (one per building), in catalog order
+     */
+    public List<Room> findAllByCode(String roomCode) {
+        return roomCode != null ? roomsByCode.getOrDefault(roomCode, Collections.emptyList())
+                : Collections.emptyList();
+    }
+
+    /**
+     * One bucket per building holding rooms suitable for the profile
+     */
+    public List<Bucket> getBuckets(Profile profile) {
+        return buckets.get(profile);
+    }
+
+    private static String buildingOf(Room room) {
+        return room.getDay() != null ? room.getDay() : "";
+    }
+
+    /**
+     * Rooms of one building (for one profile) sorted by capacity, then catalog order
+     */
+    public static final class Bucket {
+        private final String building;
+        private final Room[] rooms;
+        private final int[] capacities;
+        private final int[] catalogOrder;
+        private final RoomIdRegistry roomIds;
+        private final int[] occupancyIds; // RoomOccupancy ids, so the free check needs no string lookup
+
+        private Bucket(String building, List<Room> catalog, List<Integer> positions, RoomIdRegistry roomIds) {
+            List<Integer> sorted = new ArrayList<>(positions);
+            sorted.sort(Comparator.<Integer>comparingInt(i -> capacityOf(catalog.get(i)))
+                    .thenComparingInt(i -> i));
+
+            this.building = building;
+            this.roomIds = roomIds;
+            this.rooms = new Room[sorted.size()];
+            this.capacities = new int[sorted.size()];
+            this.catalogOrder = new int[sorted.size()];
+            this.occupancyIds = new int[sorted.size()];
+            for (int k = 0; k < sorted.size(); k++) {
+                Room room = catalog.get(sorted.get(k));
+                rooms[k] = room;
+                capacities[k] = capacityOf(room);
+                catalogOrder[k] = sorted.get(k);
+                occupancyIds[k] = roomIds.idOf(room.getPhong());
+            }
+        }
+
+        public String getBuilding() {
+            return building;
+        }
+
+        public int size() {
+            return rooms.length;
+        }
+
+        /**
+         * Position of the smallest room with capacity >= minCapacity accepted by the filter
+         * (earliest in catalog order among equal capacities), or -1
+         */
+        public int bestFit(int minCapacity, Predicate<Room> available) {
+            for (int k = ceiling(minCapacity); k < rooms.length; k++) {
+                if (available.test(rooms[k])) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Same as bestFit with "not occupied at (thu, kip)" as the filter, without allocating
+         */
+        public int bestFreeFit(int minCapacity, RoomOccupancy occupied, int thu, int kip) {
+            if (occupied.getRegistry() != roomIds) {
+                // Occupancy of another catalog version, ids differ: look rooms up by code
+                return bestFit(minCapacity, room -> !occupied.isOccupied(room.getPhong(), thu, kip));
+            }
+            for (int k = ceiling(minCapacity); k < rooms.length; k++) {
+                if (!occupied.isOccupied(occupancyIds[k], thu, kip)) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+
+        public Room getRoom(int position) {
+            return rooms[position];
+        }
+
+        public int getCatalogOrder(int position) {
+            return catalogOrder[position];
+        }
+
+        private int ceiling(int minCapacity) {
+            int low = 0;
+            int high = capacities.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (capacities[mid] < minCapacity) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int capacityOf(Room room) {
+            return room.getCapacity() != null ? room.getCapacity() : 0;
+        }
+    }
+}
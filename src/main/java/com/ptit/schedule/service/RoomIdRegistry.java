@@ -0,0 +1,95 @@
+package com.ptit.schedule.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense room ids for RoomOccupancy bitmaps, scoped to one version of the room catalog.
+ * Seeded with the catalog's room codes when RoomCandidateIndex is built; codes outside the
+ * catalog (rooms deleted since, journal keys, ...) get an id on first use. When the catalog
+ * changes a new registry becomes current, occupancies still on the old one are rebased on
+ * use, so ids of removed rooms are dropped together with the old registry.
+ */
+public final class RoomIdRegistry {
+
+    // Same key as the old "phong|thu|kip" string for a null room code
+    static final String NULL_CODE = "null";
+
+    private static volatile RoomIdRegistry current = new RoomIdRegistry(-1);
+
+    private final long catalogVersion;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> codes = new ArrayList<>();
+
+    private RoomIdRegistry(long catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    /**
+     * Registry new occupancies are created on
+     */
+    public static RoomIdRegistry current() {
+        return current;
+    }
+
+    /**
+     * Registry of a catalog version: made current unless a newer version already is.
+     * Catalog rooms get ids 0..n-1 in catalog order.
+     */
+    public static synchronized RoomIdRegistry forCatalog(long catalogVersion, Collection<String> roomCodes) {
+        RoomIdRegistry registry = new RoomIdRegistry(catalogVersion);
+        for (String roomCode : roomCodes) {
+            registry.idOf(roomCode);
+        }
+        if (catalogVersion >= current.catalogVersion) {
+            current = registry;
+        }
+        return registry;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    /**
+     * Dense id of a room code, assigned on first use
+     */
+    public int idOf(String roomCode) {
+        String code = normalize(roomCode);
+        Integer id = ids.get(code);
+        if (id != null) {
+            return id;
+        }
+        synchronized (codes) {
+            return ids.computeIfAbsent(code, key -> {
+                codes.add(key);
+                return codes.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Id of a room code, or -1 if it never got one
+     */
+    public int find(String roomCode) {
+        Integer id = ids.get(normalize(roomCode));
+        return id != null ? id : -1;
+    }
+
+    public String codeOf(int roomId) {
+        synchronized (codes) {
+            return codes.get(roomId);
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    static String normalize(String roomCode) {
+        return roomCode != null ? roomCode : NULL_CODE;
+    }
+}
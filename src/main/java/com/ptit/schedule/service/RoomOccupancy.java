@@ -0,0 +1,238 @@
+package com.ptit.schedule.service;
+
+import java.util.*;
+
+/**
+ * Room occupancy as a bitmap: room (dense int id) x thu x kip.
+ * Each room owns one long, bit = thu * 8 + kip (thu, kip in 0..7).
+ * Room ids come from a RoomIdRegistry (one per room catalog version); occupancies on
+ * different registries are merged through the room codes.
+ * Converts to/from the "phong|thu|kip" strings stored by OccupancyJournal;
+ * keys that do not fit this format (e.g. "phong|thu|kip|weeks") are kept as-is.
+ */
+public final class RoomOccupancy {
+
+    private static final int SLOT_BITS = 3;
+    private static final int MAX_SLOT = (1 << SLOT_BITS) - 1;
+
+    private final RoomIdRegistry registry;
+    private long[] words;
+    private final Set<String> extraKeys;
+
+    /**
+     * Empty occupancy on the current registry
+     */
+    public RoomOccupancy() {
+        this(RoomIdRegistry.current());
+    }
+
+    public RoomOccupancy(RoomIdRegistry registry) {
+        this(registry, new long[Math.max(16, registry.size())], new HashSet<>());
+    }
+
+    private RoomOccupancy(RoomIdRegistry registry, long[] words, Set<String> extraKeys) {
+        this.registry = registry;
+        this.words = words;
+        this.extraKeys = extraKeys;
+    }
+
+    public RoomIdRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Build from the legacy string keys ("phong|thu|kip")
+     */
+    public static RoomOccupancy fromKeys(Collection<?> keys) {
+        RoomOccupancy occupancy = new RoomOccupancy();
+        if (keys == null) {
+            return occupancy;
+        }
+        for (Object key : keys) {
+            if (key != null) {
+                occupancy.addKey(key.toString());
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Legacy string keys, used when writing the occupancy snapshot/journal
+     */
+    public List<String> toKeys() {
+        List<String> keys = new ArrayList<>(size());
+        for (int id = 0; id < words.length; id++) {
+            long word = words[id];
+            if (word == 0) {
+                continue;
+            }
+            String code = registry.codeOf(id);
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                keys.add(code + "|" + (bit >>> SLOT_BITS) + "|" + (bit & MAX_SLOT));
+                word &= word - 1;
+            }
+        }
+        keys.addAll(extraKeys);
+        return keys;
+    }
+
+    public boolean isOccupied(String roomCode, int thu, int kip) {
+        if (!fits(thu, kip)) {
+            return extraKeys.contains(roomCode + "|" + thu + "|" + kip);
+        }
+        int id = registry.find(roomCode);
+        return id >= 0 && isOccupied(id, thu, kip);
+    }
+
+    /**
+     * roomId must come from this occupancy's registry
+     */
+    public boolean isOccupied(int roomId, int thu, int kip) {
+        if (!fits(thu, kip)) {
+            return extraKeys.contains(registry.codeOf(roomId) + "|" + thu + "|" + kip);
+        }
+        return roomId < words.length && (words[roomId] & bit(thu, kip)) != 0;
+    }
+
+    /**
+     * Mark a room as occupied, returns true if it was free before
+     */
+    public boolean occupy(String roomCode, int thu, int kip) {
+        if (!fits(thu, kip)) {
+            return extraKeys.add(roomCode + "|" + thu + "|" + kip);
+        }
+        return occupy(registry.idOf(roomCode), thu, kip);
+    }
+
+    public boolean occupy(int roomId, int thu, int kip) {
+        if (!fits(thu, kip)) {
+            return extraKeys.add(registry.codeOf(roomId) + "|" + thu + "|" + kip);
+        }
+        ensureCapacity(roomId);
+        long before = words[roomId];
+        words[roomId] = before | bit(thu, kip);
+        return before != words[roomId];
+    }
+
+    /**
+     * Mark a room as occupied in every (thu, kip), e.g. to keep a parallel task off rooms it does not own
+     */
+    public void occupyAll(String roomCode) {
+        int roomId = registry.idOf(roomCode);
+        ensureCapacity(roomId);
+        words[roomId] = -1L;
+    }
+
+    /**
+     * Bulk union (used when committing a session to global)
+     */
+    public void addAll(RoomOccupancy other) {
+        if (other.registry != registry) {
+            addAll(other.rebase(registry));
+            return;
+        }
+        ensureCapacity(other.words.length - 1);
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        extraKeys.addAll(other.extraKeys);
+    }
+
+    /**
+     * Whether any (room, thu, kip) is occupied in both
+     */
+    public boolean intersects(RoomOccupancy other) {
+        if (other.registry != registry) {
+            return intersects(other.rebase(registry));
+        }
+        int length = Math.min(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return !Collections.disjoint(extraKeys, other.extraKeys);
+    }
+
+    /**
+     * This occupancy with ids of the given registry (itself if it already uses it)
+     */
+    public RoomOccupancy rebase(RoomIdRegistry target) {
+        if (target == registry) {
+            return this;
+        }
+        RoomOccupancy rebased = new RoomOccupancy(target, new long[Math.max(16, target.size())],
+                new HashSet<>(extraKeys));
+        for (int id = 0; id < words.length; id++) {
+            if (words[id] != 0) {
+                int targetId = target.idOf(registry.codeOf(id));
+                rebased.ensureCapacity(targetId);
+                rebased.words[targetId] |= words[id];
+            }
+        }
+        return rebased;
+    }
+
+    /**
+     * Number of occupied (room, thu, kip) entries
+     */
+    public int size() {
+        int count = extraKeys.size();
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+        extraKeys.clear();
+    }
+
+    public RoomOccupancy copy() {
+        return new RoomOccupancy(registry, words.clone(), new HashSet<>(extraKeys));
+    }
+
+    /**
+     * Keys that are not plain "phong|thu|kip" (kept so old files round-trip unchanged)
+     */
+    public Set<String> getExtraKeys() {
+        return Collections.unmodifiableSet(extraKeys);
+    }
+
+    private void addKey(String key) {
+        String[] parts = key.split("\\|");
+        if (parts.length == 3) {
+            try {
+                int thu = Integer.parseInt(parts[1].trim());
+                int kip = Integer.parseInt(parts[2].trim());
+                if (fits(thu, kip)) {
+                    occupy(registry.idOf(parts[0]), thu, kip);
+                    return;
+                }
+            } catch (NumberFormatException ignored) {
+                // Not a numeric slot, keep the raw key
+            }
+        }
+        extraKeys.add(key);
+    }
+
+    private void ensureCapacity(int roomId) {
+        if (roomId >= words.length) {
+            words = Arrays.copyOf(words, Math.max(roomId + 1, words.length * 2));
+        }
+    }
+
+    private static boolean fits(int thu, int kip) {
+        return thu >= 0 && thu <= MAX_SLOT && kip >= 0 && kip <= MAX_SLOT;
+    }
+
+    private static long bit(int thu, int kip) {
+        return 1L << ((thu << SLOT_BITS) | kip);
+    }
+}
@@ -4,13 +4,10 @@ import com.ptit.schedule.dto.RoomRequest;
 import com.ptit.schedule.dto.RoomResponse;
 import com.ptit.schedule.dto.RoomStatusUpdateRequest;
 import com.ptit.schedule.dto.RoomBulkStatusUpdateRequest;
-import com.ptit.schedule.entity.Room;
 import com.ptit.schedule.entity.RoomStatus;
 import com.ptit.schedule.entity.RoomType;
-import com.ptit.schedule.dto.RoomPickResult;
 
 import java.util.List;
-import java.util.Set;
 
 public interface RoomService {
 
@@ -43,8 +40,6 @@ public interface RoomService {
 
     List<RoomResponse> getRoomsByTypeAndStatus(RoomType type, RoomStatus status);
 
-    // Methods for TimetableSchedulingService
-    RoomPickResult pickRoom(List<Room> rooms, Integer sisoPerClass, Set<Object> occupied,
-            Integer thu, Integer kip, String subjectType, String studentYear,
-            String heDacThu, List<String> weekSchedule, String nganh, String maMon);
+    // Room catalog snapshot for TimetableSchedulingService (see RoomAssignmentEngine)
+    RoomCandidateIndex getRoomCandidateIndex();
 }
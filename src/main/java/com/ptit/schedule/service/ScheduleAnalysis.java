@@ -0,0 +1,56 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.ConflictResult;
+import com.ptit.schedule.dto.ScheduleEntry;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Parsed entries + detected conflicts of one uploaded schedule file, keyed by the
+ * SHA-256 of its bytes. Immutable, so it can be shared by the cache and every request
+ * that uploads (or drills into) the same file.
+ */
+public final class ScheduleAnalysis {
+
+    private final String contentHash;
+    private final boolean validFormat;
+    private final List<ScheduleEntry> entries;
+    private final ConflictResult conflictResult;
+    private final LocalDateTime analyzedAt;
+
+    ScheduleAnalysis(String contentHash, boolean validFormat, List<ScheduleEntry> entries,
+            ConflictResult conflictResult) {
+        this.contentHash = contentHash;
+        this.validFormat = validFormat;
+        this.entries = entries != null ? List.copyOf(entries) : List.of();
+        this.conflictResult = conflictResult;
+        this.analyzedAt = LocalDateTime.now();
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * false = not an .xlsx file or the header row is not a timetable header
+     */
+    public boolean isValidFormat() {
+        return validFormat;
+    }
+
+    public List<ScheduleEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * null when the format is invalid or the file has no entries
+     */
+    public ConflictResult getConflictResult() {
+        return conflictResult;
+    }
+
+    public LocalDateTime getAnalyzedAt() {
+        return analyzedAt;
+    }
+}
@@ -0,0 +1,132 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.ConflictResult;
+import com.ptit.schedule.dto.ScheduleEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upload pipeline of /api/schedule-validation: the upload is copied to a temp file once
+ * (hashing it on the way), then header check + entry parsing run in a single SAX pass
+ * and the entries go straight to conflict detection. Results are cached by content hash
+ * (LRU, tkb.analysis.cache-size), so re-uploading the same file and the
+ * /conflicts/{type} drill-down never parse again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduleAnalysisService {
+
+    private final ScheduleExcelReaderService excelReaderService;
+    private final ScheduleConflictDetectionService conflictDetectionService;
+
+    @Value("${tkb.analysis.cache-size:8}")
+    private int cacheSize;
+
+    // Access order: the least recently used analysis is evicted first
+    private final Map<String, ScheduleAnalysis> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Analyze an uploaded schedule, or return the cached analysis of identical bytes
+     */
+    public ScheduleAnalysis analyze(MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        if (filename == null || !filename.toLowerCase().endsWith(".xlsx")) {
+            return new ScheduleAnalysis(null, false, null, null);
+        }
+
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile("schedule-upload-", ".xlsx");
+            String hash;
+            try (DigestInputStream in = new DigestInputStream(file.getInputStream(), sha256())) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                hash = HexFormat.of().formatHex(in.getMessageDigest().digest());
+            }
+
+            ScheduleAnalysis cached = getCached(hash);
+            if (cached != null) {
+                log.info("Schedule analysis cache hit for {} ({})", filename, hash.substring(0, 12));
+                return cached;
+            }
+
+            long start = System.currentTimeMillis();
+            List<ScheduleEntry> entries = excelReaderService.parseScheduleExcel(tmp);
+            ScheduleAnalysis analysis;
+            if (entries == null) {
+                analysis = new ScheduleAnalysis(hash, false, null, null);
+            } else {
+                ConflictResult conflicts = entries.isEmpty() ? null : conflictDetectionService.detectConflicts(entries);
+                analysis = new ScheduleAnalysis(hash, true, entries, conflicts);
+            }
+            log.info("Analyzed {} ({} entries) in {} ms", filename, analysis.getEntries().size(),
+                    System.currentTimeMillis() - start);
+
+            put(analysis);
+            return analysis;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không thể đọc file upload: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Cached analysis by content hash (returned by analyze), null if unknown or evicted
+     */
+    public ScheduleAnalysis getAnalysis(String contentHash) {
+        if (contentHash == null || contentHash.isBlank()) {
+            throw new IllegalArgumentException("contentHash is required");
+        }
+        return getCached(contentHash.trim().toLowerCase());
+    }
+
+    private synchronized ScheduleAnalysis getCached(String hash) {
+        return cache.get(hash);
+    }
+
+    private synchronized void put(ScheduleAnalysis analysis) {
+        cache.put(analysis.getContentHash(), analysis);
+        while (cache.size() > Math.max(1, cacheSize)) {
+            String eldest = cache.keySet().iterator().next();
+            cache.remove(eldest);
+            log.debug("Evicted schedule analysis {}", eldest);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Could not delete temp upload {}", tmp);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.exception.BulkInsertException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Bulk insert path for generated timetables. Schedule uses IDENTITY ids, so Hibernate sends one
+ * INSERT per row; here rows go out as multi-row INSERT ... VALUES (...), (...) statements
+ * (the same shape MySQL's rewriteBatchedStatements produces), rowsPerStatement rows each,
+ * and every chunkSize rows are committed in their own transaction. Generated ids are
+ * written back to the entities.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduleBulkWriter {
+
+    private static final String[] COLUMNS = {
+            "class_number", "subject_id", "subject_name", "student_year", "major", "special_system",
+            "day_of_week", "session_number", "start_period", "period_length", "room_number", "semester", "week_mask"
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${tkb.bulk-insert.rows-per-statement:500}")
+    private int rowsPerStatement;
+
+    @Value("${tkb.bulk-insert.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * Insert new schedules (id == null). Chunks commit one by one: onChunkCommitted receives each
+     * chunk (ids filled in) after its transaction, or directly when joining an outer transaction.
+     * If a chunk fails, the chunks before it stay saved and the {@link BulkInsertException} carries their ids.
+     * @return number of inserted rows
+     */
+    public int insertAll(List<Schedule> schedules, Consumer<List<Schedule>> onChunkCommitted) {
+        if (schedules.isEmpty()) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int step = Math.max(chunkSize, 1);
+        int inserted = 0;
+
+        for (int from = 0; from < schedules.size(); from += step) {
+            List<Schedule> chunk = schedules.subList(from, Math.min(from + step, schedules.size()));
+            try {
+                transaction.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    insertChunk(connection, chunk);
+                    return null;
+                }));
+            } catch (RuntimeException e) {
+                log.error("Bulk insert failed after {}/{} schedules", inserted, schedules.size(), e);
+                List<Long> savedIds = schedules.subList(0, inserted).stream().map(Schedule::getId).toList();
+                throw new BulkInsertException("Lỗi khi lưu lịch học (đã lưu " + inserted + "/" + schedules.size()
+                        + " dòng): " + e.getMessage(), savedIds, e);
+            }
+            inserted += chunk.size();
+            onChunkCommitted.accept(chunk);
+        }
+
+        long elapsedMs = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+        log.info("Bulk inserted {} schedules in {} ms ({} rows/s, {} rows/statement, {} rows/transaction)",
+                inserted, elapsedMs, inserted * 1000L / elapsedMs, rowsPerStatement, step);
+        return inserted;
+    }
+
+    private void insertChunk(Connection connection, List<Schedule> chunk) throws SQLException {
+        int rows = Math.max(rowsPerStatement, 1);
+        int full = chunk.size() / rows * rows;
+        if (full > 0) {
+            // Cùng một câu lệnh cho mọi nhóm đủ rows dòng
+            try (PreparedStatement statement = connection.prepareStatement(insertSql(rows), Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < full; from += rows) {
+                    executeInsert(statement, chunk.subList(from, from + rows));
+                }
+            }
+        }
+        if (full < chunk.size()) {
+            List<Schedule> rest = chunk.subList(full, chunk.size());
+            try (PreparedStatement statement = connection.prepareStatement(insertSql(rest.size()), Statement.RETURN_GENERATED_KEYS)) {
+                executeInsert(statement, rest);
+            }
+        }
+    }
+
+    private static void executeInsert(PreparedStatement statement, List<Schedule> rows) throws SQLException {
+        int index = 1;
+        for (Schedule schedule : rows) {
+            index = bind(statement, index, schedule);
+        }
+        statement.executeUpdate();
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            for (Schedule schedule : rows) {
+                if (!keys.next()) {
+                    throw new SQLException("Missing generated id for inserted schedule");
+                }
+                schedule.setId(keys.getLong(1));
+            }
+        }
+    }
+
+    private static int bind(PreparedStatement statement, int index, Schedule schedule) throws SQLException {
+        statement.setObject(index++, schedule.getClassNumber(), Types.INTEGER);
+        statement.setString(index++, schedule.getSubjectId());
+        statement.setString(index++, schedule.getSubjectName());
+        statement.setString(index++, schedule.getStudentYear());
+        statement.setString(index++, schedule.getMajor());
+        statement.setString(index++, schedule.getSpecialSystem());
+        statement.setObject(index++, schedule.getDayOfWeek(), Types.INTEGER);
+        statement.setObject(index++, schedule.getSessionNumber(), Types.INTEGER);
+        statement.setObject(index++, schedule.getStartPeriod(), Types.INTEGER);
+        statement.setObject(index++, schedule.getPeriodLength(), Types.INTEGER);
+        statement.setString(index++, schedule.getRoomNumber());
+        statement.setString(index++, schedule.getSemester());
+        statement.setInt(index++, schedule.getWeeks() == null ? 0 : schedule.getWeeks().mask());
+        return index;
+    }
+
+    static String insertSql(int rows) {
+        String placeholders = "(" + "?, ".repeat(COLUMNS.length - 1) + "?)";
+        StringBuilder sql = new StringBuilder(64 + rows * (placeholders.length() + 2))
+                .append("INSERT INTO schedules (").append(String.join(", ", COLUMNS)).append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(placeholders);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,280 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.ScheduleConflictResponse;
+import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.entity.WeekSet;
+import com.ptit.schedule.repository.ScheduleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Live room-conflict index over the persisted schedules table.
+ * Each schedule occupies cells (room, day, period) with a week mask; two schedules in the
+ * same cell sharing a week conflict. Built from the database on first use, then kept up
+ * to date by ScheduleService after each committed save/delete: adding or removing one
+ * schedule only touches its own cells, and reading conflicts walks the conflict
+ * adjacency, never the whole table.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduleConflictIndex {
+
+    private final ScheduleRepository scheduleRepository;
+
+    private final Map<Long, Footprint> footprints = new HashMap<>();
+    // (room, day, period) -> ids of the schedules in that cell
+    private final Map<Long, List<Long>> cells = new HashMap<>();
+    // schedule id -> ids of the schedules it conflicts with (symmetric)
+    private final Map<Long, Set<Long>> partners = new HashMap<>();
+    private final Map<String, Integer> roomIds = new HashMap<>();
+    private int conflictPairs;
+    private boolean loaded;
+
+    /**
+     * Index saved (or updated) schedules; an existing id is re-checked from scratch
+     */
+    public synchronized void upsert(Collection<Schedule> schedules) {
+        if (!loaded) {
+            // Not built yet: the first read loads the committed rows anyway
+            return;
+        }
+        for (Schedule schedule : schedules) {
+            if (schedule.getId() == null) {
+                continue;
+            }
+            removeFootprint(schedule.getId());
+            addFootprint(schedule);
+        }
+    }
+
+    public synchronized void remove(Long scheduleId) {
+        if (loaded && scheduleId != null) {
+            removeFootprint(scheduleId);
+        }
+    }
+
+    public synchronized void removeAll(Collection<Long> scheduleIds) {
+        if (loaded) {
+            scheduleIds.forEach(this::removeFootprint);
+        }
+    }
+
+    /**
+     * Drop the index when the changed ids are unknown; the next read rebuilds it from the database
+     */
+    public synchronized void invalidate() {
+        footprints.clear();
+        cells.clear();
+        partners.clear();
+        conflictPairs = 0;
+        loaded = false;
+    }
+
+    public synchronized void clear() {
+        footprints.clear();
+        cells.clear();
+        partners.clear();
+        conflictPairs = 0;
+        loaded = true;
+    }
+
+    /**
+     * Current conflicts, optionally only in one room
+     */
+    public synchronized List<ScheduleConflictResponse> getConflicts(String roomNumber) {
+        ensureLoaded();
+        List<ScheduleConflictResponse> conflicts = new ArrayList<>();
+        for (Map.Entry<Long, Set<Long>> entry : partners.entrySet()) {
+            Footprint first = footprints.get(entry.getKey());
+            if (roomNumber != null && !roomNumber.isBlank() && !first.roomNumber.equalsIgnoreCase(roomNumber.trim())) {
+                continue;
+            }
+            for (Long partner : entry.getValue()) {
+                if (entry.getKey() < partner) {
+                    conflicts.add(toResponse(first, footprints.get(partner)));
+                }
+            }
+        }
+        conflicts.sort(CONFLICT_ORDER);
+        return conflicts;
+    }
+
+    /**
+     * Conflicts of one schedule
+     */
+    public synchronized List<ScheduleConflictResponse> getConflictsOf(Long scheduleId) {
+        ensureLoaded();
+        Footprint footprint = footprints.get(scheduleId);
+        if (footprint == null) {
+            return List.of();
+        }
+        List<ScheduleConflictResponse> conflicts = new ArrayList<>();
+        for (Long partner : partners.getOrDefault(scheduleId, Set.of())) {
+            conflicts.add(toResponse(footprint, footprints.get(partner)));
+        }
+        conflicts.sort(CONFLICT_ORDER);
+        return conflicts;
+    }
+
+    public synchronized int getConflictCount() {
+        ensureLoaded();
+        return conflictPairs;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Schedule> schedules = scheduleRepository.findAll();
+        schedules.forEach(this::addFootprint);
+        loaded = true;
+        log.info("Built schedule conflict index: {} schedules, {} conflicts in {} ms",
+                footprints.size(), conflictPairs, System.currentTimeMillis() - start);
+    }
+
+    private void addFootprint(Schedule schedule) {
+        Footprint footprint = Footprint.of(schedule, roomIds);
+        if (footprint == null) {
+            // No room / day / periods / weeks (e.g. tiết 12 rows without room): cannot conflict
+            return;
+        }
+        footprints.put(footprint.id, footprint);
+        for (int period = footprint.startPeriod; period < footprint.endPeriod; period++) {
+            List<Long> occupants = cells.computeIfAbsent(footprint.cellKey(period), k -> new ArrayList<>(2));
+            for (Long other : occupants) {
+                if ((footprints.get(other).weekMask & footprint.weekMask) != 0) {
+                    link(footprint.id, other);
+                }
+            }
+            occupants.add(footprint.id);
+        }
+    }
+
+    private void removeFootprint(Long scheduleId) {
+        Footprint footprint = footprints.remove(scheduleId);
+        if (footprint == null) {
+            return;
+        }
+        for (int period = footprint.startPeriod; period < footprint.endPeriod; period++) {
+            long key = footprint.cellKey(period);
+            List<Long> occupants = cells.get(key);
+            if (occupants != null) {
+                occupants.remove(scheduleId);
+                if (occupants.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+        Set<Long> linked = partners.remove(scheduleId);
+        if (linked != null) {
+            for (Long partner : linked) {
+                Set<Long> back = partners.get(partner);
+                back.remove(scheduleId);
+                if (back.isEmpty()) {
+                    partners.remove(partner);
+                }
+                conflictPairs--;
+            }
+        }
+    }
+
+    private void link(Long a, Long b) {
+        if (partners.computeIfAbsent(a, k -> new HashSet<>()).add(b)) {
+            partners.computeIfAbsent(b, k -> new HashSet<>()).add(a);
+            conflictPairs++;
+        }
+    }
+
+    private static ScheduleConflictResponse toResponse(Footprint a, Footprint b) {
+        Footprint first = a.id < b.id ? a : b;
+        Footprint second = first == a ? b : a;
+
+        List<Integer> periods = new ArrayList<>();
+        for (int period = Math.max(a.startPeriod, b.startPeriod); period < Math.min(a.endPeriod, b.endPeriod); period++) {
+            periods.add(period);
+        }
+        List<Integer> weeks = WeekSet.ofMask(a.weekMask & b.weekMask).weeks();
+
+        return ScheduleConflictResponse.builder()
+                .roomNumber(first.roomNumber)
+                .dayOfWeek(first.dayOfWeek)
+                .periods(periods)
+                .weeks(weeks)
+                .first(first.summary)
+                .second(second.summary)
+                .build();
+    }
+
+    private static final Comparator<ScheduleConflictResponse> CONFLICT_ORDER = Comparator
+            .comparing(ScheduleConflictResponse::getRoomNumber)
+            .thenComparing(ScheduleConflictResponse::getDayOfWeek)
+            .thenComparing(conflict -> conflict.getPeriods().isEmpty() ? 0 : conflict.getPeriods().get(0))
+            .thenComparing(conflict -> conflict.getFirst().getId())
+            .thenComparing(conflict -> conflict.getSecond().getId());
+
+    /**
+     * Week mask of a schedule: bit w-1 = week w has class ("x")
+     */
+    static int weekMask(Schedule schedule) {
+        return schedule.getWeeks() == null ? 0 : schedule.getWeeks().mask();
+    }
+
+    /**
+     * What the index keeps of a schedule: its cells and a summary for responses
+     */
+    private static final class Footprint {
+        final Long id;
+        final String roomNumber;
+        final int roomId;
+        final int dayOfWeek;
+        final int startPeriod;
+        final int endPeriod; // exclusive
+        final int weekMask;
+        final ScheduleConflictResponse.ScheduleSummary summary;
+
+        private Footprint(Schedule schedule, int roomId, int weekMask) {
+            this.id = schedule.getId();
+            this.roomNumber = schedule.getRoomNumber().trim();
+            this.roomId = roomId;
+            this.dayOfWeek = schedule.getDayOfWeek();
+            this.startPeriod = schedule.getStartPeriod();
+            this.endPeriod = schedule.getStartPeriod() + schedule.getPeriodLength();
+            this.weekMask = weekMask;
+            this.summary = ScheduleConflictResponse.ScheduleSummary.builder()
+                    .id(schedule.getId())
+                    .subjectId(schedule.getSubjectId())
+                    .subjectName(schedule.getSubjectName())
+                    .classNumber(schedule.getClassNumber())
+                    .major(schedule.getMajor())
+                    .studentYear(schedule.getStudentYear())
+                    .sessionNumber(schedule.getSessionNumber())
+                    .startPeriod(schedule.getStartPeriod())
+                    .periodLength(schedule.getPeriodLength())
+                    .build();
+        }
+
+        static Footprint of(Schedule schedule, Map<String, Integer> roomIds) {
+            if (schedule.getId() == null || schedule.getRoomNumber() == null || schedule.getRoomNumber().isBlank()
+                    || schedule.getDayOfWeek() == null || schedule.getStartPeriod() == null
+                    || schedule.getPeriodLength() == null || schedule.getPeriodLength() <= 0) {
+                return null;
+            }
+            int weekMask = weekMask(schedule);
+            if (weekMask == 0) {
+                return null;
+            }
+            String room = schedule.getRoomNumber().trim().toUpperCase();
+            int roomId = roomIds.computeIfAbsent(room, k -> roomIds.size());
+            return new Footprint(schedule, roomId, weekMask);
+        }
+
+        long cellKey(int period) {
+            return ((long) roomId << 32) | ((long) (dayOfWeek & 0xFFFF) << 16) | (period & 0xFFFF);
+        }
+    }
+}
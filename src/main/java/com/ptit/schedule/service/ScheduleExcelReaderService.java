@@ -3,7 +3,9 @@ package com.ptit.schedule.service;
 import com.ptit.schedule.dto.ScheduleEntry;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ScheduleExcelReaderService {
     
@@ -13,6 +15,22 @@ public interface ScheduleExcelReaderService {
      * @return danh sách ScheduleEntry
      */
     List<ScheduleEntry> readScheduleFromExcel(MultipartFile file);
+
+    /**
+     * Đọc file Excel theo kiểu streaming, đẩy từng ScheduleEntry hợp lệ cho consumer
+     * theo thứ tự dòng mà không giữ cả workbook trong bộ nhớ
+     * @param file file Excel
+     * @param consumer nhận từng entry
+     * @return số entry đã đọc
+     */
+    int streamScheduleFromExcel(MultipartFile file, Consumer<ScheduleEntry> consumer);
+
+    /**
+     * Kiểm tra dòng header và đọc toàn bộ dữ liệu trong cùng một lượt đọc file
+     * @param file file Excel (.xlsx) trên đĩa
+     * @return danh sách ScheduleEntry, null nếu header không đúng định dạng thời khóa biểu
+     */
+    List<ScheduleEntry> parseScheduleExcel(Path file);
     
     /**
      * Validate file Excel có đúng định dạng thời khóa biểu không
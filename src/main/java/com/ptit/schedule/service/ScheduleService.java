@@ -1,14 +1,32 @@
 package com.ptit.schedule.service;
 
+import com.ptit.schedule.dto.KeysetPage;
+import com.ptit.schedule.dto.RoomAvailabilityResponse;
+import com.ptit.schedule.dto.ScheduleConflictResponse;
+import com.ptit.schedule.dto.ScheduleDeleteResult;
+import com.ptit.schedule.dto.ScheduleSaveResult;
+import com.ptit.schedule.dto.ScheduleView;
 import com.ptit.schedule.entity.Schedule;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ScheduleService {
-    void saveAll(List<Schedule> schedules);
+    ScheduleSaveResult saveAll(List<Schedule> schedules);
     List<Schedule> getAllSchedules();
     List<Schedule> getSchedulesBySubjectId(String subjectId);
     List<Schedule> getSchedulesByMajor(String major);
     List<Schedule> getSchedulesByStudentYear(String studentYear);
-    void deleteScheduleById(Long id);
-    void deleteAllSchedules();
+    KeysetPage<ScheduleView> getSchedulePage(Long afterId, Integer size, String subjectId, String major, String studentYear);
+    int streamSchedules(String subjectId, String major, String studentYear, Consumer<ScheduleView> consumer);
+    ScheduleDeleteResult deleteScheduleById(Long id);
+    ScheduleDeleteResult deleteAllSchedules();
+    ScheduleDeleteResult deleteSchedulesByMajor(String major);
+    ScheduleDeleteResult deleteSchedulesByStudentYear(String studentYear);
+    ScheduleDeleteResult deleteSchedulesBySemester(String semester);
+    List<ScheduleConflictResponse> getConflicts(String roomNumber);
+    List<ScheduleConflictResponse> getConflictsOfSchedule(Long id);
+    RoomAvailabilityResponse getRoomAvailability(String roomNumber, Integer dayOfWeek, Integer sessionNumber,
+                                                 Integer fromWeek, Integer toWeek);
+    List<String> findFreeRooms(List<String> roomNumbers, Integer dayOfWeek, Integer sessionNumber,
+                               Integer fromWeek, Integer toWeek);
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.ptit.schedule.service;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Temporary generation state of one user (one session token):
+ * rooms used by the last generated TKB, the slot index reached, and subject-room mappings.
+ * Nothing here is permanent until the user clicks "Thêm vào kết quả" (commit to global).
+ */
+@Getter
+public class SchedulingSession {
+
+    private final String id;
+    private final long createdAt;
+    private volatile long lastAccessedAt;
+
+    // Rooms occupied by the last generated TKB (not committed yet), on the room ids current at reset
+    private volatile RoomOccupancy occupiedRooms = new RoomOccupancy();
+
+    // maMon -> room code, so every class of a subject tries to stay in the same room
+    private final Map<String, String> subjectRooms = new ConcurrentHashMap<>();
+
+    // lastSlotIdx reached by the last generation (not committed yet)
+    private volatile int lastSlotIdx = -1;
+
+    // GlobalOccupancyStore version the last generation started from, -1 = none
+    private volatile long globalVersion = -1;
+
+    // Generations running or queued on this session, a pinned session is never evicted
+    private final AtomicInteger pins = new AtomicInteger();
+
+    SchedulingSession(String id) {
+        this.id = id;
+        this.createdAt = System.currentTimeMillis();
+        this.lastAccessedAt = createdAt;
+    }
+
+    void touch() {
+        lastAccessedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Keep the session alive until the matching unpin (a generation is using it)
+     */
+    public void pin() {
+        pins.incrementAndGet();
+        touch();
+    }
+
+    public void unpin() {
+        touch();
+        pins.decrementAndGet();
+    }
+
+    public boolean isPinned() {
+        return pins.get() > 0;
+    }
+
+    public void setLastSlotIdx(int lastSlotIdx) {
+        this.lastSlotIdx = lastSlotIdx;
+    }
+
+    void setGlobalVersion(long globalVersion) {
+        this.globalVersion = globalVersion;
+    }
+
+    public Map<String, String> getSubjectRoomMappings() {
+        return new HashMap<>(subjectRooms);
+    }
+
+    /**
+     * Drop the generated result, continuing from the given (permanent) lastSlotIdx
+     */
+    public void reset(int lastSlotIdx) {
+        reset(lastSlotIdx, -1);
+    }
+
+    /**
+     * Start a new generation from the given (permanent) lastSlotIdx and global store version
+     */
+    public void reset(int lastSlotIdx, long globalVersion) {
+        occupiedRooms = new RoomOccupancy();
+        subjectRooms.clear();
+        this.lastSlotIdx = lastSlotIdx;
+        this.globalVersion = globalVersion;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ptit.schedule.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scheduling sessions keyed by session token (header X-Session-Id).
+ * Requests without a token share the "default" session (old single-user behaviour).
+ * Sessions idle for longer than tkb.session.idle-timeout-minutes are evicted,
+ * dropping their uncommitted results; a session with a generation running or queued is kept.
+ */
+@Service
+@Slf4j
+public class SchedulingSessionRegistry {
+
+    public static final String SESSION_HEADER = "X-Session-Id";
+    public static final String DEFAULT_SESSION_ID = "default";
+
+    private final Map<String, SchedulingSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${tkb.session.idle-timeout-minutes:60}")
+    private long idleTimeoutMinutes;
+
+    /**
+     * Session of the caller, created on first use
+     */
+    public SchedulingSession getOrCreate(String sessionId) {
+        String id = normalize(sessionId);
+        SchedulingSession session = sessions.computeIfAbsent(id, key -> {
+            log.info("Opened scheduling session {}", key);
+            return new SchedulingSession(key);
+        });
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Open a session with a fresh random token
+     */
+    public SchedulingSession create() {
+        return getOrCreate(UUID.randomUUID().toString());
+    }
+
+    public Optional<SchedulingSession> find(String sessionId) {
+        SchedulingSession session = sessions.get(normalize(sessionId));
+        if (session != null) {
+            session.touch();
+        }
+        return Optional.ofNullable(session);
+    }
+
+    public boolean remove(String sessionId) {
+        SchedulingSession removed = sessions.remove(normalize(sessionId));
+        if (removed != null) {
+            log.info("Closed scheduling session {}", removed.getId());
+        }
+        return removed != null;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${tkb.session.eviction-interval-ms:60000}")
+    public void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMinutes * 60_000L;
+        sessions.values().removeIf(session -> {
+            if (session.isPinned() || session.getLastAccessedAt() >= cutoff) {
+                return false;
+            }
+            log.info("Evicted idle scheduling session {} ({} uncommitted rooms)",
+                    session.getId(), session.getOccupiedRooms().size());
+            return true;
+        });
+    }
+
+    private String normalize(String sessionId) {
+        return sessionId == null || sessionId.isBlank() ? DEFAULT_SESSION_ID : sessionId.trim();
+    }
+}
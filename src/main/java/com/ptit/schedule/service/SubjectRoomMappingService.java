@@ -1,38 +1,39 @@
 package com.ptit.schedule.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Subject-room mappings of a scheduling session (each session keeps its own map)
+ */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class SubjectRoomMappingService {
 
-    private final Map<String, String> subjectRoomMap = new ConcurrentHashMap<>();
+    private final SchedulingSessionRegistry sessionRegistry;
 
-    public void setSubjectRoom(String maMon, String roomCode) {
-        subjectRoomMap.put(maMon, roomCode);
-        log.info("Mapped subject {} to room {}", maMon, roomCode);
+    public Map<String, String> getAllMappings(String sessionId) {
+        return sessionRegistry.find(sessionId)
+                .map(SchedulingSession::getSubjectRoomMappings)
+                .orElse(Collections.emptyMap());
     }
 
-    public String getSubjectRoom(String maMon) {
-        return subjectRoomMap.get(maMon);
+    public void clearMappings(String sessionId) {
+        sessionRegistry.find(sessionId).ifPresent(session -> {
+            session.getSubjectRooms().clear();
+            log.info("Cleared all subject-room mappings of session {}", session.getId());
+        });
     }
 
-    public Map<String, String> getAllMappings() {
-        return new HashMap<>(subjectRoomMap);
-    }
-
-    public void clearMappings() {
-        subjectRoomMap.clear();
-        log.info("Cleared all subject-room mappings");
-    }
-
-    public void clearSubject(String maMon) {
-        subjectRoomMap.remove(maMon);
-        log.info("Cleared mapping for subject {}", maMon);
+    public void clearSubject(String sessionId, String maMon) {
+        sessionRegistry.find(sessionId).ifPresent(session -> {
+            session.getSubjectRooms().remove(maMon);
+            log.info("Cleared mapping for subject {} in session {}", maMon, session.getId());
+        });
     }
 }
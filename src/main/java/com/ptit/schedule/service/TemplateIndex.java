@@ -0,0 +1,177 @@
+package com.ptit.schedule.service;
+
+import java.util.*;
+
+/**
+ * Immutable index over the template rows (real.json).
+ * Rows are grouped by total periods, then by (thu, kip) so the scheduling loop
+ * can find the next matching row without scanning the whole pool.
+ */
+public final class TemplateIndex {
+
+    private static final TemplateIndex EMPTY = new TemplateIndex(Collections.emptyMap(), 0);
+
+    private final Map<Integer, Pool> pools;
+    private final int totalRows;
+
+    private TemplateIndex(Map<Integer, Pool> pools, int totalRows) {
+        this.pools = pools;
+        this.totalRows = totalRows;
+    }
+
+    public static TemplateIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build the index, keeping the original file order inside each pool
+     */
+    public static TemplateIndex build(List<DataLoaderService.TKBTemplateRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<Integer, List<DataLoaderService.TKBTemplateRow>> byPeriods = new LinkedHashMap<>();
+        for (DataLoaderService.TKBTemplateRow row : rows) {
+            byPeriods.computeIfAbsent(row.getTotalPeriods(), k -> new ArrayList<>()).add(row);
+        }
+
+        Map<Integer, Pool> pools = new HashMap<>();
+        for (Map.Entry<Integer, List<DataLoaderService.TKBTemplateRow>> entry : byPeriods.entrySet()) {
+            pools.put(entry.getKey(), new Pool(entry.getValue()));
+        }
+        return new TemplateIndex(Collections.unmodifiableMap(pools), rows.size());
+    }
+
+    /**
+     * Pool of rows with the given total periods, or null if there is none
+     */
+    public Pool getPool(int totalPeriods) {
+        return pools.get(totalPeriods);
+    }
+
+    public boolean isEmpty() {
+        return totalRows == 0;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    private static int slotKey(int thu, int kip) {
+        return thu * 16 + kip;
+    }
+
+    /**
+     * All rows sharing one total-periods value, in file order,
+     * plus the positions of each (thu, kip) bucket inside that order
+     */
+    public static final class Pool {
+        private final List<DataLoaderService.TKBTemplateRow> rows;
+        private final Map<Integer, int[]> positionsBySlot;
+        private final Map<Integer, List<DataLoaderService.TKBTemplateRow>> rowsBySlot;
+
+        private Pool(List<DataLoaderService.TKBTemplateRow> rows) {
+            this.rows = List.copyOf(rows);
+
+            Map<Integer, List<Integer>> positions = new HashMap<>();
+            for (int i = 0; i < this.rows.size(); i++) {
+                DataLoaderService.TKBTemplateRow row = this.rows.get(i);
+                positions.computeIfAbsent(slotKey(row.getDayOfWeek(), row.getKip()),
+                        k -> new ArrayList<>()).add(i);
+            }
+
+            Map<Integer, int[]> positionsBySlot = new HashMap<>();
+            Map<Integer, List<DataLoaderService.TKBTemplateRow>> rowsBySlot = new HashMap<>();
+            for (Map.Entry<Integer, List<Integer>> entry : positions.entrySet()) {
+                int[] slotPositions = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                List<DataLoaderService.TKBTemplateRow> slotRows = new ArrayList<>(slotPositions.length);
+                for (int position : slotPositions) {
+                    slotRows.add(this.rows.get(position));
+                }
+                positionsBySlot.put(entry.getKey(), slotPositions);
+                rowsBySlot.put(entry.getKey(), Collections.unmodifiableList(slotRows));
+            }
+            this.positionsBySlot = Collections.unmodifiableMap(positionsBySlot);
+            this.rowsBySlot = Collections.unmodifiableMap(rowsBySlot);
+        }
+
+        public int size() {
+            return rows.size();
+        }
+
+        public DataLoaderService.TKBTemplateRow get(int index) {
+            return rows.get(index);
+        }
+
+        public List<DataLoaderService.TKBTemplateRow> getRows() {
+            return rows;
+        }
+
+        /**
+         * Rows of one (thu, kip) bucket in file order (empty list if none)
+         */
+        public List<DataLoaderService.TKBTemplateRow> getRows(int thu, int kip) {
+            return rowsBySlot.getOrDefault(slotKey(thu, kip), Collections.emptyList());
+        }
+
+        public int getSlotCount() {
+            return rowsBySlot.size();
+        }
+
+        public Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /**
+         * First position >= from (wrapping around) whose row is on thu with one of kips, or -1
+         */
+        private int nextPosition(int from, int thu, Set<Integer> kips) {
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Integer kip : kips) {
+                int[] slotPositions = positionsBySlot.get(slotKey(thu, kip));
+                if (slotPositions == null) {
+                    continue;
+                }
+                int i = Arrays.binarySearch(slotPositions, from);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                int position = i < slotPositions.length ? slotPositions[i] : slotPositions[0];
+                int distance = position >= from ? position - from : position + rows.size() - from;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = position;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Round-robin cursor over a pool (exact Python idx rotation).
+     * Each subject gets its own cursor starting at 0.
+     */
+    public static final class Cursor {
+        private final Pool pool;
+        private int idx = 0;
+
+        private Cursor(Pool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Next row on thu with one of kips after the cursor; if there is none,
+         * the row under the cursor is returned (same fallback as the linear scan)
+         */
+        public DataLoaderService.TKBTemplateRow next(int thu, Set<Integer> kips) {
+            int position = pool.nextPosition(idx, thu, kips);
+            if (position < 0) {
+                position = idx;
+            }
+            idx = (position + 1) % pool.size();
+            return pool.get(position);
+        }
+    }
+}
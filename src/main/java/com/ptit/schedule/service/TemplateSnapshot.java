@@ -0,0 +1,54 @@
+package com.ptit.schedule.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One immutable version of the template data (rows + index).
+ * A generation pins the snapshot it started with; an Excel import publishes a new
+ * snapshot without touching the ones still in use.
+ * The version is the content hash of real.json, so it is the same across restarts
+ * and for every load of the same data.
+ */
+public final class TemplateSnapshot {
+
+    private static final TemplateSnapshot EMPTY = new TemplateSnapshot(null, null, TemplateIndex.empty());
+
+    private final String sourceHash;
+    private final TemplateTable table;
+    private final TemplateIndex index;
+    private final LocalDateTime loadedAt;
+
+    TemplateSnapshot(String sourceHash, TemplateTable table, TemplateIndex index) {
+        this.sourceHash = sourceHash;
+        this.table = table;
+        this.index = index;
+        this.loadedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Placeholder when real.json cannot be loaded (no version, no rows)
+     */
+    public static TemplateSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Short SHA-256 of the real.json content (the template version), null for the empty snapshot
+     */
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public List<DataLoaderService.TKBTemplateRow> getRows() {
+        return table != null ? table.getRows() : List.of();
+    }
+
+    public TemplateIndex getIndex() {
+        return index;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+}
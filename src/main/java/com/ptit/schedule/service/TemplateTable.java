@@ -0,0 +1,251 @@
+package com.ptit.schedule.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Template rows (real.json) stored column by column as primitive arrays.
+ * Weeks 1-18 are an 18-bit mask (bit w-1 = week w has class) and AH
+ * (periodLength * weeks) is precomputed, so the scheduling loop never unboxes.
+ * Persisted as a binary sidecar tagged with the SHA-256 of the source JSON:
+ * header [magic, format, hash(32), rowCount], 7 int columns, then the ids (length + UTF-8).
+ */
+public final class TemplateTable {
+
+    public static final int WEEKS = 18;
+
+    private static final int MAGIC = 0x544B4254; // "TKBT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_BYTES = 4 + 4 + HASH_LENGTH + 4;
+
+    private final byte[] sourceHash;
+    private final int[] totalPeriods;
+    private final int[] dayOfWeek;
+    private final int[] kip;
+    private final int[] startPeriod;
+    private final int[] periodLength;
+    private final int[] weekMask;
+    private final int[] totalUsed;
+    private final String[] ids;
+    private final List<DataLoaderService.TKBTemplateRow> rows;
+
+    private TemplateTable(byte[] sourceHash, int[] totalPeriods, int[] dayOfWeek, int[] kip, int[] startPeriod,
+            int[] periodLength, int[] weekMask, int[] totalUsed, String[] ids) {
+        this.sourceHash = sourceHash;
+        this.totalPeriods = totalPeriods;
+        this.dayOfWeek = dayOfWeek;
+        this.kip = kip;
+        this.startPeriod = startPeriod;
+        this.periodLength = periodLength;
+        this.weekMask = weekMask;
+        this.totalUsed = totalUsed;
+        this.ids = ids;
+
+        List<DataLoaderService.TKBTemplateRow> views = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            views.add(new DataLoaderService.TKBTemplateRow(this, i));
+        }
+        this.rows = Collections.unmodifiableList(views);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public byte[] getSourceHash() {
+        return sourceHash.clone();
+    }
+
+    /**
+     * One row view per template row, in file order
+     */
+    public List<DataLoaderService.TKBTemplateRow> getRows() {
+        return rows;
+    }
+
+    int totalPeriods(int row) {
+        return totalPeriods[row];
+    }
+
+    int dayOfWeek(int row) {
+        return dayOfWeek[row];
+    }
+
+    int kip(int row) {
+        return kip[row];
+    }
+
+    int startPeriod(int row) {
+        return startPeriod[row];
+    }
+
+    int periodLength(int row) {
+        return periodLength[row];
+    }
+
+    int weekMask(int row) {
+        return weekMask[row];
+    }
+
+    int totalUsed(int row) {
+        return totalUsed[row];
+    }
+
+    String id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Write the sidecar (temp file + atomic move)
+     */
+    public void write(Path file) throws IOException {
+        int n = size();
+        byte[][] idBytes = new byte[n][];
+        int idsLength = 0;
+        for (int i = 0; i < n; i++) {
+            idBytes[i] = ids[i] != null ? ids[i].getBytes(StandardCharsets.UTF_8) : new byte[0];
+            idsLength += 4 + idBytes[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 7 * 4 * n + idsLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).put(sourceHash).putInt(n);
+        for (int[] column : new int[][] { totalPeriods, dayOfWeek, kip, startPeriod, periodLength, weekMask,
+                totalUsed }) {
+            buffer.asIntBuffer().put(column);
+            buffer.position(buffer.position() + 4 * n);
+        }
+        for (byte[] id : idBytes) {
+            buffer.putInt(id.length).put(id);
+        }
+        buffer.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-map a sidecar; null if it is missing, corrupt or built from other JSON content
+     */
+    public static TemplateTable read(Path file, byte[] expectedHash) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            int magic = buffer.getInt();
+            int format = buffer.getInt();
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (magic != MAGIC || format != FORMAT_VERSION || !Arrays.equals(hash, expectedHash)) {
+                return null;
+            }
+            int n = buffer.getInt();
+            if (n < 0 || buffer.remaining() < 7L * 4 * n) {
+                return null;
+            }
+
+            int[][] columns = new int[7][n];
+            for (int[] column : columns) {
+                buffer.asIntBuffer().get(column);
+                buffer.position(buffer.position() + 4 * n);
+            }
+            String[] ids = new String[n];
+            for (int i = 0; i < n; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    // Checked before allocating: a corrupt length must not become a huge array
+                    return null;
+                }
+                byte[] id = new byte[length];
+                buffer.get(id);
+                ids[i] = new String(id, StandardCharsets.UTF_8);
+            }
+            return new TemplateTable(hash, columns[0], columns[1], columns[2], columns[3], columns[4],
+                    columns[5], columns[6], ids);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, NegativeArraySizeException... = truncated or corrupt file
+            return null;
+        }
+    }
+
+    /**
+     * Appends rows column by column while the JSON is streamed
+     */
+    public static final class Builder {
+        private int size;
+        private int[] totalPeriods = new int[256];
+        private int[] dayOfWeek = new int[256];
+        private int[] kip = new int[256];
+        private int[] startPeriod = new int[256];
+        private int[] periodLength = new int[256];
+        private int[] weekMask = new int[256];
+        private final List<String> ids = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder add(int rowTotalPeriods, int rowDayOfWeek, int rowKip, int rowStartPeriod,
+                int rowPeriodLength, String id, int rowWeekMask) {
+            if (size == totalPeriods.length) {
+                int capacity = size * 2;
+                totalPeriods = Arrays.copyOf(totalPeriods, capacity);
+                dayOfWeek = Arrays.copyOf(dayOfWeek, capacity);
+                kip = Arrays.copyOf(kip, capacity);
+                startPeriod = Arrays.copyOf(startPeriod, capacity);
+                periodLength = Arrays.copyOf(periodLength, capacity);
+                weekMask = Arrays.copyOf(weekMask, capacity);
+            }
+            totalPeriods[size] = rowTotalPeriods;
+            dayOfWeek[size] = rowDayOfWeek;
+            kip[size] = rowKip;
+            startPeriod[size] = rowStartPeriod;
+            periodLength[size] = rowPeriodLength;
+            weekMask[size] = rowWeekMask;
+            ids.add(id);
+            size++;
+            return this;
+        }
+
+        /**
+         * sourceHash = SHA-256 of the JSON the rows came from (known once it is fully read/written)
+         */
+        public TemplateTable build(byte[] sourceHash) {
+            int[] used = new int[size];
+            for (int i = 0; i < size; i++) {
+                used[i] = Integer.bitCount(weekMask[i]) * periodLength[i];
+            }
+            return new TemplateTable(sourceHash.clone(), Arrays.copyOf(totalPeriods, size), Arrays.copyOf(dayOfWeek, size),
+                    Arrays.copyOf(kip, size), Arrays.copyOf(startPeriod, size), Arrays.copyOf(periodLength, size),
+                    Arrays.copyOf(weekMask, size), used, ids.toArray(new String[0]));
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.ptit.schedule.service;
 
 import com.ptit.schedule.dto.*;
-import com.ptit.schedule.entity.Room;
 import com.ptit.schedule.dto.RoomPickResult;
+import com.ptit.schedule.entity.Room;
+import com.ptit.schedule.exception.StaleSessionException;
+import com.ptit.schedule.service.impl.SubjectServiceImpl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Core TKB scheduling service - implements exact Python logic for timetable
@@ -23,11 +29,8 @@ public class TimetableSchedulingService {
 
     private final DataLoaderService dataLoaderService;
     private final RoomService roomService;
-    private final SubjectRoomMappingService subjectRoomMappingService;
-
-    // TEMPORARY session storage - cleared when user generates new TKB without
-    // saving
-    private Set<Object> sessionOccupiedRooms = new HashSet<>();
+    private final MajorBuildingPreferenceService majorBuildingPreferenceService;
+    private final GlobalOccupancyStore globalOccupancyStore;
 
     // Rotating slots exactly matching Python
     private static final List<TimetableSlot> ROTATING_SLOTS = Arrays.asList(
@@ -56,8 +59,18 @@ public class TimetableSchedulingService {
     );
 
     // Global state for batch processing (like Python)
-    private int lastSlotIdx = -1; // PERMANENT: Only updated when user confirms
-    private int sessionLastSlotIdx = -1; // TEMPORARY: Updated during generation
+    // PERMANENT: Only updated when user confirms. The TEMPORARY value of each
+    // generation lives in its SchedulingSession.
+    private volatile int lastSlotIdx = -1;
+
+    // Serializes read-modify-write of the global storage (commit / reset) across sessions
+    private final Object globalLock = new Object();
+
+    // Worker threads for parallel (per-cluster) generation, 0 = number of cores
+    @Value("${tkb.generation.parallelism:0}")
+    private int generationParallelism;
+
+    private ForkJoinPool generationPool;
 
     /**
      * Initialize service - load lastSlotIdx from file
@@ -66,49 +79,102 @@ public class TimetableSchedulingService {
     public void init() {
         log.info("Initializing TimetableSchedulingService...");
         // Load lastSlotIdx from persistent storage
-        lastSlotIdx = dataLoaderService.loadLastSlotIdx();
-        sessionLastSlotIdx = lastSlotIdx;
-        log.info("Loaded lastSlotIdx from file: {}", lastSlotIdx);
+        lastSlotIdx = globalOccupancyStore.getLastSlotIdx();
+        log.info("Loaded lastSlotIdx from occupancy store: {}", lastSlotIdx);
+
+        int parallelism = generationParallelism > 0 ? generationParallelism
+                : Runtime.getRuntime().availableProcessors();
+        generationPool = new ForkJoinPool(parallelism);
+        log.info("Parallel generation pool started with {} threads", parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        generationPool.shutdown();
     }
 
     /**
-     * Simulate Excel Flow Batch - exact Python logic with room assignment
+     * Simulate Excel Flow Batch - exact Python logic with room assignment.
+     * Results are kept in the caller's session until commitSessionToGlobal.
      */
-    public TKBBatchResponse simulateExcelFlowBatch(TKBBatchRequest request) {
+    public TKBBatchResponse simulateExcelFlowBatch(TKBBatchRequest request, SchedulingSession session) {
+        return simulateExcelFlowBatch(request, session, GenerationListener.NONE);
+    }
+
+    /**
+     * Same as above, reporting each finished subject to the listener.
+     * Throws CancellationException (and drops the session's partial result) if the listener cancels.
+     */
+    public TKBBatchResponse simulateExcelFlowBatch(TKBBatchRequest request, SchedulingSession session,
+            GenerationListener listener) {
+        return runBatch(request, session, listener, true);
+    }
+
+    /**
+     * Streaming variant: items are only handed to the listener (not kept in memory),
+     * the returned summary has no items
+     */
+    public TKBBatchResponse streamExcelFlowBatch(TKBBatchRequest request, SchedulingSession session,
+            GenerationListener listener) {
+        return runBatch(request, session, listener, false);
+    }
+
+    private TKBBatchResponse runBatch(TKBBatchRequest request, SchedulingSession session,
+            GenerationListener listener, boolean keepItems) {
+        // Generations of different sessions run concurrently, a session runs one at a time.
+        // Pinned so idle eviction cannot drop it while the generation runs.
+        session.pin();
         try {
-            // Load template data once
-            List<DataLoaderService.TKBTemplateRow> dataRows = dataLoaderService.loadTemplateData();
-            if (dataRows.isEmpty()) {
+            synchronized (session) {
+                try {
+                    return generateBatch(request, session, listener, keepItems);
+                } catch (CancellationException e) {
+                    session.reset(lastSlotIdx);
+                    log.info("Generation cancelled for session {}", session.getId());
+                    throw e;
+                }
+            }
+        } finally {
+            session.unpin();
+        }
+    }
+
+    private TKBBatchResponse generateBatch(TKBBatchRequest request, SchedulingSession session,
+            GenerationListener listener, boolean keepItems) {
+        try {
+            // Pin the current template snapshot (indexed by total periods and (thu, kip)) for the
+            // whole batch, an import during the batch publishes a new one without affecting it
+            TemplateSnapshot templates = dataLoaderService.getTemplateSnapshot();
+            TemplateIndex templateIndex = templates.getIndex();
+            if (templateIndex.isEmpty()) {
                 return TKBBatchResponse.builder()
                         .items(Collections.emptyList())
+                        .templateVersion(templates.getSourceHash())
                         .note("Template data empty or not exists")
                         .build();
             }
 
-            // Load rooms data for room assignment
-            List<Room> rooms = roomService.getAllRooms().stream()
-                    .map(this::convertToRoom)
-                    .collect(Collectors.toList());
-
-            // CLEAR session occupied rooms when starting new TKB generation
-            sessionOccupiedRooms.clear();
-
-            // Clear subject-room mappings for new batch
-            subjectRoomMappingService.clearMappings();
-
-            // Load global occupied rooms (PERMANENT - already confirmed by user)
-            Set<Object> globalOccupiedRooms = dataLoaderService.loadGlobalOccupiedRooms();
+            // Room assignment snapshot: room catalog index + major building preferences.
+            // Taken once here, the generation loop below does no DB access.
+            RoomCandidateIndex candidateIndex = roomService.getRoomCandidateIndex();
+            RoomAssignmentEngine rooms = new RoomAssignmentEngine(candidateIndex,
+                    majorBuildingPreferenceService.getPreferredBuildingsByMajor());
+
+            // CLEAR session occupied rooms and subject-room mappings when starting new TKB
+            // generation. Use PERMANENT lastSlotIdx as starting point for this generation,
+            // global occupied rooms (PERMANENT - already confirmed by user) are served from memory.
+            // Both are read with the global version under the lock, commits check it later.
+            RoomOccupancy globalOccupiedRooms;
+            synchronized (globalLock) {
+                session.reset(lastSlotIdx, globalOccupancyStore.getVersion());
+                globalOccupiedRooms = globalOccupancyStore.copyOccupied();
+            }
+            // On the room ids of the catalog snapshot so free checks stay id lookups
+            globalOccupiedRooms = globalOccupiedRooms.rebase(candidateIndex.getRoomIds());
             log.info("Loaded {} global occupied rooms (confirmed)", globalOccupiedRooms.size());
 
             // Start with global occupied rooms, will add session rooms during generation
-            Set<Object> occupiedRooms = new HashSet<>(globalOccupiedRooms);
-
-            List<TKBBatchItemResponse> itemsOut = new ArrayList<>();
-            int totalRows = 0;
-            int totalClasses = 0; // Count successfully processed classes
-
-            // Use PERMANENT lastSlotIdx as starting point for this generation
-            sessionLastSlotIdx = lastSlotIdx;
+            RoomOccupancy occupiedRooms = globalOccupiedRooms.copy();
 
             // IMPORTANT: DO NOT SORT - Keep original order from Frontend (processingOrder)
             // Frontend already handles the correct order: nonGrouped first, then combined
@@ -124,80 +190,52 @@ public class TimetableSchedulingService {
             // REMOVED SORTING LOGIC - use original order from frontend
             log.info("Processing {} subjects in original order (from frontend processingOrder)", sortedItems.size());
 
-            for (TKBRequest tkbRequest : sortedItems) {
-                int targetTotal = tkbRequest.getSotiet();
-                log.info("Processing subject: {} with {} periods", tkbRequest.getMa_mon(), targetTotal);
-
-                // Filter template data by total periods (exact Python logic)
-                List<DataLoaderService.TKBTemplateRow> pool = dataRows.stream()
-                        .filter(row -> toInt(row.getTotalPeriods()) == targetTotal)
-                        .collect(Collectors.toList());
-
-                if (pool.isEmpty()) {
-                    itemsOut.add(TKBBatchItemResponse.builder()
-                            .input(tkbRequest)
-                            .rows(Collections.emptyList())
-                            .note("Không có Data cho " + targetTotal + " tiết")
-                            .build());
-                    continue;
-                }
-
-                List<TKBRowResult> resultRows;
-                int classes;
-                int startingSlotIdx;
+            listener.onStart(sortedItems.size());
+            BatchCollector collector = new BatchCollector(listener, keepItems, sortedItems.size());
 
-                // BRANCH: Special handling for 60-period subjects vs regular subjects
-                if (targetTotal == 60) {
-                    log.info("Using SPECIAL 60-period logic for {}", tkbRequest.getMa_mon());
-                    classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
-
-                    // Map from regular slot to 60-period slot
-                    startingSlotIdx = mapRegularSlotTo60PeriodSlot(sessionLastSlotIdx);
-                    log.info("Mapped regular slot {} to 60-period slot {}", sessionLastSlotIdx, startingSlotIdx);
-
-                    resultRows = process60PeriodSubject(tkbRequest, pool, rooms, occupiedRooms, startingSlotIdx);
-                } else {
-                    // REGULAR PROCESSING
-                    classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
-
-                    // Calculate starting slot for regular subjects
-                    startingSlotIdx = (sessionLastSlotIdx + 1) % ROTATING_SLOTS.size();
+            if (Boolean.TRUE.equals(request.getParallel())) {
+                generateByCluster(sortedItems, templateIndex, rooms, globalOccupiedRooms, session, collector);
+            } else {
+                for (int i = 0; i < sortedItems.size(); i++) {
+                    TKBRequest tkbRequest = sortedItems.get(i);
+                    checkCancelled(listener);
+
+                    TemplateIndex.Pool pool = templateIndex.getPool(tkbRequest.getSotiet());
+                    if (pool == null || pool.size() == 0) {
+                        collector.add(i, tkbRequest, null);
+                        continue;
+                    }
 
-                    log.info("Using REGULAR logic: {} classes for {}", classes, tkbRequest.getMa_mon());
-                    resultRows = processRegularSubject(tkbRequest, pool, rooms, occupiedRooms, startingSlotIdx, classes,
-                            targetTotal);
-                }
+                    int startingSlotIdx = startingSlotFor(tkbRequest, session.getLastSlotIdx());
+                    List<TKBRowResult> resultRows = generateSubject(tkbRequest, pool, rooms, occupiedRooms,
+                            session.getOccupiedRooms(), session.getSubjectRooms(), startingSlotIdx, null);
 
-                // Common result handling
-                if (!resultRows.isEmpty()) {
-                    itemsOut.add(TKBBatchItemResponse.builder()
-                            .input(tkbRequest)
-                            .rows(resultRows)
-                            .build());
-                    totalRows += resultRows.size();
-                    totalClasses++; // Increment class count for successfully generated subject
-
-                    // Calculate end slot of this major (exact Python logic)
-                    // Update TEMPORARY sessionLastSlotIdx (will be committed later)
-                    int majorEndSlot = calculateMajorEndSlot(classes, targetTotal);
-                    sessionLastSlotIdx = (startingSlotIdx + majorEndSlot) % ROTATING_SLOTS.size();
+                    if (!resultRows.isEmpty()) {
+                        // Update TEMPORARY session lastSlotIdx (will be committed later)
+                        session.setLastSlotIdx(nextLastSlotIdx(tkbRequest, startingSlotIdx));
+                    }
+                    collector.add(i, tkbRequest, resultRows);
                 }
             }
 
-            // DO NOT save to global yet - only stored in sessionOccupiedRooms
+            // DO NOT save to global yet - only stored in the session
             // Will be saved to global when user clicks "Thêm vào kết quả"
-            log.info("Generated TKB using {} rooms (temporary, not saved yet)", sessionOccupiedRooms.size());
+            log.info("Session {}: generated TKB using {} rooms (temporary, not saved yet)",
+                    session.getId(), session.getOccupiedRooms().size());
             log.info("Global occupied rooms: {} (permanent)", globalOccupiedRooms.size());
-            log.info("Session lastSlotIdx: {} (temporary, not committed yet)", sessionLastSlotIdx);
+            log.info("Session lastSlotIdx: {} (temporary, not committed yet)", session.getLastSlotIdx());
 
             return TKBBatchResponse.builder()
-                    .items(itemsOut)
-                    .totalRows(totalRows)
-                    .totalClasses(totalClasses) // Return total classes successfully generated
-                    .lastSlotIdx(sessionLastSlotIdx) // Return temporary value
-                    .occupiedRoomsCount(sessionOccupiedRooms.size()) // Return session count
+                    .items(keepItems ? collector.getItems() : null)
+                    .totalRows(collector.totalRows)
+                    .totalClasses(collector.totalClasses) // Return total classes successfully generated
+                    .lastSlotIdx(session.getLastSlotIdx()) // Return temporary value
+                    .occupiedRoomsCount(session.getOccupiedRooms().size()) // Return session count
+                    .templateVersion(templates.getSourceHash())
                     .build();
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in simulateExcelFlowBatch: {}", e.getMessage(), e);
             return TKBBatchResponse.builder()
@@ -208,79 +246,548 @@ public class TimetableSchedulingService {
     }
 
     /**
-     * Commit session occupied rooms to global (permanent storage)
-     * Called when user clicks "Thêm vào kết quả"
+     * Generate rows for one subject, branching on 60-period vs regular logic
      */
-    public void commitSessionToGlobal() {
-        if (sessionOccupiedRooms.isEmpty()) {
-            log.warn("No session occupied rooms to commit");
-            return;
+    private List<TKBRowResult> generateSubject(TKBRequest tkbRequest, TemplateIndex.Pool pool, RoomAssignmentEngine rooms,
+            RoomOccupancy occupiedRooms, RoomOccupancy sessionRooms, Map<String, String> subjectRooms,
+            int startingSlotIdx, ClusterRooms cluster) {
+        int targetTotal = tkbRequest.getSotiet();
+        int classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
+        log.info("Processing subject: {} with {} periods", tkbRequest.getMa_mon(), targetTotal);
+
+        // BRANCH: Special handling for 60-period subjects vs regular subjects
+        if (targetTotal == 60) {
+            log.info("Using SPECIAL 60-period logic for {} (slot {})", tkbRequest.getMa_mon(), startingSlotIdx);
+            return process60PeriodSubject(tkbRequest, pool, rooms, occupiedRooms, sessionRooms, subjectRooms,
+                    startingSlotIdx, cluster);
         }
 
-        // Load current global
-        Set<Object> globalOccupied = dataLoaderService.loadGlobalOccupiedRooms();
-        int beforeCount = globalOccupied.size();
+        log.info("Using REGULAR logic: {} classes for {}", classes, tkbRequest.getMa_mon());
+        return processRegularSubject(tkbRequest, pool, rooms, occupiedRooms, sessionRooms, subjectRooms,
+                startingSlotIdx, classes, targetTotal, cluster);
+    }
 
-        // Add session rooms to global
-        globalOccupied.addAll(sessionOccupiedRooms);
-        int afterCount = globalOccupied.size();
-        int addedCount = afterCount - beforeCount;
+    /**
+     * Starting slot of a subject given the last slot used before it
+     */
+    private int startingSlotFor(TKBRequest tkbRequest, int previousLastSlotIdx) {
+        if (tkbRequest.getSotiet() == 60) {
+            // Map from regular slot to 60-period slot
+            return mapRegularSlotTo60PeriodSlot(previousLastSlotIdx);
+        }
+        return (previousLastSlotIdx + 1) % ROTATING_SLOTS.size();
+    }
 
-        // Save to JSON
-        dataLoaderService.saveGlobalOccupiedRooms(globalOccupied);
+    /**
+     * Last slot used by a subject (exact Python end-slot logic)
+     */
+    private int nextLastSlotIdx(TKBRequest tkbRequest, int startingSlotIdx) {
+        int classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
+        int majorEndSlot = calculateMajorEndSlot(classes, tkbRequest.getSotiet());
+        return (startingSlotIdx + majorEndSlot) % ROTATING_SLOTS.size();
+    }
 
-        // COMMIT sessionLastSlotIdx to permanent lastSlotIdx
-        lastSlotIdx = sessionLastSlotIdx;
+    /**
+     * Whether a subject produces any row from this slot. Room assignment never changes this,
+     * so the slot rotation of a batch can be planned before any room is picked.
+     */
+    private boolean emitsRows(TKBRequest tkbRequest, TemplateIndex.Pool pool, int startingSlotIdx) {
+        if (tkbRequest.getSotiet() == 60) {
+            int classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
+            for (int cls = 1; cls <= classes; cls++) {
+                DayPairSlot dayPairSlot = ROTATING_SLOTS_60.get((startingSlotIdx + (cls - 1)) % ROTATING_SLOTS_60.size());
+                for (Integer day : dayPairSlot.getDays()) {
+                    if (!pool.getRows(day, dayPairSlot.getKip()).isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
 
-        // SAVE lastSlotIdx to persistent storage (file)
-        dataLoaderService.saveLastSlotIdx(lastSlotIdx);
+        // Regular: the first class decides. The cursor only returns rows of the target slot
+        // when there are any, otherwise it walks the whole pool.
+        TimetableSlot targetSlot = ROTATING_SLOTS.get(startingSlotIdx);
+        List<DataLoaderService.TKBTemplateRow> candidates = new ArrayList<>();
+        for (Integer kip : targetSlot.getKipSet()) {
+            candidates.addAll(pool.getRows(targetSlot.getThu(), kip));
+        }
+        if (candidates.isEmpty()) {
+            candidates = pool.getRows();
+        }
+        return candidates.stream().anyMatch(row -> calculateAH(row) > 0);
+    }
 
-        log.info("Committed {} new rooms to global. Total global rooms: {}", addedCount, afterCount);
-        log.info("Committed and saved lastSlotIdx to file: {}", lastSlotIdx);
+    /**
+     * Parallel generation: subjects are partitioned into clusters of majors that share
+     * subjects (so subject-room mappings never cross partitions), each cluster picks rooms
+     * on the generation pool against its own copy of the global occupancy and its own
+     * subject-room map, then results are merged into the session in cluster order and
+     * reported as each cluster is merged. Clusters follow the same slot rotation, so they can
+     * pick the same room at the same (thu, kip): when merging, only the classes whose room is
+     * already taken by an earlier cluster get a new room (against the merged occupancy, in
+     * cluster order, so the output is deterministic); their slots and rows stay as generated.
+     * Cluster tasks only touch their own state, so a task still running after cancellation
+     * cannot leak into the session.
+     */
+    private void generateByCluster(List<TKBRequest> items, TemplateIndex templateIndex,
+            RoomAssignmentEngine rooms, RoomOccupancy globalOccupiedRooms, SchedulingSession session,
+            BatchCollector collector) {
+        GenerationListener listener = collector.listener;
+        // 1. Plan the slot rotation sequentially (same slots as the sequential mode)
+        int[] startingSlots = new int[items.size()];
+        TemplateIndex.Pool[] pools = new TemplateIndex.Pool[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            TKBRequest tkbRequest = items.get(i);
+            TemplateIndex.Pool pool = templateIndex.getPool(tkbRequest.getSotiet());
+            if (pool == null || pool.size() == 0) {
+                continue;
+            }
+            pools[i] = pool;
+            startingSlots[i] = startingSlotFor(tkbRequest, session.getLastSlotIdx());
+            if (emitsRows(tkbRequest, pool, startingSlots[i])) {
+                session.setLastSlotIdx(nextLastSlotIdx(tkbRequest, startingSlots[i]));
+            }
+        }
 
-        // Clear session after commit
-        sessionOccupiedRooms.clear();
+        // 2. Partition by major cluster, ordered by first appearance in the batch
+        List<List<Integer>> partitions = partitionByCluster(items);
+        log.info("Parallel generation: {} subjects in {} clusters", items.size(), partitions.size());
+
+        // 3. Pick rooms for every cluster concurrently, each within its own share of the rooms first
+        List<RoomOccupancy> ownRooms = partitionRooms(partitions, items, rooms.getRooms(), globalOccupiedRooms);
+        List<ForkJoinTask<ClusterResult>> tasks = new ArrayList<>(partitions.size());
+        for (int k = 0; k < partitions.size(); k++) {
+            List<Integer> partition = partitions.get(k);
+            RoomOccupancy own = ownRooms.get(k);
+            tasks.add(generationPool.submit(() -> generateCluster(partition, items, pools, startingSlots, rooms,
+                    globalOccupiedRooms.copy(), own, listener)));
+        }
+
+        // 4. Merge in cluster order, re-picking rooms of classes that collide with earlier clusters
+        RoomOccupancy merged = globalOccupiedRooms.copy();
+        int picked = 0;
+        int repicked = 0;
+        for (int k = 0; k < partitions.size(); k++) {
+            if (listener.isCancelled()) {
+                tasks.forEach(task -> task.cancel(true));
+                throw new CancellationException("Generation cancelled");
+            }
+            List<Integer> partition = partitions.get(k);
+            ClusterResult result = tasks.get(k).join();
+
+            for (ClassPick pick : result.picks) {
+                picked++;
+                if (pick.collidesWith(merged)) {
+                    repicked++;
+                    repick(pick, rooms, merged, result.subjectRooms);
+                }
+                if (pick.roomCode != null) {
+                    pick.occupy(merged);
+                    pick.occupy(session.getOccupiedRooms());
+                }
+            }
+            session.getSubjectRooms().putAll(result.subjectRooms);
+            for (Integer i : partition) {
+                // Rows generated per subject (null = no template data for its total periods)
+                collector.add(i, items.get(i), result.rowsBySubject.get(i));
+            }
+        }
+
+        log.info("Parallel generation merged {} clusters ({}/{} class rooms re-picked after room conflicts)",
+                partitions.size(), repicked, picked);
     }
 
     /**
-     * Calculate AH value (exact Python _row_AH logic)
+     * Deal the rooms out to the clusters so their picks do not compete. Rooms go by kind (the class
+     * profiles they suit), each to the cluster furthest below its share of the classes needing that
+     * kind; within a kind by building and capacity, so every cluster gets a spread of both. Returns per
+     * cluster the global occupancy with all other clusters' rooms marked occupied.
      */
-    private int calculateAH(DataLoaderService.TKBTemplateRow row) {
-        int L = row.getPeriodLength();
-        List<Integer> weekSchedule = row.getWeekSchedule();
-        int xCount = 0;
-        for (Integer week : weekSchedule) {
-            if (week != null && week == 1) {
-                xCount++;
+    private List<RoomOccupancy> partitionRooms(List<List<Integer>> partitions, List<TKBRequest> items,
+            RoomCandidateIndex candidateIndex, RoomOccupancy globalOccupiedRooms) {
+        int clusters = partitions.size();
+        Map<RoomCandidateIndex.Profile, long[]> demand = new EnumMap<>(RoomCandidateIndex.Profile.class);
+        long[] totalDemand = new long[clusters];
+        for (int k = 0; k < clusters; k++) {
+            for (Integer i : partitions.get(k)) {
+                TKBRequest item = items.get(i);
+                int classes = Math.max(1, toInt(item.getSolop(), 1));
+                RoomCandidateIndex.Profile profile = RoomCandidateIndex.profileOf(item.getSubject_type(),
+                        item.getStudent_year(), item.getHe_dac_thu());
+                demand.computeIfAbsent(profile, p -> new long[clusters])[k] += classes;
+                totalDemand[k] += classes;
             }
         }
-        return L * xCount;
+
+        List<Room> catalog = new ArrayList<>(candidateIndex.getRooms());
+        catalog.sort(Comparator.comparing((Room room) -> String.valueOf(room.getDay()))
+                .thenComparing(room -> room.getCapacity() != null ? room.getCapacity() : 0));
+        List<RoomOccupancy> ownRooms = new ArrayList<>(clusters);
+        for (int k = 0; k < clusters; k++) {
+            ownRooms.add(globalOccupiedRooms.copy());
+        }
+        Map<Set<RoomCandidateIndex.Profile>, int[]> dealtByKind = new HashMap<>();
+        Set<String> dealtCodes = new HashSet<>();
+        for (Room room : catalog) {
+            // Occupancy is per room code: a code in several buildings goes to one cluster
+            if (!dealtCodes.add(room.getPhong())) {
+                continue;
+            }
+            Set<RoomCandidateIndex.Profile> kind = EnumSet.noneOf(RoomCandidateIndex.Profile.class);
+            long[] weight = new long[clusters];
+            for (Map.Entry<RoomCandidateIndex.Profile, long[]> entry : demand.entrySet()) {
+                if (RoomCandidateIndex.matches(entry.getKey(), room)) {
+                    kind.add(entry.getKey());
+                    for (int k = 0; k < clusters; k++) {
+                        weight[k] += entry.getValue()[k];
+                    }
+                }
+            }
+            if (kind.isEmpty()) {
+                // No class of the batch suits this room, it only serves fallbacks
+                weight = totalDemand;
+            }
+
+            // Cluster with the lowest dealt/weight ratio for this kind gets the room
+            int[] dealt = dealtByKind.computeIfAbsent(kind, x -> new int[clusters]);
+            int owner = -1;
+            for (int k = 0; k < clusters; k++) {
+                if (weight[k] > 0 && (owner < 0 || (long) dealt[k] * weight[owner] < (long) dealt[owner] * weight[k])) {
+                    owner = k;
+                }
+            }
+            dealt[owner]++;
+            for (int k = 0; k < clusters; k++) {
+                if (k != owner) {
+                    ownRooms.get(k).occupyAll(room.getPhong());
+                }
+            }
+        }
+        return ownRooms;
     }
 
     /**
-     * Normalize slots (exact Python _normalize_slots logic)
+     * Room for one class. In parallel mode the cluster's own rooms are tried first; a room from there
+     * is only taken if it suits the class (capacity and room type), otherwise the class picks among
+     * all rooms and may have to move when clusters are merged.
      */
-    private List<String> normalizeSlots(DataLoaderService.TKBTemplateRow row) {
-        // Convert week schedule to string format matching Python
-        List<String> weeks = new ArrayList<>();
-        List<Integer> weekSchedule = row.getWeekSchedule();
+    private RoomPickResult pickRoom(RoomAssignmentEngine rooms, TKBRequest tkbRequest, Integer sisoPerClass,
+            RoomOccupancy occupiedRooms, int thu, int kip, Map<String, String> subjectRooms, ClusterRooms cluster) {
+        if (cluster != null) {
+            RoomPickResult own = rooms.pickRoom(sisoPerClass, cluster.ownRooms, thu, kip,
+                    tkbRequest.getSubject_type(), tkbRequest.getStudent_year(), tkbRequest.getHe_dac_thu(), null,
+                    tkbRequest.getNganh(), tkbRequest.getMa_mon(), subjectRooms);
+            if (own.hasRoom() && suits(rooms.getRooms(), own, tkbRequest, sisoPerClass)) {
+                return own;
+            }
+        }
+        return rooms.pickRoom(sisoPerClass, occupiedRooms, thu, kip,
+                tkbRequest.getSubject_type(), tkbRequest.getStudent_year(), tkbRequest.getHe_dac_thu(), null,
+                tkbRequest.getNganh(), tkbRequest.getMa_mon(), subjectRooms);
+    }
 
-        for (Integer week : weekSchedule) {
-            if (week != null && week == 1) {
-                weeks.add("X");
-            } else {
-                weeks.add("");
+    private static boolean suits(RoomCandidateIndex candidateIndex, RoomPickResult picked, TKBRequest tkbRequest,
+            Integer sisoPerClass) {
+        RoomCandidateIndex.Profile profile = RoomCandidateIndex.profileOf(tkbRequest.getSubject_type(),
+                tkbRequest.getStudent_year(), tkbRequest.getHe_dac_thu());
+        int minCapacity = sisoPerClass != null ? sisoPerClass : 0;
+        for (Room room : candidateIndex.findAllByCode(picked.getRoomCode())) {
+            if (Objects.equals(room.getDay(), picked.getBuilding())) {
+                return room.getCapacity() >= minCapacity && RoomCandidateIndex.matches(profile, room);
             }
         }
+        return false;
+    }
 
-        // Ensure exactly 18 weeks
-        while (weeks.size() < 18) {
-            weeks.add("");
+    /**
+     * New room for a class whose room was taken by an earlier cluster, picked like the
+     * original (same (thu, kip), capacity and subject-room preference) against the merged occupancy.
+     * The class keeps no room if none is free, as in the sequential mode.
+     */
+    private void repick(ClassPick pick, RoomAssignmentEngine rooms, RoomOccupancy merged,
+            Map<String, String> subjectRooms) {
+        TKBRequest tkbRequest = pick.request;
+        // The colliding room was recorded for the subject by this class, do not prefer it again
+        subjectRooms.remove(tkbRequest.getMa_mon(), pick.roomCode);
+        // A 60-period class also needs the room on its second day: rooms taken there are
+        // hidden at the picking (thu, kip) and the pick is retried
+        RoomOccupancy candidates = merged;
+        String maPhong = null;
+        while (true) {
+            RoomPickResult roomResult = rooms.pickRoom(
+                    pick.sisoPerClass,
+                    candidates,
+                    pick.thu,
+                    pick.kip,
+                    tkbRequest.getSubject_type(),
+                    tkbRequest.getStudent_year(),
+                    tkbRequest.getHe_dac_thu(),
+                    null,
+                    tkbRequest.getNganh(),
+                    tkbRequest.getMa_mon(),
+                    subjectRooms);
+            if (!roomResult.hasRoom()) {
+                subjectRooms.remove(tkbRequest.getMa_mon(), pick.roomCode);
+                pick.roomCode = null;
+                break;
+            }
+            pick.roomCode = roomResult.getRoomCode();
+            if (!pick.collidesWith(merged)) {
+                maPhong = roomResult.getMaPhong();
+                break;
+            }
+            if (candidates == merged) {
+                candidates = merged.copy();
+            }
+            candidates.occupy(pick.roomCode, pick.thu, pick.kip);
         }
-        if (weeks.size() > 18) {
-            weeks = weeks.subList(0, 18);
+        for (TKBRowResult row : pick.rows) {
+            row.setPhong(maPhong);
         }
+    }
 
+    private ClusterResult generateCluster(List<Integer> partition, List<TKBRequest> items,
+            TemplateIndex.Pool[] pools, int[] startingSlots, RoomAssignmentEngine rooms, RoomOccupancy occupiedRooms,
+            RoomOccupancy ownRooms, GenerationListener listener) {
+        RoomOccupancy sessionRooms = new RoomOccupancy(occupiedRooms.getRegistry());
+        Map<String, String> subjectRooms = new HashMap<>();
+        Map<Integer, List<TKBRowResult>> rowsBySubject = new HashMap<>();
+        ClusterRooms cluster = new ClusterRooms(ownRooms);
+        for (Integer i : partition) {
+            checkCancelled(listener);
+            if (pools[i] == null) {
+                continue;
+            }
+            rowsBySubject.put(i, generateSubject(items.get(i), pools[i], rooms, occupiedRooms, sessionRooms,
+                    subjectRooms, startingSlots[i], cluster));
+        }
+        return new ClusterResult(rowsBySubject, cluster.picks, subjectRooms);
+    }
+
+    /**
+     * Group subject indexes by connected components of majors sharing a subject code
+     */
+    private List<List<Integer>> partitionByCluster(List<TKBRequest> items) {
+        List<SubjectMajorDTO> subjectMajors = new ArrayList<>(items.size());
+        for (TKBRequest item : items) {
+            subjectMajors.add(SubjectMajorDTO.builder()
+                    .subjectCode(item.getMa_mon())
+                    .majorCode(majorKey(item))
+                    .build());
+        }
+
+        Map<String, Integer> clusterOfMajor = new HashMap<>();
+        List<Set<String>> clusters = SubjectServiceImpl.groupMajorsBySharedSubjects(subjectMajors);
+        for (int c = 0; c < clusters.size(); c++) {
+            for (String major : clusters.get(c)) {
+                clusterOfMajor.put(major, c);
+            }
+        }
+
+        Map<Integer, List<Integer>> partitions = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            int cluster = clusterOfMajor.get(majorKey(items.get(i)));
+            partitions.computeIfAbsent(cluster, k -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(partitions.values());
+    }
+
+    private String majorKey(TKBRequest item) {
+        return item.getNganh() != null ? item.getNganh() : "";
+    }
+
+    private static void checkCancelled(GenerationListener listener) {
+        if (listener.isCancelled()) {
+            throw new CancellationException("Generation cancelled");
+        }
+    }
+
+    /**
+     * Reports each finished subject to the listener and builds the response items in batch order
+     * (subjects may finish out of order in parallel mode)
+     */
+    private static class BatchCollector {
+        final GenerationListener listener;
+        final boolean keepItems;
+        final TKBBatchItemResponse[] items;
+        int totalRows = 0;
+        int totalClasses = 0; // Count successfully processed classes
+
+        BatchCollector(GenerationListener listener, boolean keepItems, int subjects) {
+            this.listener = listener;
+            this.keepItems = keepItems;
+            this.items = new TKBBatchItemResponse[keepItems ? subjects : 0];
+        }
+
+        /**
+         * index is the subject's position in the batch,
+         * resultRows is null when there is no template data for the subject's total periods
+         */
+        void add(int index, TKBRequest tkbRequest, List<TKBRowResult> resultRows) {
+            TKBBatchItemResponse item = null;
+            if (resultRows == null) {
+                item = TKBBatchItemResponse.builder()
+                        .input(tkbRequest)
+                        .rows(Collections.emptyList())
+                        .note("Không có Data cho " + tkbRequest.getSotiet() + " tiết")
+                        .build();
+            } else if (!resultRows.isEmpty()) {
+                item = TKBBatchItemResponse.builder()
+                        .input(tkbRequest)
+                        .rows(resultRows)
+                        .build();
+                totalRows += resultRows.size();
+                totalClasses++; // Increment class count for successfully generated subject
+            }
+
+            if (keepItems) {
+                items[index] = item;
+            }
+            listener.onSubject(tkbRequest, item);
+        }
+
+        List<TKBBatchItemResponse> getItems() {
+            List<TKBBatchItemResponse> result = new ArrayList<>(items.length);
+            for (TKBBatchItemResponse item : items) {
+                if (item != null) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class ClusterResult {
+        final Map<Integer, List<TKBRowResult>> rowsBySubject;
+        final List<ClassPick> picks; // In generation order
+        final Map<String, String> subjectRooms;
+
+        ClusterResult(Map<Integer, List<TKBRowResult>> rowsBySubject, List<ClassPick> picks,
+                Map<String, String> subjectRooms) {
+            this.rowsBySubject = rowsBySubject;
+            this.picks = picks;
+            this.subjectRooms = subjectRooms;
+        }
+    }
+
+    /**
+     * Parallel-mode state of one cluster task: its own rooms (others marked occupied) and its picks
+     */
+    private static class ClusterRooms {
+        final RoomOccupancy ownRooms;
+        final List<ClassPick> picks = new ArrayList<>(); // In generation order
+
+        ClusterRooms(RoomOccupancy ownRooms) {
+            this.ownRooms = ownRooms;
+        }
+
+        ClassPick record(ClassPick pick) {
+            pick.occupy(ownRooms);
+            picks.add(pick);
+            return pick;
+        }
+    }
+
+    /**
+     * Room picked for one class in parallel mode: what it was picked for, the (thu, kip) it
+     * occupies and the rows showing it, so the merge can move the class to another room
+     */
+    private static class ClassPick {
+        final TKBRequest request;
+        final Integer sisoPerClass;
+        final int thu;
+        final int kip;
+        final List<Integer> occupiedDays;
+        final int occupiedKip;
+        final List<TKBRowResult> rows = new ArrayList<>();
+        String roomCode;
+
+        ClassPick(TKBRequest request, Integer sisoPerClass, int thu, int kip, String roomCode,
+                List<Integer> occupiedDays, int occupiedKip) {
+            this.request = request;
+            this.sisoPerClass = sisoPerClass;
+            this.thu = thu;
+            this.kip = kip;
+            this.roomCode = roomCode;
+            this.occupiedDays = occupiedDays;
+            this.occupiedKip = occupiedKip;
+        }
+
+        boolean collidesWith(RoomOccupancy occupancy) {
+            for (Integer day : occupiedDays) {
+                if (occupancy.isOccupied(roomCode, day, occupiedKip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void occupy(RoomOccupancy occupancy) {
+            for (Integer day : occupiedDays) {
+                occupancy.occupy(roomCode, day, occupiedKip);
+            }
+        }
+    }
+
+    /**
+     * Commit session occupied rooms to global (permanent storage)
+     * Called when user clicks "Thêm vào kết quả".
+     * Throws StaleSessionException if the session was generated before the last global change
+     * (another session committed, or a reset): its rooms may be double-booked and its
+     * lastSlotIdx would drop the other session's rotation position.
+     */
+    public void commitSessionToGlobal(SchedulingSession session) {
+        synchronized (session) {
+            if (session.getOccupiedRooms().isEmpty()) {
+                log.warn("No session occupied rooms to commit (session {})", session.getId());
+                return;
+            }
+
+            synchronized (globalLock) {
+                if (globalOccupancyStore.intersects(session.getOccupiedRooms())) {
+                    log.warn("Session {}: rooms already confirmed by another session, commit rejected",
+                            session.getId());
+                    throw new StaleSessionException(
+                            "Phòng trong kết quả đã được phiên khác lưu, vui lòng xếp lại TKB (regenerate)");
+                }
+                if (session.getGlobalVersion() != globalOccupancyStore.getVersion()) {
+                    log.warn("Session {}: generated from global version {}, current {}, commit rejected",
+                            session.getId(), session.getGlobalVersion(), globalOccupancyStore.getVersion());
+                    throw new StaleSessionException(
+                            "Dữ liệu phòng đã thay đổi từ khi xếp TKB, vui lòng xếp lại TKB (regenerate)");
+                }
+
+                // Add session rooms (and the new lastSlotIdx) to global, written to the journal behind
+                int addedCount = globalOccupancyStore.commit(session.getOccupiedRooms(), session.getLastSlotIdx());
+
+                // COMMIT session lastSlotIdx to permanent lastSlotIdx
+                lastSlotIdx = session.getLastSlotIdx();
+
+                log.info("Session {}: committed {} new rooms to global. Total global rooms: {}, lastSlotIdx {}",
+                        session.getId(), addedCount, globalOccupancyStore.size(), lastSlotIdx);
+            }
+
+            // Clear session after commit
+            session.getOccupiedRooms().clear();
+        }
+    }
+
+    /**
+     * Calculate AH value (exact Python _row_AH logic), precomputed in the template table
+     */
+    private int calculateAH(DataLoaderService.TKBTemplateRow row) {
+        return row.getTotalUsed();
+    }
+
+    /**
+     * Normalize slots (exact Python _normalize_slots logic): exactly 18 weeks, "X" or ""
+     */
+    private List<String> normalizeSlots(DataLoaderService.TKBTemplateRow row) {
+        List<String> weeks = new ArrayList<>(TemplateTable.WEEKS);
+        for (int week = 1; week <= TemplateTable.WEEKS; week++) {
+            weeks.add(row.hasWeek(week) ? "X" : "");
+        }
         return weeks;
     }
 
@@ -290,9 +797,9 @@ public class TimetableSchedulingService {
     private TKBRowResult emitRow(int cls, TKBRequest payload, DataLoaderService.TKBTemplateRow row, int aiBefore,
             String roomCode, String maPhong) {
         int L = row.getPeriodLength();
-        Integer thu = row.getDayOfWeek();
-        Integer kip = row.getKip();
-        Integer tietBd = row.getStartPeriod();
+        int thu = row.getDayOfWeek();
+        int kip = row.getKip();
+        int tietBd = row.getStartPeriod();
         String keyN = row.getId();
         List<String> weeks = normalizeSlots(row);
         int AH = calculateAH(row);
@@ -363,15 +870,18 @@ public class TimetableSchedulingService {
      */
     private List<TKBRowResult> processRegularSubject(
             TKBRequest tkbRequest,
-            List<DataLoaderService.TKBTemplateRow> pool,
-            List<Room> rooms,
-            Set<Object> occupiedRooms,
+            TemplateIndex.Pool pool,
+            RoomAssignmentEngine rooms,
+            RoomOccupancy occupiedRooms,
+            RoomOccupancy sessionRooms,
+            Map<String, String> subjectRooms,
             int startingSlotIdx,
             int classes,
-            int targetTotal) {
+            int targetTotal,
+            ClusterRooms cluster) {
 
         List<TKBRowResult> resultRows = new ArrayList<>();
-        int idx = 0;
+        TemplateIndex.Cursor cursor = pool.cursor();
 
         log.info("Processing regular subject: {} classes", classes);
 
@@ -379,6 +889,7 @@ public class TimetableSchedulingService {
             // Room assignment: ONE room per class (Python strategy)
             String classRoomCode = null;
             String classRoomMaPhong = null;
+            ClassPick pick = null;
 
             // Calculate slot based on starting_slot_idx + class offset (exact Python logic)
             int slotIdx;
@@ -397,29 +908,9 @@ public class TimetableSchedulingService {
             int guard = 0;
 
             while (ai > 0 && guard < 10000) {
-                // Find matching row (exact Python logic)
-                DataLoaderService.TKBTemplateRow row = null;
-                int attempts = 0;
-
-                while (attempts < pool.size()) {
-                    DataLoaderService.TKBTemplateRow candidate = pool.get(idx);
-                    idx = (idx + 1) % pool.size();
-
-                    Integer rowThu = candidate.getDayOfWeek();
-                    Integer rowKip = candidate.getKip();
-
-                    if (rowThu.equals(targetSlot.getThu()) && targetKips.contains(rowKip)) {
-                        row = candidate;
-                        break;
-                    }
-                    attempts++;
-                }
-
-                // Fallback if no match found
-                if (row == null) {
-                    row = pool.get(idx);
-                    idx = (idx + 1) % pool.size();
-                }
+                // Find matching row (exact Python logic), falls back to the row under
+                // the cursor if no row matches the target slot
+                DataLoaderService.TKBTemplateRow row = cursor.next(targetSlot.getThu(), targetKips);
 
                 int ah = calculateAH(row);
                 if (ah <= 0) {
@@ -429,12 +920,12 @@ public class TimetableSchedulingService {
 
                 // Pick room ONCE per class (on first valid session only)
                 if (classRoomCode == null) {
-                    Integer tietBd = row.getStartPeriod();
-                    Integer rowThu = row.getDayOfWeek();
-                    Integer rowKip = row.getKip();
+                    int tietBd = row.getStartPeriod();
+                    int rowThu = row.getDayOfWeek();
+                    int rowKip = row.getKip();
 
                     // Skip room assignment if tiet_bd = 12
-                    if (tietBd != null && tietBd != 12 && rowThu != null && rowKip != null) {
+                    if (tietBd != 12) {
                         // Calculate siso per class for capacity check
                         Integer sisoPerClass;
                         if (tkbRequest.getHe_dac_thu() != null && !tkbRequest.getHe_dac_thu().trim().isEmpty()) {
@@ -445,20 +936,9 @@ public class TimetableSchedulingService {
                             sisoPerClass = tkbRequest.getSiso_mot_lop();
                         }
 
-                        // Call pickRoom
-                        RoomPickResult roomResult = roomService.pickRoom(
-                                rooms,
-                                sisoPerClass,
-                                occupiedRooms,
-                                rowThu,
-                                rowKip,
-                                tkbRequest.getSubject_type(),
-                                tkbRequest.getStudent_year(),
-                                tkbRequest.getHe_dac_thu(),
-                                null, // week_schedule can be added later
-                                tkbRequest.getNganh(), // NEW
-                                tkbRequest.getMa_mon() // NEW
-                        );
+                        // Call pickRoom (within the cluster's own rooms first in parallel mode)
+                        RoomPickResult roomResult = pickRoom(rooms, tkbRequest, sisoPerClass, occupiedRooms,
+                                rowThu, rowKip, subjectRooms, cluster);
 
                         if (roomResult.hasRoom()) {
                             classRoomCode = roomResult.getRoomCode();
@@ -470,21 +950,27 @@ public class TimetableSchedulingService {
                                     roomResult.isPreferredBuilding() ? "YES" : "NO");
 
                             // Mark room as occupied in BOTH session and working set
-                            String occupationKey = classRoomCode + "|" + rowThu + "|" + rowKip;
-                            occupiedRooms.add(occupationKey); // Working set for this generation
-                            sessionOccupiedRooms.add(occupationKey); // Session storage (temporary)
+                            occupiedRooms.occupy(classRoomCode, rowThu, rowKip); // Working set for this generation
+                            sessionRooms.occupy(classRoomCode, rowThu, rowKip); // Session storage (temporary)
+                            if (cluster != null) {
+                                pick = cluster.record(new ClassPick(tkbRequest, sisoPerClass, rowThu, rowKip,
+                                        classRoomCode, List.of(rowThu), rowKip));
+                            }
                         }
                     }
                 }
 
                 // Create result row with room info (exact Python _emit_row logic)
                 // For rows with tiet_bd = 12, don't assign room
-                Integer currentTietBd = row.getStartPeriod();
-                String rowRoomCode = (currentTietBd != null && currentTietBd == 12) ? null : classRoomCode;
-                String rowRoomMaPhong = (currentTietBd != null && currentTietBd == 12) ? null : classRoomMaPhong;
+                boolean noRoom = row.getStartPeriod() == 12;
+                String rowRoomCode = noRoom ? null : classRoomCode;
+                String rowRoomMaPhong = noRoom ? null : classRoomMaPhong;
 
                 TKBRowResult resultRow = emitRow(cls, tkbRequest, row, ai, rowRoomCode, rowRoomMaPhong);
                 resultRows.add(resultRow);
+                if (pick != null && rowRoomCode != null) {
+                    pick.rows.add(resultRow);
+                }
 
                 // Subtract AH and increment guard - this creates ONE row per iteration
                 ai -= ah;
@@ -507,10 +993,13 @@ public class TimetableSchedulingService {
      */
     private List<TKBRowResult> process60PeriodSubject(
             TKBRequest tkbRequest,
-            List<DataLoaderService.TKBTemplateRow> pool,
-            List<Room> rooms,
-            Set<Object> occupiedRooms,
-            int startingSlotIdx) {
+            TemplateIndex.Pool pool,
+            RoomAssignmentEngine rooms,
+            RoomOccupancy occupiedRooms,
+            RoomOccupancy sessionRooms,
+            Map<String, String> subjectRooms,
+            int startingSlotIdx,
+            ClusterRooms cluster) {
 
         List<TKBRowResult> resultRows = new ArrayList<>();
 
@@ -518,11 +1007,8 @@ public class TimetableSchedulingService {
         int classes = Math.max(1, toInt(tkbRequest.getSolop(), 1));
         log.info("Processing 60-period subject with {} classes", classes);
 
-        // Group data by (thu, kip)
-        Map<String, List<DataLoaderService.TKBTemplateRow>> groups = pool.stream()
-                .collect(Collectors.groupingBy(row -> row.getDayOfWeek() + "_" + row.getKip()));
-
-        log.info("Grouped 60-period data into {} groups", groups.size());
+        // Data is already grouped by (thu, kip) in the template index
+        log.info("Grouped 60-period data into {} groups", pool.getSlotCount());
 
         // Loop through all classes
         for (int cls = 1; cls <= classes; cls++) {
@@ -541,13 +1027,14 @@ public class TimetableSchedulingService {
             // Assign ONE room for this class (both days)
             String classRoomCode = null;
             String classRoomMaPhong = null;
+            ClassPick pick = null;
 
             // Process each paired day with the SAME single kip
             for (Integer currentDay : dayPairSlot.getDays()) {
                 String groupKey = currentDay + "_" + targetKip;
-                List<DataLoaderService.TKBTemplateRow> groupRows = groups.get(groupKey);
+                List<DataLoaderService.TKBTemplateRow> groupRows = pool.getRows(currentDay, targetKip);
 
-                if (groupRows == null || groupRows.isEmpty()) {
+                if (groupRows.isEmpty()) {
                     log.warn("No data for day {} kip {}", currentDay, targetKip);
                     continue;
                 }
@@ -558,11 +1045,11 @@ public class TimetableSchedulingService {
                 for (DataLoaderService.TKBTemplateRow row : groupRows) {
                     // Pick room ONCE (on first valid row only)
                     if (classRoomCode == null) {
-                        Integer tietBd = row.getStartPeriod();
-                        Integer rowThu = row.getDayOfWeek();
-                        Integer rowKip = row.getKip();
+                        int tietBd = row.getStartPeriod();
+                        int rowThu = row.getDayOfWeek();
+                        int rowKip = row.getKip();
 
-                        if (tietBd != null && tietBd != 12 && rowThu != null && rowKip != null) {
+                        if (tietBd != 12) {
                             Integer sisoPerClass;
                             if (tkbRequest.getHe_dac_thu() != null && !tkbRequest.getHe_dac_thu().trim().isEmpty()) {
                                 sisoPerClass = tkbRequest.getSiso() / tkbRequest.getSolop();
@@ -570,19 +1057,8 @@ public class TimetableSchedulingService {
                                 sisoPerClass = tkbRequest.getSiso_mot_lop();
                             }
 
-                            RoomPickResult roomResult = roomService.pickRoom(
-                                    rooms,
-                                    sisoPerClass,
-                                    occupiedRooms,
-                                    rowThu,
-                                    rowKip,
-                                    tkbRequest.getSubject_type(),
-                                    tkbRequest.getStudent_year(),
-                                    tkbRequest.getHe_dac_thu(),
-                                    null,
-                                    tkbRequest.getNganh(), // NEW
-                                    tkbRequest.getMa_mon() // NEW
-                            );
+                            RoomPickResult roomResult = pickRoom(rooms, tkbRequest, sisoPerClass, occupiedRooms,
+                                    rowThu, rowKip, subjectRooms, cluster);
 
                             if (roomResult.hasRoom()) {
                                 classRoomCode = roomResult.getRoomCode();
@@ -593,6 +1069,10 @@ public class TimetableSchedulingService {
                                         classRoomCode, roomResult.getBuilding(),
                                         tkbRequest.getMa_mon(), cls, tkbRequest.getNganh(),
                                         roomResult.isPreferredBuilding() ? "YES" : "NO");
+                                if (cluster != null) {
+                                    pick = cluster.record(new ClassPick(tkbRequest, sisoPerClass, rowThu, rowKip,
+                                            classRoomCode, dayPairSlot.getDays(), targetKip));
+                                }
                             }
                         }
                     }
@@ -600,20 +1080,22 @@ public class TimetableSchedulingService {
                     // Mark room as occupied for BOTH days with the same kip
                     if (classRoomCode != null) {
                         for (Integer day : dayPairSlot.getDays()) {
-                            String occupationKey = classRoomCode + "|" + day + "|" + targetKip;
-                            occupiedRooms.add(occupationKey);
-                            sessionOccupiedRooms.add(occupationKey);
+                            occupiedRooms.occupy(classRoomCode, day, targetKip);
+                            sessionRooms.occupy(classRoomCode, day, targetKip);
                         }
                     }
 
                     // Emit row with current class number
                     int ah = calculateAH(row);
-                    Integer currentTietBd = row.getStartPeriod();
-                    String rowRoomCode = (currentTietBd != null && currentTietBd == 12) ? null : classRoomCode;
-                    String rowRoomMaPhong = (currentTietBd != null && currentTietBd == 12) ? null : classRoomMaPhong;
+                    boolean noRoom = row.getStartPeriod() == 12;
+                    String rowRoomCode = noRoom ? null : classRoomCode;
+                    String rowRoomMaPhong = noRoom ? null : classRoomMaPhong;
 
                     TKBRowResult resultRow = emitRow(cls, tkbRequest, row, ah, rowRoomCode, rowRoomMaPhong);
                     resultRows.add(resultRow);
+                    if (pick != null && rowRoomCode != null) {
+                        pick.rows.add(resultRow);
+                    }
                 }
             }
         }
@@ -654,64 +1136,64 @@ public class TimetableSchedulingService {
     }
 
     /**
-     * Reset both session and global occupied rooms
+     * Reset the caller's session and global occupied rooms
      * Called when user clicks "Reset phòng đã sử dụng" button
      */
-    public void resetOccupiedRooms() {
-        // Clear session
-        int sessionCount = sessionOccupiedRooms.size();
-        sessionOccupiedRooms.clear();
-
-        // Clear global storage
-        Set<Object> emptySet = new HashSet<>();
-        dataLoaderService.saveGlobalOccupiedRooms(emptySet);
-
-        // Reset BOTH lastSlotIdx variables
-        lastSlotIdx = -1;
-        sessionLastSlotIdx = -1;
+    public void resetOccupiedRooms(SchedulingSession session) {
+        synchronized (session) {
+            // Clear session
+            int sessionCount = session.getOccupiedRooms().size();
+            session.reset(-1);
+
+            synchronized (globalLock) {
+                // Clear global storage
+                globalOccupancyStore.reset();
+
+                // Reset BOTH lastSlotIdx variables
+                lastSlotIdx = -1;
+            }
 
-        log.info("Reset occupied rooms - Cleared {} session rooms, global storage, and lastSlotIdx", sessionCount);
+            log.info("Reset occupied rooms - Cleared {} rooms of session {}, global storage, and lastSlotIdx",
+                    sessionCount, session.getId());
+        }
     }
 
     /**
-     * Reset lastSlotIdx về -1 và lưu vào file
+     * Reset lastSlotIdx về -1 và lưu vào occupancy store
      * Called when user wants to reset slot index to start from beginning
      */
-    public void resetLastSlotIdx() {
-        // Reset trong memory
-        lastSlotIdx = -1;
-        sessionLastSlotIdx = -1;
-
-        // Lưu vào file
-        dataLoaderService.saveLastSlotIdx(-1);
+    public void resetLastSlotIdx(SchedulingSession session) {
+        // Cùng thứ tự khóa như resetAll/commitSessionToGlobal: session rồi globalLock
+        synchronized (session) {
+            // Reset trong memory
+            session.setLastSlotIdx(-1);
+            synchronized (globalLock) {
+                lastSlotIdx = -1;
+
+                // Lưu vào occupancy store; kết quả đang có của chính phiên này vẫn được lưu sau đó
+                boolean upToDate = session.getGlobalVersion() == globalOccupancyStore.getVersion();
+                globalOccupancyStore.setLastSlotIdx(-1);
+                if (upToDate) {
+                    session.setGlobalVersion(globalOccupancyStore.getVersion());
+                }
+            }
+        }
 
-        log.info("Reset lastSlotIdx to -1 and saved to file");
+        log.info("Reset lastSlotIdx to -1 and saved to occupancy store");
     }
 
     /**
-     * Get current occupied rooms count (for display)
+     * Get current occupied rooms count of the caller's session (for display)
      */
-    public Map<String, Integer> getOccupiedRoomsInfo() {
-        Set<Object> globalRooms = dataLoaderService.loadGlobalOccupiedRooms();
+    public Map<String, Integer> getOccupiedRoomsInfo(SchedulingSession session) {
+        int globalCount = globalOccupancyStore.size();
+        int sessionCount = session.getOccupiedRooms().size();
 
         Map<String, Integer> info = new HashMap<>();
-        info.put("session", sessionOccupiedRooms.size());
-        info.put("global", globalRooms.size());
-        info.put("total", sessionOccupiedRooms.size() + globalRooms.size());
+        info.put("session", sessionCount);
+        info.put("global", globalCount);
+        info.put("total", sessionCount + globalCount);
 
         return info;
     }
-
-    // Helper method để convert RoomResponse sang Room Entity
-    private Room convertToRoom(RoomResponse roomResponse) {
-        return Room.builder()
-                .id(roomResponse.getId())
-                .phong(roomResponse.getPhong())
-                .capacity(roomResponse.getCapacity())
-                .day(roomResponse.getDay())
-                .type(roomResponse.getType())
-                .status(roomResponse.getStatus())
-                .note(roomResponse.getNote())
-                .build();
-    }
-}
\ No newline at end of file
+}
@@ -2,17 +2,66 @@ package com.ptit.schedule.service.impl;
 
 import com.ptit.schedule.dto.ConflictResult;
 import com.ptit.schedule.dto.ScheduleEntry;
+import com.ptit.schedule.service.LongIntHashMap;
 import com.ptit.schedule.service.ScheduleConflictDetectionService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDetectionService {
 
+    // Worker threads for parallel detection, 0 = number of cores
+    @Value("${tkb.conflicts.parallelism:0}")
+    private int detectionParallelism;
+
+    // Below this many time slots detection stays on the calling thread
+    @Value("${tkb.conflicts.parallel-threshold:20000}")
+    private int parallelThreshold;
+
+    private ForkJoinPool detectionPool;
+
+    // Stable output order: owner, then day, start period, shift, number of periods, week
+    private static final Comparator<String> NUMERIC_TEXT_ORDER =
+            ScheduleConflictDetectionServiceImpl::compareNumericText;
+
+    private static final Comparator<ScheduleEntry.TimeSlot> TIME_SLOT_ORDER = Comparator
+            .comparing(ScheduleEntry.TimeSlot::getDayOfWeek, NUMERIC_TEXT_ORDER)
+            .thenComparing(ScheduleEntry.TimeSlot::getStartPeriod, NUMERIC_TEXT_ORDER)
+            .thenComparing(ScheduleEntry.TimeSlot::getShift, NUMERIC_TEXT_ORDER)
+            .thenComparing(ScheduleEntry.TimeSlot::getNumberOfPeriods, NUMERIC_TEXT_ORDER)
+            .thenComparing(timeSlot -> extractWeekNumber(timeSlot.getDate()), NUMERIC_TEXT_ORDER);
+
+    private static final Comparator<ConflictResult.RoomConflict> ROOM_CONFLICT_ORDER = Comparator
+            .comparing(ConflictResult.RoomConflict::getRoom, NUMERIC_TEXT_ORDER)
+            .thenComparing(ConflictResult.RoomConflict::getTimeSlot, TIME_SLOT_ORDER);
+
+    private static final Comparator<ConflictResult.TeacherConflict> TEACHER_CONFLICT_ORDER = Comparator
+            .comparing(ConflictResult.TeacherConflict::getTeacherId, NUMERIC_TEXT_ORDER)
+            .thenComparing(ConflictResult.TeacherConflict::getTimeSlot, TIME_SLOT_ORDER);
+
+    @PostConstruct
+    public void init() {
+        int parallelism = detectionParallelism > 0 ? detectionParallelism
+                : Runtime.getRuntime().availableProcessors();
+        detectionPool = new ForkJoinPool(parallelism);
+        log.info("Conflict detection pool started with {} threads (parallel from {} time slots)",
+                parallelism, parallelThreshold);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        detectionPool.shutdown();
+    }
+
     // Helper class to pair ScheduleEntry with its specific TimeSlot
     private static class ScheduleEntryWithTimeSlot {
         final ScheduleEntry entry;
@@ -24,14 +73,230 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
         }
     }
 
+    /**
+     * Interned ids for the strings used as keys, so grouping works on packed longs
+     * instead of concatenated strings. A time slot (week, day, shift, start, length)
+     * becomes one long: the five field ids packed in two levels of 3 x 21 bits.
+     */
+    private static final class KeyEncoder {
+        private static final int ID_BITS = 21;
+        private static final int ID_LIMIT = 1 << ID_BITS;
+
+        final StringIds rooms = new StringIds();
+        final StringIds teachers = new StringIds();
+        final StringIds subjects = new StringIds();
+        private final StringIds weeks = new StringIds();
+        private final StringIds days = new StringIds();
+        private final StringIds periodFields = new StringIds();
+        private final LongIntHashMap periods = new LongIntHashMap();
+        private final Map<String, Double> periodNumbers = new HashMap<>();
+
+        /**
+         * (week, day, (shift, start, length)) as a packed key
+         */
+        long slotKey(ScheduleEntry.TimeSlot timeSlot) {
+            long periodKey = pack(periodFields.idOf(timeSlot.getShift()),
+                    periodFields.idOf(timeSlot.getStartPeriod()), periodFields.idOf(timeSlot.getNumberOfPeriods()));
+            int periodId = periods.get(periodKey);
+            if (periodId == LongIntHashMap.NO_VALUE) {
+                periodId = periods.size();
+                periods.put(periodKey, periodId);
+            }
+            return pack(weeks.idOf(timeSlot.getDate()), days.idOf(timeSlot.getDayOfWeek()), periodId);
+        }
+
+        /**
+         * (week, day) as a packed key: one sweep bucket per owner
+         */
+        long dayKey(ScheduleEntry.TimeSlot timeSlot) {
+            return pack(weeks.idOf(timeSlot.getDate()), days.idOf(timeSlot.getDayOfWeek()), 0);
+        }
+
+        /**
+         * Start period and a positive number of periods are both numbers
+         */
+        boolean hasPeriodRange(ScheduleEntry.TimeSlot timeSlot) {
+            double start = periodValue(timeSlot.getStartPeriod());
+            double count = periodValue(timeSlot.getNumberOfPeriods());
+            return !Double.isNaN(start) && !Double.isNaN(count) && count > 0;
+        }
+
+        /**
+         * Numeric value of a period cell ("3", "2.0"), NaN if it is not a number
+         */
+        double periodValue(String value) {
+            return periodNumbers.computeIfAbsent(value, v -> {
+                try {
+                    double number = v != null ? Double.parseDouble(v.trim()) : Double.NaN;
+                    return Double.isFinite(number) ? number : Double.NaN;
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            });
+        }
+
+        static long pack(int a, int b, int c) {
+            if (a >= ID_LIMIT || b >= ID_LIMIT || c >= ID_LIMIT) {
+                throw new IllegalStateException("Too many distinct values for a packed key");
+            }
+            return ((long) a << (2 * ID_BITS)) | ((long) b << ID_BITS) | c;
+        }
+    }
+
+    /**
+     * String -> dense int id (null is a value too, like a HashMap key)
+     */
+    private static final class StringIds {
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Slot occurrences (entry index, time slot index) grouped by (owner id, slot key),
+     * owner = room or teacher. Groups are numbered in first-seen order; after seal() the
+     * members of each group are contiguous (counting sort, input order kept).
+     * Period range and duplicate key are stored per occurrence, so once sealed the
+     * groups are read-only and can be swept from several threads.
+     */
+    private static final class SlotGroups {
+        private final LongIntHashMap groupIds;
+        private final LongIntHashMap slotIds = new LongIntHashMap();
+        private int[] occurrenceGroup;
+        private int[] occurrenceEntry;
+        private int[] occurrenceSlot;
+        private double[] occurrenceStart;
+        private double[] occurrenceEnd;
+        private long[] occurrenceDuplicateKey;
+        private int occurrences;
+        private int[] groupStart;
+        private int[] members;
+
+        SlotGroups(int expectedOccurrences) {
+            int capacity = Math.max(16, expectedOccurrences);
+            groupIds = new LongIntHashMap(capacity);
+            occurrenceGroup = new int[capacity];
+            occurrenceEntry = new int[capacity];
+            occurrenceSlot = new int[capacity];
+            occurrenceStart = new double[capacity];
+            occurrenceEnd = new double[capacity];
+            occurrenceDuplicateKey = new long[capacity];
+        }
+
+        void add(int ownerId, long slotKey, int entryIndex, int slotIndex, double start, double end,
+                long duplicateKey) {
+            int slotId = slotIds.get(slotKey);
+            if (slotId == LongIntHashMap.NO_VALUE) {
+                slotId = slotIds.size();
+                slotIds.put(slotKey, slotId);
+            }
+            long groupKey = ((long) ownerId << 32) | slotId;
+            int group = groupIds.get(groupKey);
+            if (group == LongIntHashMap.NO_VALUE) {
+                group = groupIds.size();
+                groupIds.put(groupKey, group);
+            }
+
+            if (occurrences == occurrenceGroup.length) {
+                int capacity = occurrences * 2;
+                occurrenceGroup = Arrays.copyOf(occurrenceGroup, capacity);
+                occurrenceEntry = Arrays.copyOf(occurrenceEntry, capacity);
+                occurrenceSlot = Arrays.copyOf(occurrenceSlot, capacity);
+                occurrenceStart = Arrays.copyOf(occurrenceStart, capacity);
+                occurrenceEnd = Arrays.copyOf(occurrenceEnd, capacity);
+                occurrenceDuplicateKey = Arrays.copyOf(occurrenceDuplicateKey, capacity);
+            }
+            occurrenceGroup[occurrences] = group;
+            occurrenceEntry[occurrences] = entryIndex;
+            occurrenceSlot[occurrences] = slotIndex;
+            occurrenceStart[occurrences] = start;
+            occurrenceEnd[occurrences] = end;
+            occurrenceDuplicateKey[occurrences] = duplicateKey;
+            occurrences++;
+        }
+
+        void seal() {
+            int groups = groupIds.size();
+            groupStart = new int[groups + 1];
+            for (int i = 0; i < occurrences; i++) {
+                groupStart[occurrenceGroup[i] + 1]++;
+            }
+            for (int g = 0; g < groups; g++) {
+                groupStart[g + 1] += groupStart[g];
+            }
+            int[] next = Arrays.copyOf(groupStart, groups);
+            members = new int[occurrences];
+            for (int i = 0; i < occurrences; i++) {
+                members[next[occurrenceGroup[i]]++] = i;
+            }
+        }
+
+        int groupCount() {
+            return groupStart.length - 1;
+        }
+
+        int groupSize(int group) {
+            return groupStart[group + 1] - groupStart[group];
+        }
+
+        int member(int group, int m) {
+            return members[groupStart[group] + m];
+        }
+
+        int entryIndex(int occurrence) {
+            return occurrenceEntry[occurrence];
+        }
+
+        int slotIndex(int occurrence) {
+            return occurrenceSlot[occurrence];
+        }
+
+        double start(int occurrence) {
+            return occurrenceStart[occurrence];
+        }
+
+        double end(int occurrence) {
+            return occurrenceEnd[occurrence];
+        }
+
+        long duplicateKey(int occurrence) {
+            return occurrenceDuplicateKey[occurrence];
+        }
+    }
+
     @Override
     public ConflictResult detectConflicts(List<ScheduleEntry> scheduleEntries) {
-        List<ConflictResult.RoomConflict> roomConflicts = detectRoomConflicts(scheduleEntries);
-        List<ConflictResult.TeacherConflict> teacherConflicts = detectTeacherConflicts(scheduleEntries);
+        boolean parallel = isParallel(scheduleEntries);
+        long start = System.currentTimeMillis();
 
-        // Group conflicts by pattern (same time, same room/teacher but different weeks)
-        List<ConflictResult.RoomConflict> groupedRoomConflicts = groupRoomConflictsByPattern(roomConflicts);
-        List<ConflictResult.TeacherConflict> groupedTeacherConflicts = groupTeacherConflictsByPattern(teacherConflicts);
+        List<ConflictResult.RoomConflict> groupedRoomConflicts;
+        List<ConflictResult.TeacherConflict> groupedTeacherConflicts;
+        if (parallel) {
+            // Room and teacher dimensions are independent: run them concurrently
+            ForkJoinTask<List<ConflictResult.RoomConflict>> roomTask = detectionPool.submit(() ->
+                    groupRoomConflictsByPattern(toRoomConflicts(findOverlaps(scheduleEntries, true, true))));
+            ForkJoinTask<List<ConflictResult.TeacherConflict>> teacherTask = detectionPool.submit(() ->
+                    groupTeacherConflictsByPattern(toTeacherConflicts(findOverlaps(scheduleEntries, false, true))));
+            groupedRoomConflicts = roomTask.join();
+            groupedTeacherConflicts = teacherTask.join();
+        } else {
+            List<ConflictResult.RoomConflict> roomConflicts = detectRoomConflicts(scheduleEntries);
+            List<ConflictResult.TeacherConflict> teacherConflicts = detectTeacherConflicts(scheduleEntries);
+
+            // Group conflicts by pattern (same time, same room/teacher but different weeks)
+            groupedRoomConflicts = groupRoomConflictsByPattern(roomConflicts);
+            groupedTeacherConflicts = groupTeacherConflictsByPattern(teacherConflicts);
+        }
+        log.info("Detected {} room / {} teacher conflicts in {} entries ({}) in {} ms",
+                groupedRoomConflicts.size(), groupedTeacherConflicts.size(), scheduleEntries.size(),
+                parallel ? "parallel" : "sequential", System.currentTimeMillis() - start);
 
         return ConflictResult.builder()
                 .roomConflicts(groupedRoomConflicts)
@@ -42,163 +307,249 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
 
     @Override
     public List<ConflictResult.RoomConflict> detectRoomConflicts(List<ScheduleEntry> scheduleEntries) {
-//        log.debug("=== detectRoomConflicts START ===");
-//        log.debug("Total schedule entries: {}", scheduleEntries.size());
-        
-        List<ConflictResult.RoomConflict> conflicts = new ArrayList<>();
+        return toRoomConflicts(findOverlaps(scheduleEntries, true, isParallel(scheduleEntries)));
+    }
 
-        // Group by room and time slot key
-        Map<String, Map<String, List<ScheduleEntryWithTimeSlot>>> roomTimeMap = new HashMap<>();
+    @Override
+    public List<ConflictResult.TeacherConflict> detectTeacherConflicts(List<ScheduleEntry> scheduleEntries) {
+        return toTeacherConflicts(findOverlaps(scheduleEntries, false, isParallel(scheduleEntries)));
+    }
 
+    /**
+     * Big inputs (tkb.conflicts.parallel-threshold time slots or more) are split across the pool
+     */
+    private boolean isParallel(List<ScheduleEntry> scheduleEntries) {
+        long timeSlots = 0;
         for (ScheduleEntry entry : scheduleEntries) {
+            if (entry.getTimeSlots() != null) {
+                timeSlots += entry.getTimeSlots().size();
+            }
+        }
+        return detectionPool != null && timeSlots >= parallelThreshold;
+    }
+
+    private List<ConflictResult.RoomConflict> toRoomConflicts(List<List<ScheduleEntryWithTimeSlot>> overlaps) {
+        List<ConflictResult.RoomConflict> conflicts = new ArrayList<>();
+
+        // Find conflicts (same room, overlapping time, different subjects)
+        for (List<ScheduleEntryWithTimeSlot> uniqueEntries : overlaps) {
+            ScheduleEntryWithTimeSlot first = uniqueEntries.get(0);
+            String room = first.entry.getRoom();
+            String timeSlotKey = first.timeSlot.getSlotKey();
+
+            // Tạo TimeSlot đại diện từ tất cả conflicts thay vì chỉ lấy của entry đầu tiên
+            ScheduleEntry.TimeSlot representativeTimeSlot = createRepresentativeTimeSlot(timeSlotKey, uniqueEntries);
+
+            List<ScheduleEntry> conflictingSchedules = uniqueEntries.stream()
+                    .map(ewt -> ewt.entry)
+                    .collect(Collectors.toList());
+
+            ConflictResult.RoomConflict conflict = ConflictResult.RoomConflict.builder()
+                    .room(room)
+                    .timeSlot(representativeTimeSlot)
+                    .conflictingSchedules(conflictingSchedules)
+                    .build();
+            conflicts.add(conflict);
+        }
+
+        return conflicts;
+    }
+
+    private List<ConflictResult.TeacherConflict> toTeacherConflicts(List<List<ScheduleEntryWithTimeSlot>> overlaps) {
+        List<ConflictResult.TeacherConflict> conflicts = new ArrayList<>();
+
+        // Find conflicts (same teacher, overlapping time, different subjects/rooms)
+        for (List<ScheduleEntryWithTimeSlot> uniqueEntries : overlaps) {
+            ScheduleEntryWithTimeSlot firstEntryWithTime = uniqueEntries.get(0);
+            ScheduleEntry firstEntry = firstEntryWithTime.entry;
+            ScheduleEntry.TimeSlot conflictTimeSlot = firstEntryWithTime.timeSlot;
+
+            List<ScheduleEntry> conflictingSchedules = uniqueEntries.stream()
+                    .map(ewt -> ewt.entry)
+                    .collect(Collectors.toList());
+
+            ConflictResult.TeacherConflict conflict = ConflictResult.TeacherConflict.builder()
+                    .teacherId(firstEntry.getTeacherId())
+                    .teacherName(firstEntry.getTeacherName())
+                    .timeSlot(conflictTimeSlot)
+                    .conflictingSchedules(conflictingSchedules)
+                    .build();
+            conflicts.add(conflict);
+        }
+
+        return conflicts;
+    }
+
+    /**
+     * Sessions of the same room (byRoom) or teacher that overlap in time, duplicates removed.
+     * Sessions are bucketed by (owner, week, day); each bucket is sorted by start period and
+     * swept, and every maximal set of sessions running at the same moment is reported once:
+     * k identical slots give one conflict, periods 1-3 / 2-4 / 3-5 give two (1-3 + 2-4, 2-4 + 3-5).
+     * Slots whose start period / number of periods is not a number fall back to exact slot-key matching.
+     * Keys are built sequentially; in parallel mode the buckets are then swept in shards on the pool
+     * and concatenated in bucket order, so the result is the same as the sequential one.
+     */
+    private List<List<ScheduleEntryWithTimeSlot>> findOverlaps(List<ScheduleEntry> scheduleEntries, boolean byRoom,
+            boolean parallel) {
+        KeyEncoder keys = new KeyEncoder();
+        SlotGroups dayBuckets = new SlotGroups(scheduleEntries.size() * 4);
+        SlotGroups exactGroups = new SlotGroups(16);
+
+        for (int e = 0; e < scheduleEntries.size(); e++) {
+            ScheduleEntry entry = scheduleEntries.get(e);
             if (entry.getTimeSlots() == null) continue;
-            
+
             // Bỏ qua các lớp học online (không cần kiểm tra xung đột phòng học)
-            if (isOnlineClass(entry)) {
-//                log.debug("Skipping online class: {}", entry.getSubjectName());
+            if (byRoom && isOnlineClass(entry)) {
                 continue;
             }
 
-            for (ScheduleEntry.TimeSlot timeSlot : entry.getTimeSlots()) {
-                String room = entry.getRoom();
-                String timeKey = timeSlot.getSlotKey();
-                
-//                log.debug("Processing: Subject={}, Room={}, SlotKey={}, DayOfWeek={}",
-//                    entry.getSubjectName(), room, timeKey, timeSlot.getDayOfWeek());
+            int roomId = keys.rooms.idOf(entry.getRoom());
+            int teacherId = keys.teachers.idOf(entry.getTeacherId());
+            int ownerId = byRoom ? roomId : teacherId;
+            long duplicateKey = KeyEncoder.pack(keys.subjects.idOf(entry.getSubjectCode()), roomId, teacherId);
 
-                roomTimeMap
-                        .computeIfAbsent(room, k -> new HashMap<>())
-                        .computeIfAbsent(timeKey, k -> new ArrayList<>())
-                        .add(new ScheduleEntryWithTimeSlot(entry, timeSlot));
+            List<ScheduleEntry.TimeSlot> timeSlots = entry.getTimeSlots();
+            for (int s = 0; s < timeSlots.size(); s++) {
+                ScheduleEntry.TimeSlot timeSlot = timeSlots.get(s);
+                if (keys.hasPeriodRange(timeSlot)) {
+                    double start = keys.periodValue(timeSlot.getStartPeriod());
+                    double end = start + keys.periodValue(timeSlot.getNumberOfPeriods());
+                    dayBuckets.add(ownerId, keys.dayKey(timeSlot), e, s, start, end, duplicateKey);
+                } else {
+                    exactGroups.add(ownerId, keys.slotKey(timeSlot), e, s, Double.NaN, Double.NaN, duplicateKey);
+                }
             }
         }
+        dayBuckets.seal();
+        exactGroups.seal();
 
-//        log.debug("RoomTimeMap created with {} rooms", roomTimeMap.size());
+        List<List<ScheduleEntryWithTimeSlot>> overlaps = new ArrayList<>();
+        int buckets = dayBuckets.groupCount();
+        if (parallel && buckets > 1) {
+            int shards = Math.min(buckets, detectionPool.getParallelism() * 4);
+            List<ForkJoinTask<List<List<ScheduleEntryWithTimeSlot>>>> tasks = new ArrayList<>(shards);
+            for (int k = 0; k < shards; k++) {
+                int from = (int) ((long) buckets * k / shards);
+                int to = (int) ((long) buckets * (k + 1) / shards);
+                tasks.add(detectionPool.submit(() -> sweepBuckets(dayBuckets, from, to, scheduleEntries)));
+            }
+            for (ForkJoinTask<List<List<ScheduleEntryWithTimeSlot>>> task : tasks) {
+                overlaps.addAll(task.join());
+            }
+        } else {
+            overlaps.addAll(sweepBuckets(dayBuckets, 0, buckets, scheduleEntries));
+        }
 
-        // Find conflicts (same room, same time, different subjects)
-        for (Map.Entry<String, Map<String, List<ScheduleEntryWithTimeSlot>>> roomEntry : roomTimeMap.entrySet()) {
-            String room = roomEntry.getKey();
-            
-//            log.debug("Checking room: {} with {} time slots", room, roomEntry.getValue().size());
-            
-            for (Map.Entry<String, List<ScheduleEntryWithTimeSlot>> timeEntry : roomEntry.getValue().entrySet()) {
-                String timeSlotKey = timeEntry.getKey();
-                List<ScheduleEntryWithTimeSlot> entriesAtTime = timeEntry.getValue();
-
-//                log.debug("Time slot: {}, entries count: {}", timeSlotKey, entriesAtTime.size());
-
-                if (entriesAtTime.size() > 1) {
-//                    log.debug("=== POTENTIAL ROOM CONFLICT ===");
-//                    log.debug("Room: {}, TimeSlotKey: {}", room, timeSlotKey);
-                    
-                    for (int i = 0; i < entriesAtTime.size(); i++) {
-                        ScheduleEntryWithTimeSlot entry = entriesAtTime.get(i);
-//                        log.debug("Entry {}: Subject={}, Teacher={}, DayOfWeek={}",
-//                            i, entry.entry.getSubjectName(), entry.entry.getTeacherName(), entry.timeSlot.getDayOfWeek());
-                    }
-                    
-                    // Remove duplicates (same subject, same teacher)
-                    List<ScheduleEntryWithTimeSlot> uniqueEntries = removeDuplicateEntriesWithTimeSlot(entriesAtTime);
-                    
-//                    log.debug("After removing duplicates: {} entries", uniqueEntries.size());
-                    
-                    if (uniqueEntries.size() > 1) {
-                        // Tạo TimeSlot đại diện từ tất cả conflicts thay vì chỉ lấy của entry đầu tiên
-                        ScheduleEntry.TimeSlot representativeTimeSlot = createRepresentativeTimeSlot(timeSlotKey, uniqueEntries);
-                        
-                        List<ScheduleEntry> conflictingSchedules = uniqueEntries.stream()
-                                .map(ewt -> ewt.entry)
-                                .collect(Collectors.toList());
-                        
-//                        log.debug("FINAL CONFLICT - Room: {}, TimeSlot: {}, Entries: {}",
-//                                room, representativeTimeSlot.getDisplayInfo(),
-//                                conflictingSchedules.stream().map(s -> s.getSubjectCode()).collect(Collectors.toList()));
-                        
-                        ConflictResult.RoomConflict conflict = ConflictResult.RoomConflict.builder()
-                                .room(room)
-                                .timeSlot(representativeTimeSlot)
-                                .conflictingSchedules(conflictingSchedules)
-                                .build();
-                        conflicts.add(conflict);
-                    }
+        for (int g = 0; g < exactGroups.groupCount(); g++) {
+            int size = exactGroups.groupSize(g);
+            if (size > 1) {
+                int[] occurrences = new int[size];
+                for (int m = 0; m < size; m++) {
+                    occurrences[m] = exactGroups.member(g, m);
                 }
+                addIfConflict(exactGroups, occurrences, size, scheduleEntries, overlaps);
             }
         }
-
-//        log.debug("=== detectRoomConflicts END ===");
-//        log.debug("Total conflicts found: {}", conflicts.size());
-        return conflicts;
+        return overlaps;
     }
 
-    @Override
-    public List<ConflictResult.TeacherConflict> detectTeacherConflicts(List<ScheduleEntry> scheduleEntries) {
-        List<ConflictResult.TeacherConflict> conflicts = new ArrayList<>();
-
-        // Group by teacher and time slot key
-        Map<String, Map<String, List<ScheduleEntryWithTimeSlot>>> teacherTimeMap = new HashMap<>();
+    private List<List<ScheduleEntryWithTimeSlot>> sweepBuckets(SlotGroups buckets, int from, int to,
+            List<ScheduleEntry> scheduleEntries) {
+        List<List<ScheduleEntryWithTimeSlot>> overlaps = new ArrayList<>();
+        for (int b = from; b < to; b++) {
+            if (buckets.groupSize(b) > 1) {
+                sweepBucket(buckets, b, scheduleEntries, overlaps);
+            }
+        }
+        return overlaps;
+    }
 
-        for (ScheduleEntry entry : scheduleEntries) {
-            if (entry.getTimeSlots() == null) continue;
+    /**
+     * Sweep line over one (owner, week, day) bucket: periods are half-open [start, start + count),
+     * at equal positions ends are processed before starts. A maximal overlapping set is the
+     * active set right before the first end that follows a start.
+     */
+    private void sweepBucket(SlotGroups buckets, int bucket, List<ScheduleEntry> scheduleEntries,
+            List<List<ScheduleEntryWithTimeSlot>> overlaps) {
+        int size = buckets.groupSize(bucket);
+        int[] occurrences = new int[size];
+        double[] starts = new double[size];
+        double[] ends = new double[size];
+        for (int m = 0; m < size; m++) {
+            int occurrence = buckets.member(bucket, m);
+            occurrences[m] = occurrence;
+            starts[m] = buckets.start(occurrence);
+            ends[m] = buckets.end(occurrence);
+        }
 
-            for (ScheduleEntry.TimeSlot timeSlot : entry.getTimeSlots()) {
-                String teacherId = entry.getTeacherId();
-                String timeKey = timeSlot.getSlotKey();
+        // Stable sorts: ties keep file order
+        Integer[] byStart = new Integer[size];
+        Integer[] byEnd = new Integer[size];
+        for (int m = 0; m < size; m++) {
+            byStart[m] = m;
+            byEnd[m] = m;
+        }
+        Arrays.sort(byStart, Comparator.comparingDouble(m -> starts[m]));
+        Arrays.sort(byEnd, Comparator.comparingDouble(m -> ends[m]));
 
-                teacherTimeMap
-                        .computeIfAbsent(teacherId, k -> new HashMap<>())
-                        .computeIfAbsent(timeKey, k -> new ArrayList<>())
-                        .add(new ScheduleEntryWithTimeSlot(entry, timeSlot));
+        List<Integer> active = new ArrayList<>(); // by start period
+        int[] overlapping = new int[size];
+        boolean opened = false;
+        int nextStart = 0;
+        int nextEnd = 0;
+        while (nextEnd < size) {
+            if (nextStart < size && starts[byStart[nextStart]] < ends[byEnd[nextEnd]]) {
+                active.add(byStart[nextStart++]);
+                opened = true;
+                continue;
             }
-        }
 
-        // Find conflicts (same teacher, same time, different subjects/rooms)
-        for (Map.Entry<String, Map<String, List<ScheduleEntryWithTimeSlot>>> teacherEntry : teacherTimeMap.entrySet()) {
-            String teacherId = teacherEntry.getKey();
-            
-            for (Map.Entry<String, List<ScheduleEntryWithTimeSlot>> timeEntry : teacherEntry.getValue().entrySet()) {
-                List<ScheduleEntryWithTimeSlot> entriesAtTime = timeEntry.getValue();
-
-                if (entriesAtTime.size() > 1) {
-                    // Remove duplicates (same subject, same room)
-                    List<ScheduleEntryWithTimeSlot> uniqueEntries = removeDuplicateEntriesWithTimeSlot(entriesAtTime);
-                    
-                    if (uniqueEntries.size() > 1) {
-                        ScheduleEntryWithTimeSlot firstEntryWithTime = uniqueEntries.get(0);
-                        ScheduleEntry firstEntry = firstEntryWithTime.entry;
-                        ScheduleEntry.TimeSlot conflictTimeSlot = firstEntryWithTime.timeSlot;
-                        
-                        List<ScheduleEntry> conflictingSchedules = uniqueEntries.stream()
-                                .map(ewt -> ewt.entry)
-                                .collect(Collectors.toList());
-                        
-                        ConflictResult.TeacherConflict conflict = ConflictResult.TeacherConflict.builder()
-                                .teacherId(teacherId)
-                                .teacherName(firstEntry.getTeacherName())
-                                .timeSlot(conflictTimeSlot)
-                                .conflictingSchedules(conflictingSchedules)
-                                .build();
-                        conflicts.add(conflict);
-                    }
+            Integer closing = byEnd[nextEnd++];
+            if (opened && active.size() > 1) {
+                for (int i = 0; i < active.size(); i++) {
+                    overlapping[i] = occurrences[active.get(i)];
                 }
+                addIfConflict(buckets, overlapping, active.size(), scheduleEntries, overlaps);
             }
+            opened = false;
+            active.remove(closing);
         }
+    }
 
-        return conflicts;
+    private void addIfConflict(SlotGroups groups, int[] occurrences, int count, List<ScheduleEntry> scheduleEntries,
+            List<List<ScheduleEntryWithTimeSlot>> overlaps) {
+        // Remove duplicates (same subject, same room, same teacher)
+        List<ScheduleEntryWithTimeSlot> uniqueEntries =
+                removeDuplicateEntriesWithTimeSlot(groups, occurrences, count, scheduleEntries);
+        if (uniqueEntries.size() > 1) {
+            overlaps.add(uniqueEntries);
+        }
     }
 
     /**
      * Remove duplicate entries with time slot that represent the same teaching session
+     * (same subject, room and teacher: keeps the first position, the last occurrence wins)
      */
-    private List<ScheduleEntryWithTimeSlot> removeDuplicateEntriesWithTimeSlot(List<ScheduleEntryWithTimeSlot> entries) {
-        Map<String, ScheduleEntryWithTimeSlot> uniqueMap = new LinkedHashMap<>();
-        
-        for (ScheduleEntryWithTimeSlot entryWithTime : entries) {
-            ScheduleEntry entry = entryWithTime.entry;
-            String key = entry.getSubjectCode() + "-" + entry.getRoom() + "-" + entry.getTeacherId();
-            uniqueMap.put(key, entryWithTime);
+    private List<ScheduleEntryWithTimeSlot> removeDuplicateEntriesWithTimeSlot(SlotGroups groups, int[] occurrences,
+            int count, List<ScheduleEntry> scheduleEntries) {
+        List<ScheduleEntryWithTimeSlot> unique = new ArrayList<>(count);
+        LongIntHashMap positions = new LongIntHashMap(count);
+
+        for (int m = 0; m < count; m++) {
+            int occurrence = occurrences[m];
+            ScheduleEntry entry = scheduleEntries.get(groups.entryIndex(occurrence));
+            ScheduleEntryWithTimeSlot entryWithTime = new ScheduleEntryWithTimeSlot(entry,
+                    entry.getTimeSlots().get(groups.slotIndex(occurrence)));
+
+            int position = positions.putIfAbsent(groups.duplicateKey(occurrence), unique.size());
+            if (position == LongIntHashMap.NO_VALUE) {
+                unique.add(entryWithTime);
+            } else {
+                unique.set(position, entryWithTime);
+            }
         }
-        
-        return new ArrayList<>(uniqueMap.values());
+        return unique;
     }
     
     /**
@@ -246,7 +597,7 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
      * Group room conflicts by pattern (same room, same time but different weeks)
      */
     private List<ConflictResult.RoomConflict> groupRoomConflictsByPattern(List<ConflictResult.RoomConflict> conflicts) {
-        Map<String, List<ConflictResult.RoomConflict>> groupedMap = new HashMap<>();
+        Map<String, List<ConflictResult.RoomConflict>> groupedMap = new LinkedHashMap<>();
         
         for (ConflictResult.RoomConflict conflict : conflicts) {
             String key = conflict.getConflictKey();
@@ -277,13 +628,14 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
                         .room(representative.getRoom())
                         .timeSlot(representative.getTimeSlot())
                         .conflictingSchedules(new ArrayList<>(allSchedules))
-                        .conflictWeeks(new ArrayList<>(allWeeks))
+                        .conflictWeeks(sortWeeks(allWeeks))
                         .build();
                         
                 result.add(groupedConflict);
             }
         }
         
+        result.sort(ROOM_CONFLICT_ORDER);
         return result;
     }
 
@@ -291,7 +643,7 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
      * Group teacher conflicts by pattern (same teacher, same time but different weeks)
      */
     private List<ConflictResult.TeacherConflict> groupTeacherConflictsByPattern(List<ConflictResult.TeacherConflict> conflicts) {
-        Map<String, List<ConflictResult.TeacherConflict>> groupedMap = new HashMap<>();
+        Map<String, List<ConflictResult.TeacherConflict>> groupedMap = new LinkedHashMap<>();
         
         for (ConflictResult.TeacherConflict conflict : conflicts) {
             String key = conflict.getConflictKey();
@@ -323,20 +675,64 @@ public class ScheduleConflictDetectionServiceImpl implements ScheduleConflictDet
                         .teacherName(representative.getTeacherName())
                         .timeSlot(representative.getTimeSlot())
                         .conflictingSchedules(new ArrayList<>(allSchedules))
-                        .conflictWeeks(new ArrayList<>(allWeeks))
+                        .conflictWeeks(sortWeeks(allWeeks))
                         .build();
                         
                 result.add(groupedConflict);
             }
         }
         
+        result.sort(TEACHER_CONFLICT_ORDER);
         return result;
     }
 
+    /**
+     * Weeks in numeric order ("2" before "10"), other values last
+     */
+    private static List<String> sortWeeks(Collection<String> weeks) {
+        List<String> sorted = new ArrayList<>(weeks);
+        sorted.sort(NUMERIC_TEXT_ORDER);
+        return sorted;
+    }
+
+    /**
+     * Whole numbers by value ("2" before "10") and before other text, other text
+     * alphabetically, null first
+     */
+    private static int compareNumericText(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        boolean numberA = isWholeNumber(a);
+        boolean numberB = isWholeNumber(b);
+        if (numberA && numberB) {
+            int byValue = Long.compare(Long.parseLong(a), Long.parseLong(b));
+            return byValue != 0 ? byValue : a.compareTo(b);
+        }
+        if (numberA != numberB) {
+            return numberA ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isWholeNumber(String value) {
+        int length = value.length();
+        if (length == 0 || length > 18) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Extract week number from date string (e.g., "Tuần 1" -> "1")
      */
-    private String extractWeekNumber(String date) {
+    private static String extractWeekNumber(String date) {
         if (date == null) return null;
         
         // Pattern: "Tuần X" where X is the week number
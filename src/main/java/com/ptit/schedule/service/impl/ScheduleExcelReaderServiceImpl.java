@@ -3,14 +3,31 @@ package com.ptit.schedule.service.impl;
 import com.ptit.schedule.dto.ScheduleEntry;
 import com.ptit.schedule.service.ScheduleExcelReaderService;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -61,39 +78,63 @@ public class ScheduleExcelReaderServiceImpl implements ScheduleExcelReaderServic
         COL_WEEK_13, COL_WEEK_14, COL_WEEK_15, COL_WEEK_16, COL_WEEK_17
     };
 
+    // Chỉ giữ các cột từ 0 đến COL_WEEK_17, các cột sau bị bỏ qua khi đọc
+    private static final int ROW_WIDTH = COL_WEEK_17 + 1;
+
+    // 3 dòng header đầu
+    private static final int FIRST_DATA_ROW = 3;
+
     @Override
     public List<ScheduleEntry> readScheduleFromExcel(MultipartFile file) {
         List<ScheduleEntry> scheduleEntries = new ArrayList<>();
+        streamScheduleFromExcel(file, scheduleEntries::add);
+        return scheduleEntries;
+    }
 
-        try (InputStream is = file.getInputStream();
-             Workbook workbook = new XSSFWorkbook(is)) {
+    @Override
+    public int streamScheduleFromExcel(MultipartFile file, Consumer<ScheduleEntry> consumer) {
+        long start = System.currentTimeMillis();
+        DataRowHandler rows = new DataRowHandler(consumer);
 
-            Sheet sheet = workbook.getSheetAt(0);
-            DataFormatter formatter = new DataFormatter();
+        try {
+            parseFirstSheet(file, rows);
+        } catch (IOException | SAXException | OpenXML4JException e) {
+            log.error("Error reading schedule Excel file", e);
+            throw new RuntimeException("Không thể đọc file Excel thời khóa biểu: " + e.getMessage());
+        }
 
-            log.info("Excel file has {} rows", sheet.getLastRowNum());
+        log.info("Streamed {} data rows, {} schedule entries in {} ms",
+                rows.dataRows, rows.entries, System.currentTimeMillis() - start);
+        return rows.entries;
+    }
 
-            // Đọc từng dòng dữ liệu (bỏ qua 3 dòng header đầu)
-            for (int i = 3; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
+    @Override
+    public List<ScheduleEntry> parseScheduleExcel(Path file) {
+        long start = System.currentTimeMillis();
+        List<ScheduleEntry> scheduleEntries = new ArrayList<>();
+        DataRowHandler rows = new DataRowHandler(scheduleEntries::add);
 
-                ScheduleEntry entry = createScheduleEntryFromRow(row, formatter);
-                if (entry != null && isValidEntry(entry)) {
-//                    log.debug("Successfully parsed entry: {}", entry.getSubjectCode());
-                    scheduleEntries.add(entry);
-                } else if (entry != null) {
-                    log.warn("Invalid entry at row {}: {}", i, entry.getSubjectCode());
+        try {
+            // Cùng một lượt SAX: dòng 0 là header (kiểm tra số cột), dữ liệu từ dòng 3
+            parseFirstSheet(file, (rowNum, cells) -> {
+                if (!rows.headerChecked) {
+                    if (rowNum != 0 || lastNonEmpty(cells) + 1 < TIME_SLOT_START_COL + 10) {
+                        throw new StopParsing();
+                    }
+                    rows.headerChecked = true;
                 }
-            }
-
-//            log.info("Successfully parsed {} schedule entries", scheduleEntries.size());
-
-        } catch (IOException e) {
+                rows.handle(rowNum, cells);
+            });
+        } catch (StopParsing stop) {
+            log.warn("Schedule Excel header row is missing or has too few columns");
+            return null;
+        } catch (IOException | SAXException | OpenXML4JException e) {
             log.error("Error reading schedule Excel file", e);
             throw new RuntimeException("Không thể đọc file Excel thời khóa biểu: " + e.getMessage());
         }
 
+        log.info("Parsed {} data rows, {} schedule entries in {} ms",
+                rows.dataRows, rows.entries, System.currentTimeMillis() - start);
         return scheduleEntries;
     }
 
@@ -108,38 +149,81 @@ public class ScheduleExcelReaderServiceImpl implements ScheduleExcelReaderServic
             return false;
         }
 
-        try (InputStream is = file.getInputStream();
-             Workbook workbook = new XSSFWorkbook(is)) {
-
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = sheet.getRow(0);
-            
-            // Kiểm tra có đủ cột không
-            if (headerRow == null || headerRow.getLastCellNum() < TIME_SLOT_START_COL + 10) {
-                return false;
-            }
-
-            return true;
-
+        // Chỉ đọc dòng header (dòng 0), dừng parse ngay sau đó
+        int[] headerWidth = { -1 };
+        try {
+            parseFirstSheet(file, (rowNum, cells) -> {
+                if (rowNum == 0) {
+                    headerWidth[0] = lastNonEmpty(cells) + 1;
+                }
+                throw new StopParsing();
+            });
+        } catch (StopParsing stop) {
+            // header đã đọc xong
         } catch (Exception e) {
             log.error("Error validating Excel format", e);
             return false;
         }
+
+        // Kiểm tra có đủ cột không
+        return headerWidth[0] >= TIME_SLOT_START_COL + 10;
+    }
+
+    /**
+     * File upload được copy ra file tạm để OPCPackage đọc zip từ đĩa thay vì giải nén vào RAM
+     */
+    private void parseFirstSheet(MultipartFile file, RowHandler rowHandler)
+            throws IOException, SAXException, OpenXML4JException {
+        Path tmp = Files.createTempFile("schedule-upload-", ".xlsx");
+        try {
+            try (InputStream is = file.getInputStream()) {
+                Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            parseFirstSheet(tmp, rowHandler);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Stream sheet đầu tiên qua XSSF event API (SAX + shared strings read-only):
+     * mỗi dòng chỉ giữ một mảng ROW_WIDTH ô đã format, không dựng cả workbook trong heap.
+     */
+    private void parseFirstSheet(Path file, RowHandler rowHandler)
+            throws IOException, SAXException, OpenXML4JException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("Workbook has no sheet");
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, null, sharedStrings,
+                        new RowCollector(rowHandler), new DataFormatter(), false));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
     }
 
-    private ScheduleEntry createScheduleEntryFromRow(Row row, DataFormatter formatter) {
+    private ScheduleEntry createScheduleEntryFromRow(int rowNum, String[] cells) {
         try {
             // Đọc thông tin cơ bản
-            String subjectCode = getCellValue(row, COL_SUBJECT_CODE, formatter);
-            String subjectName = getCellValue(row, COL_SUBJECT_NAME, formatter);
-            String classGroup = getCellValue(row, COL_CLASS_GROUP, formatter);
-            String room = getCellValue(row, COL_ROOM, formatter);
-            String building = getCellValue(row, COL_BUILDING, formatter);
-            String teacherId = getCellValue(row, COL_TEACHER_ID, formatter);
-            String teacherName = getCellValue(row, COL_TEACHER_NAME, formatter);
+            String subjectCode = getCellValue(cells, COL_SUBJECT_CODE);
+            String subjectName = getCellValue(cells, COL_SUBJECT_NAME);
+            String classGroup = getCellValue(cells, COL_CLASS_GROUP);
+            String room = getCellValue(cells, COL_ROOM);
+            String building = getCellValue(cells, COL_BUILDING);
+            String teacherId = getCellValue(cells, COL_TEACHER_ID);
+            String teacherName = getCellValue(cells, COL_TEACHER_NAME);
             if(building.equals("Online") || building.equals("LMS") || room.equals("LMS")) return  null;
             
-            int studentCount = parseIntSafe(getCellValue(row, COL_STUDENT_COUNT, formatter));
+            int studentCount = parseIntSafe(getCellValue(cells, COL_STUDENT_COUNT));
 
             // Tạo room đầy đủ (phòng + tòa nhà)
             String fullRoom = room;
@@ -148,7 +232,7 @@ public class ScheduleExcelReaderServiceImpl implements ScheduleExcelReaderServic
             }
 
             // Đọc thời gian (tìm các ô có 'x')
-            List<ScheduleEntry.TimeSlot> timeSlots = parseTimeSlots(row, formatter);
+            List<ScheduleEntry.TimeSlot> timeSlots = parseTimeSlots(cells);
 
             ScheduleEntry se =  ScheduleEntry.builder()
                     .subjectCode(subjectCode)
@@ -165,54 +249,58 @@ public class ScheduleExcelReaderServiceImpl implements ScheduleExcelReaderServic
             return se;
 
         } catch (Exception e) {
-            log.warn("Error parsing row {}: {}", row.getRowNum(), e.getMessage());
+            log.warn("Error parsing row {}: {}", rowNum, e.getMessage());
             return null;
         }
     }
 
-    private List<ScheduleEntry.TimeSlot> parseTimeSlots(Row row, DataFormatter formatter) {
+    private List<ScheduleEntry.TimeSlot> parseTimeSlots(String[] cells) {
         List<ScheduleEntry.TimeSlot> timeSlots = new ArrayList<>();
 
         // Đọc thông tin thời gian từ các cột cụ thể
-        String dayOfWeekStr = getCellValue(row, COL_DAY_OF_WEEK, formatter);     // Cột F - Thứ
-        String shiftStr = getCellValue(row, COL_SHIFT, formatter);               // Cột H - Kíp  
-        String startPeriodStr = getCellValue(row, COL_START_PERIOD, formatter);  // Cột I - Tiết BB
-        String numberOfPeriodsStr = getCellValue(row, COL_NUMBER_OF_PERIODS, formatter); // Cột J - Số tiết
+        String dayOfWeekStr = getCellValue(cells, COL_DAY_OF_WEEK);     // Cột F - Thứ
+        String shiftStr = getCellValue(cells, COL_SHIFT);               // Cột H - Kíp  
+        String startPeriodStr = getCellValue(cells, COL_START_PERIOD);  // Cột I - Tiết BB
+        String numberOfPeriodsStr = getCellValue(cells, COL_NUMBER_OF_PERIODS); // Cột J - Số tiết
 
         // Convert dayOfWeek number to text
         String dayOfWeek = convertDayOfWeek(dayOfWeekStr);
 
         // Kiểm tra các cột tuần để tìm 'x'
         for (int i = 0; i < WEEK_COLUMNS.length; i++) {
-            int colIndex = WEEK_COLUMNS[i];
-            
-            Cell cell = row.getCell(colIndex);
-            if (cell != null) {
-                String cellValue = formatter.formatCellValue(cell).trim().toLowerCase();
-                
-                // Nếu có 'x' thì đây là time slot được sử dụng
-                if (cellValue.contains("x")) {
-                    // Tạo time slot với thông tin từ các cột cụ thể
-                    int weekNumber = i + 1; // Tuần 1, 2, 3...
-                    
-                    ScheduleEntry.TimeSlot timeSlot = ScheduleEntry.TimeSlot.builder()
-                            .date("Tuần " + weekNumber)                    // "Tuần 1", "Tuần 2"...
-                            .dayOfWeek(dayOfWeek)                          // "Thứ 2", "Thứ 3"...
-                            .shift(shiftStr)                               // "1", "2", "3"...
-                            .startPeriod(startPeriodStr)                   // "1", "2", "3"...
-                            .numberOfPeriods(numberOfPeriodsStr)           // "1", "2", "3"...
-                            .build();
-                    timeSlots.add(timeSlot);
-                }
+            String cellValue = getCellValue(cells, WEEK_COLUMNS[i]).toLowerCase();
+
+            // Nếu có 'x' thì đây là time slot được sử dụng
+            if (cellValue.contains("x")) {
+                // Tạo time slot với thông tin từ các cột cụ thể
+                int weekNumber = i + 1; // Tuần 1, 2, 3...
+
+                ScheduleEntry.TimeSlot timeSlot = ScheduleEntry.TimeSlot.builder()
+                        .date("Tuần " + weekNumber)                    // "Tuần 1", "Tuần 2"...
+                        .dayOfWeek(dayOfWeek)                          // "Thứ 2", "Thứ 3"...
+                        .shift(shiftStr)                               // "1", "2", "3"...
+                        .startPeriod(startPeriodStr)                   // "1", "2", "3"...
+                        .numberOfPeriods(numberOfPeriodsStr)           // "1", "2", "3"...
+                        .build();
+                timeSlots.add(timeSlot);
             }
         }
 
         return timeSlots;
     }
     
-    private String getCellValue(Row row, int colIndex, DataFormatter formatter) {
-        Cell cell = row.getCell(colIndex);
-        return cell != null ? formatter.formatCellValue(cell).trim() : "";
+    private String getCellValue(String[] cells, int colIndex) {
+        String value = cells[colIndex];
+        return value != null ? value.trim() : "";
+    }
+
+    private static int lastNonEmpty(String[] cells) {
+        for (int i = cells.length - 1; i >= 0; i--) {
+            if (cells[i] != null) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -249,4 +337,87 @@ public class ScheduleExcelReaderServiceImpl implements ScheduleExcelReaderServic
                entry.getRoom() != null && !entry.getRoom().isEmpty() &&
                entry.getTimeSlots() != null && !entry.getTimeSlots().isEmpty();
     }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(int rowNum, String[] cells);
+    }
+
+    /**
+     * Bỏ qua 3 dòng header đầu, chuyển các dòng dữ liệu thành ScheduleEntry hợp lệ
+     */
+    private final class DataRowHandler implements RowHandler {
+        private final Consumer<ScheduleEntry> consumer;
+        private boolean headerChecked;
+        private int dataRows;
+        private int entries;
+
+        DataRowHandler(Consumer<ScheduleEntry> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void handle(int rowNum, String[] cells) {
+            if (rowNum < FIRST_DATA_ROW) {
+                return;
+            }
+            dataRows++;
+
+            ScheduleEntry entry = createScheduleEntryFromRow(rowNum, cells);
+            if (entry != null && isValidEntry(entry)) {
+                consumer.accept(entry);
+                entries++;
+            } else if (entry != null) {
+                log.warn("Invalid entry at row {}: {}", rowNum, entry.getSubjectCode());
+            }
+        }
+    }
+
+    /**
+     * Gom các ô của một dòng (chỉ cột 0..COL_WEEK_17) rồi đẩy cả dòng cho RowHandler.
+     * Dòng trống/thiếu trong file không phát sinh sự kiện nào, giống sheet.getRow() == null.
+     */
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler rowHandler;
+        private String[] cells = new String[ROW_WIDTH];
+        private boolean hasCell;
+
+        RowCollector(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(cells, null);
+            hasCell = false;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (hasCell || rowNum == 0) {
+                rowHandler.handle(rowNum, cells);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (cellReference == null || formattedValue == null) {
+                return;
+            }
+            int col = new CellReference(cellReference).getCol();
+            if (col < ROW_WIDTH) {
+                cells[col] = formattedValue;
+                hasCell = true;
+            }
+        }
+    }
+
+    /**
+     * Dừng SAX parse sớm (validate chỉ cần dòng header)
+     */
+    private static final class StopParsing extends RuntimeException {
+        StopParsing() {
+            super(null, null, false, false);
+        }
+    }
 }
\ No newline at end of file
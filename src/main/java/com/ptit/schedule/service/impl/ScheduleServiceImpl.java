@@ -1,22 +1,82 @@
 package com.ptit.schedule.service.impl;
 
+import com.ptit.schedule.dto.KeysetPage;
+import com.ptit.schedule.dto.RoomAvailabilityResponse;
+import com.ptit.schedule.dto.ScheduleConflictResponse;
+import com.ptit.schedule.dto.ScheduleDeleteResult;
+import com.ptit.schedule.dto.ScheduleSaveResult;
+import com.ptit.schedule.dto.ScheduleView;
 import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.entity.WeekSet;
+import com.ptit.schedule.exception.BulkInsertException;
 import com.ptit.schedule.repository.ScheduleRepository;
+import com.ptit.schedule.service.ScheduleBulkWriter;
+import com.ptit.schedule.service.ScheduleConflictIndex;
 import com.ptit.schedule.service.ScheduleService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 public class ScheduleServiceImpl implements ScheduleService {
+    private static final int DEFAULT_PAGE_SIZE = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final ScheduleRepository scheduleRepository;
+    private final ScheduleConflictIndex scheduleConflictIndex;
+    private final ScheduleBulkWriter scheduleBulkWriter;
 
-    public ScheduleServiceImpl(ScheduleRepository scheduleRepository) {
+    public ScheduleServiceImpl(ScheduleRepository scheduleRepository, ScheduleConflictIndex scheduleConflictIndex,
+                               ScheduleBulkWriter scheduleBulkWriter) {
         this.scheduleRepository = scheduleRepository;
+        this.scheduleConflictIndex = scheduleConflictIndex;
+        this.scheduleBulkWriter = scheduleBulkWriter;
     }
 
     @Override
-    public void saveAll(List<Schedule> schedules) {
-        scheduleRepository.saveAll(schedules);
+    public ScheduleSaveResult saveAll(List<Schedule> schedules) {
+        long start = System.nanoTime();
+        // Lịch mới (chưa có id) đi đường bulk insert; lịch đã có id vẫn cập nhật qua JPA
+        List<Schedule> updates = new ArrayList<>();
+        List<Schedule> inserts = new ArrayList<>(schedules.size());
+        for (Schedule schedule : schedules) {
+            (schedule.getId() == null ? inserts : updates).add(schedule);
+        }
+        if (!updates.isEmpty()) {
+            List<Schedule> saved = scheduleRepository.saveAll(updates);
+            afterCommit(() -> scheduleConflictIndex.upsert(saved));
+        }
+        ScheduleSaveResult.ScheduleSaveResultBuilder result = ScheduleSaveResult.builder()
+                .requested(schedules.size())
+                .updated(updates.size());
+        int inserted;
+        try {
+            inserted = scheduleBulkWriter.insertAll(inserts,
+                    chunk -> afterCommit(() -> scheduleConflictIndex.upsert(chunk)));
+            result.complete(true);
+        } catch (BulkInsertException e) {
+            inserted = e.getSavedIds().size();
+            result.complete(false)
+                    .savedIds(e.getSavedIds())
+                    .error(e.getMessage());
+        }
+        long elapsedMs = Math.max((System.nanoTime() - start) / 1_000_000, 1);
+        return result
+                .inserted(inserted)
+                .elapsedMs(elapsedMs)
+                .rowsPerSecond((inserted + updates.size()) * 1000L / elapsedMs)
+                .build();
     }
 
     @Override
@@ -40,12 +100,186 @@ public class ScheduleServiceImpl implements ScheduleService {
     }
 
     @Override
-    public void deleteScheduleById(Long id) {
-        scheduleRepository.deleteById(id);
+    public KeysetPage<ScheduleView> getSchedulePage(Long afterId, Integer size, String subjectId, String major,
+                                                    String studentYear) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        // Lấy dư một dòng để biết còn trang sau hay không
+        List<ScheduleView> items = scheduleRepository.findViewsAfter(afterId == null ? 0L : afterId,
+                blankToNull(subjectId), blankToNull(major), blankToNull(studentYear), Limit.of(pageSize + 1));
+        boolean hasNext = items.size() > pageSize;
+        if (hasNext) {
+            items = items.subList(0, pageSize);
+        }
+        return KeysetPage.<ScheduleView>builder()
+                .items(items)
+                .size(items.size())
+                .hasNext(hasNext)
+                .nextAfterId(hasNext ? items.get(items.size() - 1).getId() : null)
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int streamSchedules(String subjectId, String major, String studentYear, Consumer<ScheduleView> consumer) {
+        int count = 0;
+        try (Stream<ScheduleView> views = scheduleRepository.streamViews(
+                blankToNull(subjectId), blankToNull(major), blankToNull(studentYear))) {
+            Iterator<ScheduleView> iterator = views.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    @Transactional
+    public ScheduleDeleteResult deleteScheduleById(Long id) {
+        long start = System.currentTimeMillis();
+        int deleted = scheduleRepository.deleteScheduleById(id);
+        afterCommit(() -> scheduleConflictIndex.remove(id));
+        return deleteResult("id=" + id, deleted, start);
+    }
+
+    @Override
+    @Transactional
+    public ScheduleDeleteResult deleteAllSchedules() {
+        long start = System.currentTimeMillis();
+        int deleted = scheduleRepository.deleteAllSchedules();
+        afterCommit(scheduleConflictIndex::clear);
+        return deleteResult("all", deleted, start);
+    }
+
+    @Override
+    @Transactional
+    public ScheduleDeleteResult deleteSchedulesByMajor(String major) {
+        long start = System.currentTimeMillis();
+        List<Long> ids = scheduleRepository.findIdsByMajor(major);
+        int deleted = ids.isEmpty() ? 0 : scheduleRepository.deleteSchedulesByMajor(major);
+        removeFromIndex(ids, deleted);
+        return deleteResult("major=" + major, deleted, start);
+    }
+
+    @Override
+    @Transactional
+    public ScheduleDeleteResult deleteSchedulesByStudentYear(String studentYear) {
+        long start = System.currentTimeMillis();
+        List<Long> ids = scheduleRepository.findIdsByStudentYear(studentYear);
+        int deleted = ids.isEmpty() ? 0 : scheduleRepository.deleteSchedulesByStudentYear(studentYear);
+        removeFromIndex(ids, deleted);
+        return deleteResult("studentYear=" + studentYear, deleted, start);
+    }
+
+    @Override
+    @Transactional
+    public ScheduleDeleteResult deleteSchedulesBySemester(String semester) {
+        long start = System.currentTimeMillis();
+        List<Long> ids = scheduleRepository.findIdsBySemester(semester);
+        int deleted = ids.isEmpty() ? 0 : scheduleRepository.deleteSchedulesBySemester(semester);
+        removeFromIndex(ids, deleted);
+        return deleteResult("semester=" + semester, deleted, start);
+    }
+
+    /**
+     * Ids were read with FOR UPDATE in the same transaction, so the DELETE removed at least those rows.
+     * A different count means rows matching the scope were inserted in between: rebuild the index instead
+     */
+    private void removeFromIndex(List<Long> ids, int deleted) {
+        if (deleted == ids.size()) {
+            afterCommit(() -> scheduleConflictIndex.removeAll(ids));
+        } else {
+            afterCommit(scheduleConflictIndex::invalidate);
+        }
+    }
+
+    private static ScheduleDeleteResult deleteResult(String scope, int deleted, long start) {
+        long elapsedMs = System.currentTimeMillis() - start;
+        log.info("Deleted {} schedules ({}) in {} ms", deleted, scope, elapsedMs);
+        return ScheduleDeleteResult.builder()
+                .scope(scope)
+                .deletedCount(deleted)
+                .elapsedMs(elapsedMs)
+                .build();
+    }
+
+    @Override
+    public List<ScheduleConflictResponse> getConflicts(String roomNumber) {
+        return scheduleConflictIndex.getConflicts(roomNumber);
+    }
+
+    @Override
+    public List<ScheduleConflictResponse> getConflictsOfSchedule(Long id) {
+        return scheduleConflictIndex.getConflictsOf(id);
     }
 
     @Override
-    public void deleteAllSchedules() {
-        scheduleRepository.deleteAll();
+    public RoomAvailabilityResponse getRoomAvailability(String roomNumber, Integer dayOfWeek, Integer sessionNumber,
+                                                        Integer fromWeek, Integer toWeek) {
+        String room = roomNumber.trim();
+        WeekSet weeks = requestedWeeks(fromWeek, toWeek);
+        WeekSet freeWeeks = scheduleRepository.findFreeWeeks(room, dayOfWeek, sessionNumber, weeks);
+        List<Schedule> occupiedBy = freeWeeks.equals(weeks)
+                ? List.of()
+                : scheduleRepository.findOccupying(room, dayOfWeek, sessionNumber, weeks.mask());
+        return RoomAvailabilityResponse.builder()
+                .roomNumber(room)
+                .dayOfWeek(dayOfWeek)
+                .sessionNumber(sessionNumber)
+                .requestedWeeks(weeks.weeks())
+                .freeWeeks(freeWeeks.weeks())
+                .free(freeWeeks.equals(weeks))
+                .occupiedBy(occupiedBy)
+                .build();
+    }
+
+    @Override
+    public List<String> findFreeRooms(List<String> roomNumbers, Integer dayOfWeek, Integer sessionNumber,
+                                      Integer fromWeek, Integer toWeek) {
+        List<String> rooms = roomNumbers.stream()
+                .filter(room -> room != null && !room.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+        if (rooms.isEmpty()) {
+            return List.of();
+        }
+        WeekSet weeks = requestedWeeks(fromWeek, toWeek);
+        Set<String> occupied = new HashSet<>(scheduleRepository.findOccupiedRooms(rooms, dayOfWeek, sessionNumber,
+                weeks.mask()));
+        return rooms.stream()
+                .filter(room -> !occupied.contains(room))
+                .toList();
+    }
+
+    /**
+     * Tuần fromWeek..toWeek, mặc định cả kỳ (1..18)
+     */
+    private static WeekSet requestedWeeks(Integer fromWeek, Integer toWeek) {
+        WeekSet weeks = WeekSet.range(fromWeek == null ? 1 : fromWeek, toWeek == null ? WeekSet.WEEKS : toWeek);
+        if (weeks.isEmpty()) {
+            throw new IllegalArgumentException("Khoảng tuần không hợp lệ: " + fromWeek + " - " + toWeek);
+        }
+        return weeks;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * The conflict index only sees committed rows: defer to after commit when a transaction is active
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 }
\ No newline at end of file
@@ -5,24 +5,35 @@ import com.ptit.schedule.entity.*;
 import com.ptit.schedule.repository.*;
 import com.ptit.schedule.service.SubjectService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Transactional
+@Slf4j
 public class SubjectServiceImpl implements SubjectService {
     
     private final SubjectRepository subjectRepository;
     private final MajorRepository majorRepository;
     private final FacultyRepository facultyRepository;
+
+    // Subject catalog version, bumped after every committed subject change (create / update / delete / upload)
+    private final AtomicLong subjectCatalogVersion = new AtomicLong();
+    // "classYear|programType" -> major groups
+    private final Map<String, CachedMajorGroups> majorGroupsCache = new ConcurrentHashMap<>();
     
     /**
      * Lấy tất cả subjects
@@ -81,8 +92,31 @@ public class SubjectServiceImpl implements SubjectService {
     }
 
 
+    /**
+     * Nhóm ngành học chung môn, cache theo (classYear, programType) tới khi môn học thay đổi
+     */
     @Override
+    @Transactional(readOnly = true)
     public List<Set<String>> groupMajorsBySharedSubjects(String classYear, String programType) {
+        String key = classYear + "|" + programType;
+        long version = subjectCatalogVersion.get();
+        CachedMajorGroups cached = majorGroupsCache.get(key);
+        if (cached != null && cached.version() == version) {
+            return cached.groups();
+        }
+
+        List<Set<String>> groups = computeMajorGroups(classYear, programType).stream()
+                .map(Collections::unmodifiableSet)
+                .toList();
+        // Chỉ cache nếu không có thay đổi nào commit trong lúc tính
+        if (subjectCatalogVersion.get() == version) {
+            majorGroupsCache.put(key, new CachedMajorGroups(version, groups));
+        }
+        log.debug("Grouped majors for classYear={}, programType={}: {} groups", classYear, programType, groups.size());
+        return groups;
+    }
+
+    private List<Set<String>> computeMajorGroups(String classYear, String programType) {
         // Lấy danh sách môn theo năm học (lọc chính quy, loại môn chung)
         List<SubjectMajorDTO> subjects = subjectRepository
                 .findSubjectsWithMajorInfoByProgramType(classYear, programType);
@@ -98,9 +132,6 @@ public class SubjectServiceImpl implements SubjectService {
 //            subjects.addAll(appendSubjects);
 //        }
 
-        for(SubjectMajorDTO subjectMajorDTO : subjects) {
-            System.out.println(subjectMajorDTO);
-        }
         // Kiểm tra nếu là năm cuối (khóa 2022) thì trả về separate majors
         if (isLastYear(classYear)) {
             return separateMajorsByClassYear(subjects);
@@ -114,7 +145,7 @@ public class SubjectServiceImpl implements SubjectService {
     public List<SubjectMajorDTO> getCommonSubjects() {
         List<SubjectMajorDTO> subjectMajorDTOs =  subjectRepository.findCommonSubjects();
         if(subjectMajorDTOs.isEmpty()){
-            System.out.println("Không tìm thấy môn học chung nào!");
+            log.debug("Không tìm thấy môn học chung nào!");
         }
         return subjectMajorDTOs;
     }
@@ -154,6 +185,7 @@ public class SubjectServiceImpl implements SubjectService {
                 .build();
 
         Subject savedSubject = subjectRepository.save(subject);
+        invalidateMajorGroups();
         return SubjectResponse.fromEntity(savedSubject);
     }
     
@@ -203,7 +235,7 @@ public class SubjectServiceImpl implements SubjectService {
     public SubjectResponse updateSubject(Long id, SubjectRequest request) {
         Subject subject = subjectRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Subject not found with id: " + id));
-        System.out.println("Updating subject with id " + id);
+        log.debug("Updating subject with id {}", id);
         // Kiểm tra major có tồn tại không, nếu không thì tạo mới
         Major major = getOrCreateMajor(request);
         
@@ -225,6 +257,7 @@ public class SubjectServiceImpl implements SubjectService {
         subject.setSemester(request.getSemester());
 
         Subject savedSubject = subjectRepository.save(subject);
+        invalidateMajorGroups();
         return SubjectResponse.fromEntity(savedSubject);
     }
     
@@ -237,6 +270,7 @@ public class SubjectServiceImpl implements SubjectService {
             throw new RuntimeException("Subject not found with id: " + id);
         }
         subjectRepository.deleteById(id);
+        invalidateMajorGroups();
     }
 
 
@@ -267,60 +301,83 @@ public class SubjectServiceImpl implements SubjectService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Gom các ngành học chung ít nhất một môn (liên thông qua môn chung) bằng union-find:
+     * mỗi cặp (môn, ngành) chỉ union ngành với ngành đầu tiên của môn đó, nên tuyến tính theo số cặp.
+     * Nhóm và ngành trong nhóm theo thứ tự xuất hiện đầu tiên.
+     */
     public static List<Set<String>> groupMajorsBySharedSubjects(List<SubjectMajorDTO> list) {
-        // subjectCode -> list majorCode học môn đó
-        Map<String, List<String>> subjectToMajors = new HashMap<>();
-        Set<String> allMajors = new HashSet<>(); // lưu tất cả các major có trong danh sách
+        Map<String, Integer> majorIds = new LinkedHashMap<>();
+        Map<String, Integer> firstMajorOfSubject = new HashMap<>();
+        int[] parent = new int[Math.max(list.size(), 1)];
+        int[] size = new int[parent.length];
 
         for (SubjectMajorDTO sm : list) {
-            subjectToMajors
-                    .computeIfAbsent(sm.getSubjectCode(), k -> new ArrayList<>())
-                    .add(sm.getMajorCode());
-            allMajors.add(sm.getMajorCode());
-        }
-
-        // Xây graph: major -> majors học chung
-        Map<String, Set<String>> graph = new HashMap<>();
-        for (List<String> majors : subjectToMajors.values()) {
-            for (String m1 : majors) {
-                graph.computeIfAbsent(m1, k -> new HashSet<>()); // đảm bảo có node kể cả khi không có cạnh
-                for (String m2 : majors) {
-                    if (!m1.equals(m2))
-                        graph.get(m1).add(m2);
-                }
+            Integer major = majorIds.get(sm.getMajorCode());
+            if (major == null) {
+                major = majorIds.size();
+                majorIds.put(sm.getMajorCode(), major);
+                parent[major] = major;
+                size[major] = 1;
+            }
+            Integer first = firstMajorOfSubject.putIfAbsent(sm.getSubjectCode(), major);
+            if (first != null) {
+                union(parent, size, first, major);
             }
         }
 
-        // Đảm bảo tất cả các major đều có mặt trong graph (ngành học 1 mình)
-        for (String major : allMajors) {
-            graph.computeIfAbsent(major, k -> new HashSet<>());
+        // root -> nhóm, giữ thứ tự ngành xuất hiện
+        Map<Integer, Set<String>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : majorIds.entrySet()) {
+            groups.computeIfAbsent(find(parent, entry.getValue()), k -> new LinkedHashSet<>()).add(entry.getKey());
         }
+        return new ArrayList<>(groups.values());
+    }
 
-        // Duyệt DFS để tìm nhóm liên thông
-        Set<String> visited = new HashSet<>();
-        List<Set<String>> groups = new ArrayList<>();
-
-        for (String major : graph.keySet()) {
-            if (!visited.contains(major)) {
-                Set<String> component = new HashSet<>();
-                dfs(major, graph, visited, component);
-                groups.add(component);
-            }
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]]; // path halving
+            node = parent[node];
         }
+        return node;
+    }
 
-        // Trả trực tiếp danh sách nhóm
-        return groups;
+    private static void union(int[] parent, int[] size, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (size[rootA] < size[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
     }
 
-    private static void dfs(String current, Map<String, Set<String>> graph,
-                            Set<String> visited, Set<String> component) {
-        visited.add(current);
-        component.add(current);
-        for (String neighbor : graph.getOrDefault(current, Set.of())) {
-            if (!visited.contains(neighbor)) {
-                dfs(neighbor, graph, visited, component);
-            }
+    /**
+     * Subjects / majors changed: drop cached major groups once the transaction commits
+     */
+    private void invalidateMajorGroups() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpSubjectCatalogVersion();
+                }
+            });
+        } else {
+            bumpSubjectCatalogVersion();
         }
     }
 
+    private void bumpSubjectCatalogVersion() {
+        subjectCatalogVersion.incrementAndGet();
+        majorGroupsCache.clear();
+    }
+
+    private record CachedMajorGroups(long version, List<Set<String>> groups) {
+    }
 }
@@ -0,0 +1,58 @@
+-- Gộp 18 cột week_1..week_18 ("x" | "") thành một cột bitmask: bit w-1 = tuần w có học.
+-- Chạy lại được: mỗi bước chỉ làm khi bảng còn ở trạng thái cũ. Nếu ứng dụng (ddl-auto=update) đã tạo
+-- week_mask trước khi chạy script, giá trị đang có được giữ và OR thêm các tuần từ cột cũ.
+
+SET @has_week_mask := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                       WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'schedules' AND COLUMN_NAME = 'week_mask');
+SET @sql := IF(@has_week_mask = 0,
+    'ALTER TABLE schedules ADD COLUMN week_mask INT NOT NULL DEFAULT 0',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @has_week_columns := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                          WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'schedules' AND COLUMN_NAME = 'week_1');
+SET @sql := IF(@has_week_columns = 0, 'DO 0', 'UPDATE schedules SET week_mask = COALESCE(week_mask, 0)
+    | (CASE WHEN LOWER(TRIM(week_1))  = ''x'' THEN 1 << 0  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_2))  = ''x'' THEN 1 << 1  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_3))  = ''x'' THEN 1 << 2  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_4))  = ''x'' THEN 1 << 3  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_5))  = ''x'' THEN 1 << 4  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_6))  = ''x'' THEN 1 << 5  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_7))  = ''x'' THEN 1 << 6  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_8))  = ''x'' THEN 1 << 7  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_9))  = ''x'' THEN 1 << 8  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_10)) = ''x'' THEN 1 << 9  ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_11)) = ''x'' THEN 1 << 10 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_12)) = ''x'' THEN 1 << 11 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_13)) = ''x'' THEN 1 << 12 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_14)) = ''x'' THEN 1 << 13 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_15)) = ''x'' THEN 1 << 14 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_16)) = ''x'' THEN 1 << 15 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_17)) = ''x'' THEN 1 << 16 ELSE 0 END)
+    | (CASE WHEN LOWER(TRIM(week_18)) = ''x'' THEN 1 << 17 ELSE 0 END)');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @sql := IF(@has_week_columns = 0, 'DO 0', 'ALTER TABLE schedules
+    DROP COLUMN week_1,  DROP COLUMN week_2,  DROP COLUMN week_3,  DROP COLUMN week_4,
+    DROP COLUMN week_5,  DROP COLUMN week_6,  DROP COLUMN week_7,  DROP COLUMN week_8,
+    DROP COLUMN week_9,  DROP COLUMN week_10, DROP COLUMN week_11, DROP COLUMN week_12,
+    DROP COLUMN week_13, DROP COLUMN week_14, DROP COLUMN week_15, DROP COLUMN week_16,
+    DROP COLUMN week_17, DROP COLUMN week_18');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Tra chỗ trống theo (phòng, thứ, kíp) thành range scan trên index
+SET @has_index := (SELECT COUNT(*) FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'schedules'
+                     AND INDEX_NAME = 'idx_schedules_room_day_session');
+SET @sql := IF(@has_index = 0,
+    'CREATE INDEX idx_schedules_room_day_session ON schedules (room_number, day_of_week, session_number)',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,21 @@
+-- Học kỳ / phiên bản TKB của từng lịch, để xóa cả học kỳ trước khi xếp lại bằng một câu DELETE.
+-- Chạy lại được (như V3): cột và index chỉ được tạo khi chưa có, kể cả khi ddl-auto=update đã tạo cột.
+
+SET @has_semester := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                      WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'schedules' AND COLUMN_NAME = 'semester');
+SET @sql := IF(@has_semester = 0,
+    'ALTER TABLE schedules ADD COLUMN semester VARCHAR(20) NULL',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @has_index := (SELECT COUNT(*) FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'schedules'
+                     AND INDEX_NAME = 'idx_schedules_semester');
+SET @sql := IF(@has_index = 0,
+    'CREATE INDEX idx_schedules_semester ON schedules (semester)',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,80 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataLoaderServiceTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void templateVersionIsTheContentHashAcrossRestarts() {
+        TemplateSnapshot first = newService().getTemplateSnapshot();
+        // Second "boot": same real.json, served from the sidecar written by the first
+        TemplateSnapshot second = newService().getTemplateSnapshot();
+
+        assertFalse(first.getRows().isEmpty());
+        assertNotNull(first.getSourceHash());
+        assertEquals(first.getSourceHash(), second.getSourceHash());
+        assertEquals(first.getRows().size(), second.getRows().size());
+    }
+
+    @Test
+    void publishingSwapsTheSnapshotWithoutTouchingPinnedOnes() {
+        DataLoaderService service = newService();
+        TemplateSnapshot pinned = service.getTemplateSnapshot();
+        int pinnedRows = pinned.getRows().size();
+        int pinnedIndexed = pinned.getIndex().getTotalRows();
+
+        byte[] hash = new byte[32];
+        Arrays.fill(hash, (byte) 0x5A);
+        TemplateTable table = TemplateTable.builder()
+                .add(999, 2, 1, 1, 3, "imported", 0b1111)
+                .build(hash);
+        TemplateSnapshot imported = service.snapshotOf(table);
+        service.publish(imported);
+
+        assertSame(imported, service.getTemplateSnapshot());
+        assertEquals("5a5a5a5a5a5a5a5a", imported.getSourceHash());
+        assertNotEquals(pinned.getSourceHash(), imported.getSourceHash());
+        assertEquals(1, service.getTemplateByPeriods(999).size());
+
+        // The generation that pinned the old snapshot still sees exactly its data
+        assertEquals(pinnedRows, pinned.getRows().size());
+        assertEquals(pinnedIndexed, pinned.getIndex().getTotalRows());
+        assertNull(pinned.getIndex().getPool(999));
+    }
+
+    @Test
+    void unreadableSidecarFallsBackToTheJson() throws IOException {
+        TemplateSnapshot parsed = newService().getTemplateSnapshot();
+        Path sidecar;
+        try (Stream<Path> files = Files.list(dataDir.resolve("templates"))) {
+            sidecar = files.filter(file -> file.toString().endsWith(".tkbt")).findFirst().orElseThrow();
+        }
+        // A directory where the sidecar should be: opening it fails with an IOException
+        Files.delete(sidecar);
+        Files.createDirectory(sidecar);
+
+        TemplateSnapshot fallback = newService().getTemplateSnapshot();
+
+        assertEquals(parsed.getSourceHash(), fallback.getSourceHash());
+        assertEquals(parsed.getRows().size(), fallback.getRows().size());
+    }
+
+    private DataLoaderService newService() {
+        DataLoaderService service = new DataLoaderService();
+        ReflectionTestUtils.setField(service, "dataDir", dataDir.toString());
+        return service;
+    }
+}
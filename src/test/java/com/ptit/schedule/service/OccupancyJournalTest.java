@@ -0,0 +1,105 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyJournalTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void commitWithoutLastSlotIdxKeepsTheEarlierOne() throws IOException {
+        OccupancyJournal journal = newJournal();
+        journal.appendChanges(true, rooms("101|2|1"), 5);
+        journal.appendChanges(false, rooms("102|3|2"), null);
+
+        assertState(journal.load(), 5, "101|2|1", "102|3|2");
+        // Unchanged lastSlotIdx is left out of the record, not written as -1
+        assertEquals(List.of("{\"op\":\"reset\"}", "{\"op\":\"commit\",\"keys\":[\"101|2|1\"],\"lastSlotIdx\":5}",
+                "{\"op\":\"commit\",\"keys\":[\"102|3|2\"]}"), journalText().lines().toList());
+    }
+
+    @Test
+    void replayAppliesResetsInJournalOrder() throws IOException {
+        OccupancyJournal journal = newJournal();
+        journal.appendChanges(true, rooms("101|2|1"), 3);
+        // Reset then commit in one append: only the new rooms survive, lastSlotIdx back to -1
+        journal.appendChanges(true, rooms("102|3|2"), null);
+        assertState(journal.load(), -1, "102|3|2");
+
+        journal.appendChanges(false, null, 7);
+        journal.appendChanges(false, rooms("103|4|1"), null);
+        assertState(journal.load(), 7, "102|3|2", "103|4|1");
+    }
+
+    @Test
+    void tornTailIsDroppedOnStartAndLaterAppendsReplay() throws IOException {
+        OccupancyJournal journal = newJournal();
+        journal.appendChanges(true, rooms("101|2|1"), 4);
+        // Crash in the middle of the next append
+        Files.writeString(journalPath(), "{\"op\":\"commit\",\"keys\":[\"102|", StandardOpenOption.APPEND);
+
+        OccupancyJournal restarted = newJournal();
+        assertTrue(journalText().endsWith("\n"));
+        assertState(restarted.load(), 4, "101|2|1");
+
+        restarted.appendChanges(false, rooms("103|4|1"), 6);
+        assertState(newJournal().load(), 6, "101|2|1", "103|4|1");
+    }
+
+    @Test
+    void crashAfterCompactionBeforeTruncateReplaysToTheSameState() throws IOException {
+        OccupancyJournal journal = newJournal();
+        journal.appendChanges(true, rooms("101|2|1"), 3);
+        journal.appendChanges(true, rooms("102|3|2"), null);
+        journal.appendChanges(false, rooms("103|4|1"), 8);
+        String pending = journalText();
+
+        journal.compact();
+        assertFalse(Files.exists(journalPath()));
+        // Snapshot replaced, but the journal was never deleted
+        Files.writeString(journalPath(), pending);
+
+        OccupancyJournal restarted = newJournal();
+        assertState(restarted.load(), 8, "102|3|2", "103|4|1");
+        restarted.compact();
+        assertState(newJournal().load(), 8, "102|3|2", "103|4|1");
+    }
+
+    private OccupancyJournal newJournal() throws IOException {
+        OccupancyJournal journal = new OccupancyJournal();
+        ReflectionTestUtils.setField(journal, "dataDir", dataDir.toString());
+        ReflectionTestUtils.setField(journal, "compactAfterRecords", 100);
+        journal.init();
+        return journal;
+    }
+
+    private Path journalPath() {
+        return dataDir.resolve(OccupancyJournal.JOURNAL_FILE);
+    }
+
+    private String journalText() throws IOException {
+        return Files.readString(journalPath(), StandardCharsets.UTF_8);
+    }
+
+    private static RoomOccupancy rooms(String... keys) {
+        return RoomOccupancy.fromKeys(List.of(keys));
+    }
+
+    private static void assertState(OccupancyJournal.State state, int lastSlotIdx, String... keys) {
+        assertEquals(lastSlotIdx, state.getLastSlotIdx());
+        assertEquals(Set.of(keys), Set.copyOf(state.getOccupied().toKeys()));
+    }
+}
@@ -0,0 +1,324 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.RoomPickResult;
+import com.ptit.schedule.entity.Room;
+import com.ptit.schedule.entity.RoomType;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.ptit.schedule.service.RoomCandidateIndexTest.room;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RoomAssignmentEngine against the original RoomServiceImpl.pickRoom (string-key occupancy,
+ * sort of every suitable room), ported below as the oracle
+ */
+class RoomAssignmentEngineTest {
+
+    private static final String[] BUILDINGS = {"A1", "A2", "A3", "NT"};
+    private static final String[] NOTES = {null, "", "Lớp CLC 2024", "CLC", "Phòng học TA", "NT", "2024"};
+    private static final String[] SUBJECT_TYPES = {"general", "english"};
+    private static final String[] YEARS = {"2022", "2023", "2024", "2025"};
+    private static final String[] SPECIAL_SYSTEMS = {null, "", "CLC", "CTTT"};
+    private static final String[] MAJORS = {"CNTT", "ATTT", "KT", "DPT"};
+    private static final String[] SUBJECTS = {"INT1", "INT2", "BAS1", "ENG1", "ENG2", "MAT1"};
+
+    @Test
+    void keepsSubjectRoomWhileItIsFree() {
+        RoomCandidateIndex index = RoomCandidateIndex.build(List.of(
+                room("101", "A2", 60, RoomType.GENERAL, null),
+                room("102", "A2", 50, RoomType.GENERAL, null)), 1);
+        RoomAssignmentEngine engine = new RoomAssignmentEngine(index, Map.of());
+        RoomOccupancy occupied = new RoomOccupancy(index.getRoomIds());
+        Map<String, String> subjectRooms = new HashMap<>(Map.of("INT1", "101"));
+
+        RoomPickResult kept = pick(engine, occupied, subjectRooms, 2, 1);
+        assertEquals("101", kept.getRoomCode());
+        assertEquals(0, kept.getDistanceScore());
+
+        occupied.occupy("101", 3, 1);
+        RoomPickResult moved = pick(engine, occupied, subjectRooms, 3, 1);
+        assertEquals("102", moved.getRoomCode());
+        assertEquals("102", subjectRooms.get("INT1"));
+    }
+
+    @Test
+    void noRoomWithoutSlotOrWhenEverythingIsTaken() {
+        RoomCandidateIndex index = RoomCandidateIndex.build(List.of(
+                room("101", "A2", 60, RoomType.GENERAL, null)), 1);
+        RoomAssignmentEngine engine = new RoomAssignmentEngine(index, Map.of());
+        RoomOccupancy occupied = new RoomOccupancy(index.getRoomIds());
+
+        assertFalse(engine.pickRoom(40, occupied, null, 1, "general", "2023", null, null, "CNTT", "INT1",
+                new HashMap<>()).hasRoom());
+        occupied.occupy("101", 2, 1);
+        assertFalse(pick(engine, occupied, new HashMap<>(), 2, 1).hasRoom());
+    }
+
+    @Test
+    void matchesOriginalPickRoomOnRandomCatalogs() {
+        Random random = new Random(20240611L);
+        int picks = 0;
+        for (int round = 0; round < 300; round++) {
+            List<Room> catalog = randomCatalog(random);
+            Map<String, List<String>> preferred = randomPreferences(random);
+            RoomCandidateIndex index = RoomCandidateIndex.build(catalog, round);
+            RoomAssignmentEngine engine = new RoomAssignmentEngine(index, preferred);
+            LegacyRoomPicker legacy = new LegacyRoomPicker(preferred);
+
+            Set<Object> legacyOccupied = new HashSet<>();
+            RoomOccupancy occupied = new RoomOccupancy(index.getRoomIds());
+            Map<String, String> legacyRooms = new HashMap<>();
+            Map<String, String> subjectRooms = new HashMap<>();
+
+            // Some week-qualified keys, as written by older occupancy files
+            for (int k = random.nextInt(3); k > 0; k--) {
+                Room room = catalog.get(random.nextInt(catalog.size()));
+                String key = room.getPhong() + "|" + (2 + random.nextInt(6)) + "|" + (1 + random.nextInt(4))
+                        + "|" + (1 + random.nextInt(4)) + "," + (5 + random.nextInt(4));
+                legacyOccupied.add(key);
+                occupied = withKey(occupied, key);
+            }
+
+            for (int step = 0; step < 40; step++) {
+                int siso = 20 + random.nextInt(100);
+                int thu = 2 + random.nextInt(6);
+                int kip = 1 + random.nextInt(4);
+                String subjectType = pickOne(random, SUBJECT_TYPES);
+                String year = pickOne(random, YEARS);
+                String special = pickOne(random, SPECIAL_SYSTEMS);
+                List<String> weeks = random.nextBoolean() ? List.of(String.valueOf(1 + random.nextInt(8))) : null;
+                String major = pickOne(random, MAJORS);
+                String subject = pickOne(random, SUBJECTS);
+
+                RoomPickResult expected = legacy.pickRoom(catalog, siso, legacyOccupied, thu, kip, subjectType,
+                        year, special, weeks, major, subject, legacyRooms);
+                RoomPickResult actual = engine.pickRoom(siso, occupied, thu, kip, subjectType, year, special,
+                        weeks, major, subject, subjectRooms);
+
+                String context = "round " + round + ", step " + step;
+                assertEquals(expected, actual, context);
+                assertEquals(legacyRooms, subjectRooms, context);
+                picks++;
+
+                if (actual.hasRoom()) {
+                    legacyOccupied.add(actual.getRoomCode() + "|" + thu + "|" + kip);
+                    occupied.occupy(actual.getRoomCode(), thu, kip);
+                }
+            }
+        }
+        assertEquals(300 * 40, picks);
+    }
+
+    private static RoomPickResult pick(RoomAssignmentEngine engine, RoomOccupancy occupied,
+            Map<String, String> subjectRooms, int thu, int kip) {
+        return engine.pickRoom(40, occupied, thu, kip, "general", "2023", null, null, "CNTT", "INT1", subjectRooms);
+    }
+
+    private static RoomOccupancy withKey(RoomOccupancy occupied, String key) {
+        List<String> keys = new ArrayList<>(occupied.toKeys());
+        keys.add(key);
+        return RoomOccupancy.fromKeys(keys).rebase(occupied.getRegistry());
+    }
+
+    private static List<Room> randomCatalog(Random random) {
+        int size = 1 + random.nextInt(30);
+        List<Room> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Few codes and capacities so codes repeat across buildings and capacities tie
+            String code = String.valueOf(100 + random.nextInt(size + 3));
+            catalog.add(room(code, pickOne(random, BUILDINGS), 20 + 10 * random.nextInt(10),
+                    RoomType.values()[random.nextInt(RoomType.values().length)], pickOne(random, NOTES)));
+        }
+        return catalog;
+    }
+
+    private static Map<String, List<String>> randomPreferences(Random random) {
+        Map<String, List<String>> preferred = new HashMap<>();
+        for (String major : MAJORS) {
+            if (random.nextInt(3) == 0) {
+                continue;
+            }
+            List<String> buildings = new ArrayList<>(Arrays.asList(BUILDINGS));
+            Collections.shuffle(buildings, random);
+            preferred.put(major, buildings.subList(0, 1 + random.nextInt(3)));
+        }
+        return preferred;
+    }
+
+    private static String pickOne(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Original RoomServiceImpl.pickRoom, with the subject-room mapping and preference
+     * services replaced by maps
+     */
+    private static final class LegacyRoomPicker {
+
+        private final Map<String, List<String>> preferredBuildingsByMajor;
+
+        LegacyRoomPicker(Map<String, List<String>> preferredBuildingsByMajor) {
+            this.preferredBuildingsByMajor = preferredBuildingsByMajor;
+        }
+
+        RoomPickResult pickRoom(List<Room> rooms, Integer sisoPerClass, Set<Object> occupied,
+                Integer thu, Integer kip, String subjectType, String studentYear,
+                String heDacThu, List<String> weekSchedule, String nganh, String maMon,
+                Map<String, String> subjectRooms) {
+            if (thu == null || kip == null) {
+                return noRoom();
+            }
+
+            String existingRoom = subjectRooms.get(maMon);
+            if (existingRoom != null) {
+                Room room = rooms.stream().filter(r -> r.getPhong().equals(existingRoom)).findFirst().orElse(null);
+                if (room != null && !occupied.contains(room.getPhong() + "|" + thu + "|" + kip)
+                        && room.getCapacity() >= sisoPerClass
+                        && isRoomSuitable(room, subjectType, studentYear, heDacThu)) {
+                    return createRoomPickResult(room, 0, true);
+                }
+            }
+
+            List<String> preferredBuildings = preferredBuildingsByMajor.getOrDefault(nganh, List.of());
+            if (preferredBuildings.isEmpty()) {
+                preferredBuildings = Arrays.asList("A2", "A1", "A3");
+            }
+            final List<String> finalPreferredBuildings = preferredBuildings;
+
+            List<Room> suitableRooms = new ArrayList<>();
+            for (Room r : rooms) {
+                String code = r.getPhong();
+                if (code == null || code.trim().isEmpty()) {
+                    continue;
+                }
+                boolean traditionalConflict = occupied.contains(code + "|" + thu + "|" + kip);
+                boolean weekConflict = false;
+                if (weekSchedule != null && !weekSchedule.isEmpty()) {
+                    for (Object occupiedKey : occupied) {
+                        String[] parts = ((String) occupiedKey).split("\\|");
+                        if (parts.length >= 4 && parts[0].equals(code) && parts[1].equals(String.valueOf(thu))
+                                && parts[2].equals(String.valueOf(kip))) {
+                            List<String> occWeekList = Arrays.asList(parts[3].split(","));
+                            weekConflict = weekSchedule.stream().anyMatch(occWeekList::contains);
+                            if (weekConflict) {
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (traditionalConflict || weekConflict) {
+                    continue;
+                }
+                if (sisoPerClass != null && r.getCapacity() < sisoPerClass) {
+                    continue;
+                }
+                if (isRoomSuitable(r, subjectType, studentYear, heDacThu)) {
+                    suitableRooms.add(r);
+                }
+            }
+
+            if (suitableRooms.isEmpty()) {
+                for (Room r : rooms) {
+                    String code = r.getPhong();
+                    if (code == null || code.trim().isEmpty()) {
+                        continue;
+                    }
+                    if (occupied.contains(code + "|" + thu + "|" + kip)) {
+                        continue;
+                    }
+                    if (sisoPerClass != null && r.getCapacity() < sisoPerClass) {
+                        continue;
+                    }
+                    suitableRooms.add(r);
+                }
+                if (suitableRooms.isEmpty()) {
+                    return noRoom();
+                }
+            }
+
+            suitableRooms.sort((r1, r2) -> Integer.compare(
+                    calculateRoomScore(r1, finalPreferredBuildings, existingRoom, sisoPerClass),
+                    calculateRoomScore(r2, finalPreferredBuildings, existingRoom, sisoPerClass)));
+
+            Room selectedRoom = suitableRooms.get(0);
+            subjectRooms.put(maMon, selectedRoom.getPhong());
+
+            boolean isPreferredBuilding = selectedRoom.getDay().equals(finalPreferredBuildings.get(0));
+            int distanceToPreferred = calculateDistance(selectedRoom.getDay(), finalPreferredBuildings.get(0));
+            return createRoomPickResult(selectedRoom, distanceToPreferred, isPreferredBuilding);
+        }
+
+        private int calculateRoomScore(Room room, List<String> preferredBuildings, String existingRoom,
+                Integer sisoPerClass) {
+            if (existingRoom != null && room.getPhong().equals(existingRoom)) {
+                return -10000;
+            }
+            int score = 0;
+            int buildingIndex = preferredBuildings.indexOf(room.getDay());
+            if (buildingIndex >= 0) {
+                score += buildingIndex * 100;
+            } else {
+                int minDistance = Integer.MAX_VALUE;
+                for (String preferredBuilding : preferredBuildings) {
+                    minDistance = Math.min(minDistance, calculateDistance(room.getDay(), preferredBuilding));
+                }
+                score += 1000 + (minDistance * 50);
+            }
+            return score + Math.abs(room.getCapacity() - sisoPerClass);
+        }
+
+        private boolean isRoomSuitable(Room room, String subjectType, String studentYear, String heDacThu) {
+            String roomType = room.getType().name().toLowerCase();
+            String roomNote = room.getNote() != null ? room.getNote().toLowerCase() : "";
+
+            if (heDacThu != null && !heDacThu.trim().isEmpty()) {
+                if ("CLC".equals(heDacThu)) {
+                    if ("2024".equals(studentYear)) {
+                        return roomNote.contains("lớp clc 2024");
+                    }
+                    return (roomNote.contains("clc") || "clc".equals(roomType)) && !roomNote.contains("2024");
+                }
+                return false;
+            }
+            if ("2022".equals(studentYear)) {
+                return "ngoc_truc".equals(roomType);
+            }
+            if ("english".equals(subjectType)) {
+                return "english_class".equals(roomType);
+            }
+            if (Arrays.asList("ngoc_truc", "english_class", "clc").contains(roomType)
+                    || roomNote.contains("nt") || roomNote.contains("phòng học ta") || roomNote.contains("lớp clc")) {
+                return false;
+            }
+            if ("2024".equals(studentYear)) {
+                return Arrays.asList("khoa_2024", "general").contains(roomType);
+            }
+            return "general".equals(roomType);
+        }
+
+        private static RoomPickResult createRoomPickResult(Room room, int distanceScore, boolean isPreferred) {
+            return RoomPickResult.builder()
+                    .roomCode(room.getPhong())
+                    .roomId(room.getPhong() + "-" + room.getDay())
+                    .building(room.getDay())
+                    .distanceScore(distanceScore)
+                    .isPreferredBuilding(isPreferred)
+                    .build();
+        }
+
+        private static RoomPickResult noRoom() {
+            return RoomPickResult.builder().isPreferredBuilding(false).build();
+        }
+
+        private static int calculateDistance(String building1, String building2) {
+            if (building1.equals(building2)) {
+                return 0;
+            }
+            Map<String, Integer> buildingDistance = Map.of("A1", 0, "A2", 1, "A3", 2, "NT", 3);
+            return Math.abs(buildingDistance.getOrDefault(building1, 0)
+                    - buildingDistance.getOrDefault(building2, 0));
+        }
+    }
+}
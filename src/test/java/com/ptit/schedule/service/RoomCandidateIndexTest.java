@@ -0,0 +1,123 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.entity.Room;
+import com.ptit.schedule.entity.RoomType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomCandidateIndexTest {
+
+    @Test
+    void skipsRoomsWithoutCodeAndKeepsEveryBuildingOfACode() {
+        Room a2 = room("303", "A2", 60, RoomType.GENERAL, null);
+        Room nt = room("303", "NT", 40, RoomType.NGOC_TRUC, null);
+        RoomCandidateIndex index = RoomCandidateIndex.build(List.of(
+                room(null, "A1", 50, RoomType.GENERAL, null),
+                room("  ", "A1", 50, RoomType.GENERAL, null),
+                a2, nt), 1);
+
+        assertEquals(List.of(a2, nt), index.getRooms());
+        assertSame(a2, index.findByCode("303"));
+        assertEquals(List.of(a2, nt), index.findAllByCode("303"));
+        assertTrue(index.findAllByCode(null).isEmpty());
+        assertNull(index.findByCode("404"));
+    }
+
+    @Test
+    void profilesFollowTheOldSuitabilityRules() {
+        assertEquals(RoomCandidateIndex.Profile.CLC_2024, RoomCandidateIndex.profileOf("general", "2024", "CLC"));
+        assertEquals(RoomCandidateIndex.Profile.CLC_OTHER, RoomCandidateIndex.profileOf("general", "2023", "CLC"));
+        assertEquals(RoomCandidateIndex.Profile.NONE, RoomCandidateIndex.profileOf("general", "2023", "CTTT"));
+        assertEquals(RoomCandidateIndex.Profile.NT, RoomCandidateIndex.profileOf("english", "2022", ""));
+        assertEquals(RoomCandidateIndex.Profile.ENGLISH, RoomCandidateIndex.profileOf("english", "2023", null));
+        assertEquals(RoomCandidateIndex.Profile.YEAR_2024, RoomCandidateIndex.profileOf("general", "2024", null));
+        assertEquals(RoomCandidateIndex.Profile.REGULAR, RoomCandidateIndex.profileOf("general", "2023", null));
+
+        Room khoa2024 = room("101", "A1", 50, RoomType.KHOA_2024, null);
+        assertTrue(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.YEAR_2024, khoa2024));
+        assertFalse(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.REGULAR, khoa2024));
+        assertFalse(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.REGULAR,
+                room("102", "A1", 50, RoomType.GENERAL, "Phòng học TA")));
+        assertTrue(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.CLC_2024,
+                room("103", "A1", 50, RoomType.GENERAL, "Lớp CLC 2024")));
+        assertFalse(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.CLC_OTHER,
+                room("103", "A1", 50, RoomType.CLC, "Lớp CLC 2024")));
+        assertTrue(RoomCandidateIndex.matches(RoomCandidateIndex.Profile.ANY, khoa2024));
+    }
+
+    @Test
+    void bucketsArePerBuildingInCapacityThenCatalogOrder() {
+        List<Room> catalog = new ArrayList<>();
+        catalog.add(room("201", "A2", 80, RoomType.GENERAL, null));
+        catalog.add(room("101", "A1", 60, RoomType.GENERAL, null));
+        catalog.add(room("202", "A2", 40, RoomType.GENERAL, null));
+        catalog.add(room("203", "A2", 80, RoomType.GENERAL, null));
+        catalog.add(room("204", "A2", 60, RoomType.NGOC_TRUC, null));
+        RoomCandidateIndex index = RoomCandidateIndex.build(catalog, 1);
+
+        List<RoomCandidateIndex.Bucket> buckets = index.getBuckets(RoomCandidateIndex.Profile.REGULAR);
+        assertEquals(2, buckets.size());
+        RoomCandidateIndex.Bucket a2 = buckets.get(0);
+        assertEquals("A2", a2.getBuilding());
+        assertEquals("A1", buckets.get(1).getBuilding());
+
+        assertEquals(3, a2.size());
+        assertEquals("202", a2.getRoom(0).getPhong());
+        assertEquals("201", a2.getRoom(1).getPhong());
+        assertEquals("203", a2.getRoom(2).getPhong());
+        assertEquals(0, a2.getCatalogOrder(1));
+        assertEquals(3, a2.getCatalogOrder(2));
+    }
+
+    @Test
+    void bestFitIsTheSmallestAcceptedRoomWithEnoughCapacity() {
+        RoomCandidateIndex index = RoomCandidateIndex.build(List.of(
+                room("201", "A2", 80, RoomType.GENERAL, null),
+                room("202", "A2", 40, RoomType.GENERAL, null),
+                room("203", "A2", 80, RoomType.GENERAL, null),
+                room("204", "A2", 120, RoomType.GENERAL, null)), 1);
+        RoomCandidateIndex.Bucket bucket = index.getBuckets(RoomCandidateIndex.Profile.REGULAR).get(0);
+
+        assertEquals("202", bucket.getRoom(bucket.bestFit(40, room -> true)).getPhong());
+        assertEquals("201", bucket.getRoom(bucket.bestFit(41, room -> true)).getPhong());
+        assertEquals("203", bucket.getRoom(bucket.bestFit(41, room -> !room.getPhong().equals("201"))).getPhong());
+        assertEquals(-1, bucket.bestFit(121, room -> true));
+
+        RoomOccupancy occupied = new RoomOccupancy(index.getRoomIds());
+        occupied.occupy("201", 2, 1);
+        assertEquals("203", bucket.getRoom(bucket.bestFreeFit(41, occupied, 2, 1)).getPhong());
+        assertEquals("201", bucket.getRoom(bucket.bestFreeFit(41, occupied, 3, 1)).getPhong());
+        occupied.occupy("203", 2, 1);
+        occupied.occupy("204", 2, 1);
+        assertEquals(-1, bucket.bestFreeFit(41, occupied, 2, 1));
+    }
+
+    @Test
+    void bestFreeFitAcceptsOccupancyOfAnotherCatalogVersion() {
+        List<Room> catalog = List.of(
+                room("201", "A2", 80, RoomType.GENERAL, null),
+                room("202", "A2", 90, RoomType.GENERAL, null));
+        RoomCandidateIndex older = RoomCandidateIndex.build(catalog, 1);
+        RoomCandidateIndex newer = RoomCandidateIndex.build(List.of(catalog.get(1), catalog.get(0)), 2);
+
+        RoomOccupancy occupied = new RoomOccupancy(older.getRoomIds());
+        occupied.occupy("201", 2, 1);
+
+        RoomCandidateIndex.Bucket bucket = newer.getBuckets(RoomCandidateIndex.Profile.REGULAR).get(0);
+        assertEquals("202", bucket.getRoom(bucket.bestFreeFit(50, occupied, 2, 1)).getPhong());
+    }
+
+    static Room room(String phong, String building, int capacity, RoomType type, String note) {
+        return Room.builder()
+                .phong(phong)
+                .day(building)
+                .capacity(capacity)
+                .type(type)
+                .note(note)
+                .build();
+    }
+}
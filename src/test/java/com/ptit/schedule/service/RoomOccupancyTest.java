@@ -0,0 +1,55 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomOccupancyTest {
+
+    @Test
+    void nullRoomCodeBehavesLikeLegacyKey() {
+        RoomOccupancy occupancy = new RoomOccupancy();
+
+        assertFalse(occupancy.isOccupied(null, 2, 1));
+        assertTrue(occupancy.occupy(null, 2, 1));
+        assertFalse(occupancy.occupy(null, 2, 1));
+
+        assertTrue(occupancy.isOccupied(null, 2, 1));
+        assertTrue(occupancy.isOccupied("null", 2, 1));
+        assertEquals(List.of("null|2|1"), occupancy.toKeys());
+        assertTrue(RoomOccupancy.fromKeys(List.of("null|2|1")).isOccupied(null, 2, 1));
+    }
+
+    @Test
+    void occupanciesOfDifferentCatalogVersionsMergeByRoomCode() {
+        RoomIdRegistry oldIds = RoomIdRegistry.forCatalog(1, List.of("101", "102"));
+        RoomIdRegistry newIds = RoomIdRegistry.forCatalog(2, List.of("102", "201"));
+        assertNotEquals(oldIds.find("102"), newIds.find("102"));
+
+        RoomOccupancy global = new RoomOccupancy(oldIds);
+        global.occupy("101", 2, 1);
+        global.occupy("102", 3, 2);
+
+        RoomOccupancy session = new RoomOccupancy(newIds);
+        session.occupy("201", 4, 1);
+        assertFalse(global.intersects(session));
+        assertFalse(session.intersects(global));
+
+        session.occupy("102", 3, 2);
+        assertTrue(global.intersects(session));
+        assertTrue(session.intersects(global));
+
+        global.addAll(session);
+        assertEquals(3, global.size());
+        assertTrue(global.isOccupied("201", 4, 1));
+
+        RoomOccupancy rebased = global.rebase(newIds);
+        assertSame(newIds, rebased.getRegistry());
+        assertEquals(3, rebased.size());
+        assertTrue(rebased.isOccupied(newIds.find("102"), 3, 2));
+        assertTrue(rebased.isOccupied("101", 2, 1));
+        assertSame(rebased, rebased.rebase(newIds));
+    }
+}
@@ -0,0 +1,56 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ScheduleAnalysisServiceTest {
+
+    private final ScheduleExcelReaderService reader = mock(ScheduleExcelReaderService.class);
+    private final ScheduleAnalysisService service = new ScheduleAnalysisService(reader,
+            mock(ScheduleConflictDetectionService.class));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "cacheSize", 8);
+    }
+
+    @Test
+    void lookupNeedsTheHashOfTheCallersUpload() throws Exception {
+        when(reader.parseScheduleExcel(any(Path.class))).thenReturn(List.of());
+
+        ScheduleAnalysis mine = service.analyze(upload("mine"));
+        ScheduleAnalysis other = service.analyze(upload("other"));
+
+        assertSame(mine, service.getAnalysis(mine.getContentHash()));
+        assertSame(mine, service.getAnalysis(" " + mine.getContentHash().toUpperCase() + " "));
+        // Looking up one file does not make it the answer for anyone else
+        assertSame(other, service.getAnalysis(other.getContentHash()));
+        assertNull(service.getAnalysis("0".repeat(64)));
+        assertThrows(IllegalArgumentException.class, () -> service.getAnalysis(null));
+        assertThrows(IllegalArgumentException.class, () -> service.getAnalysis(" "));
+    }
+
+    @Test
+    void sameBytesAreParsedOnce() throws Exception {
+        when(reader.parseScheduleExcel(any(Path.class))).thenReturn(List.of());
+
+        ScheduleAnalysis first = service.analyze(upload("same"));
+        ScheduleAnalysis second = service.analyze(upload("same"));
+
+        assertSame(first, second);
+        verify(reader, times(1)).parseScheduleExcel(any(Path.class));
+    }
+
+    private static MockMultipartFile upload(String content) {
+        return new MockMultipartFile("file", "tkb.xlsx", null, content.getBytes());
+    }
+}
@@ -0,0 +1,189 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.entity.WeekSet;
+import com.ptit.schedule.exception.BulkInsertException;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against a stub JDBC driver (no MySQL): statements count their placeholders, check they were all
+ * bound and hand out increasing generated ids.
+ */
+class ScheduleBulkWriterTest {
+
+    private static final int COLUMNS = 13;
+
+    private final StubDatabase database = new StubDatabase();
+
+    @Test
+    void insertsInMultiRowStatementsAndCommitsPerChunk() {
+        ScheduleBulkWriter writer = writer(100, 1000);
+        List<Schedule> schedules = schedules(2_345);
+        List<Integer> committedChunks = new ArrayList<>();
+
+        int inserted = writer.insertAll(schedules, chunk -> committedChunks.add(chunk.size()));
+
+        assertEquals(2_345, inserted);
+        assertEquals(List.of(1000, 1000, 345), committedChunks);
+        assertEquals(3, database.commits);
+        // 10 full statements per chunk; the 345-row chunk needs 3 full and one of 45 rows
+        assertEquals(10 + 10 + 4, database.executed);
+        assertEquals(List.of(100, 45), database.statementRows.stream().distinct().toList());
+        for (int i = 0; i < schedules.size(); i++) {
+            assertEquals(i + 1L, schedules.get(i).getId());
+        }
+    }
+
+    @Test
+    void failureKeepsEarlierChunksAndReportsTheirIds() {
+        ScheduleBulkWriter writer = writer(100, 500);
+        List<Schedule> schedules = schedules(1_800);
+        // Statements 1-10 are chunks 1-2; the third statement of chunk 3 fails
+        database.failOnStatement = 13;
+        List<Integer> committedChunks = new ArrayList<>();
+
+        BulkInsertException e = assertThrows(BulkInsertException.class,
+                () -> writer.insertAll(schedules, chunk -> committedChunks.add(chunk.size())));
+
+        assertEquals(List.of(500, 500), committedChunks);
+        assertEquals(2, database.commits);
+        assertEquals(1, database.rollbacks);
+        List<Long> expected = schedules.subList(0, 1000).stream().map(Schedule::getId).toList();
+        assertEquals(expected, e.getSavedIds());
+        assertTrue(e.getMessage().contains("1000/1800"));
+    }
+
+    @Test
+    void emptyInputTouchesNothing() {
+        assertEquals(0, writer(100, 1000).insertAll(List.of(), chunk -> fail()));
+        assertEquals(0, database.connections);
+    }
+
+    @Test
+    void insertSqlHasOneGroupPerRow() {
+        String sql = ScheduleBulkWriter.insertSql(3);
+
+        assertTrue(sql.startsWith("INSERT INTO schedules (class_number, "));
+        assertTrue(sql.contains(", week_mask) VALUES ("));
+        assertEquals(3 * COLUMNS, sql.chars().filter(c -> c == '?').count());
+        assertEquals(3, sql.split("\\), \\(", -1).length);
+    }
+
+    private ScheduleBulkWriter writer(int rowsPerStatement, int chunkSize) {
+        DataSource dataSource = database.dataSource();
+        ScheduleBulkWriter writer = new ScheduleBulkWriter(new JdbcTemplate(dataSource),
+                new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(writer, "rowsPerStatement", rowsPerStatement);
+        ReflectionTestUtils.setField(writer, "chunkSize", chunkSize);
+        return writer;
+    }
+
+    private static List<Schedule> schedules(int count) {
+        List<Schedule> schedules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Schedule schedule = new Schedule();
+            schedule.setSubjectId("INT" + i);
+            schedule.setRoomNumber("R" + i % 40);
+            schedule.setDayOfWeek(2 + i % 6);
+            schedule.setWeeks(WeekSet.range(1, 1 + i % WeekSet.WEEKS));
+            schedules.add(schedule);
+        }
+        return schedules;
+    }
+
+    private static final class StubDatabase {
+        long nextId = 1;
+        int connections;
+        int executed;
+        int commits;
+        int rollbacks;
+        int failOnStatement = -1;
+        final List<Integer> statementRows = new ArrayList<>();
+
+        DataSource dataSource() {
+            return proxy(DataSource.class, (self, method, args) -> switch (method.getName()) {
+                case "getConnection" -> {
+                    connections++;
+                    yield connection();
+                }
+                case "hashCode" -> System.identityHashCode(self);
+                case "equals" -> self == args[0];
+                default -> null;
+            });
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (self, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> statement((String) args[0]);
+                case "getAutoCommit", "isReadOnly", "isClosed", "isWrapperFor" -> false;
+                case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                case "commit" -> {
+                    commits++;
+                    yield null;
+                }
+                case "rollback" -> {
+                    rollbacks++;
+                    yield null;
+                }
+                case "hashCode" -> System.identityHashCode(self);
+                case "equals" -> self == args[0];
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            int placeholders = (int) sql.chars().filter(c -> c == '?').count();
+            int[] bound = {0};
+            int[] rows = {0};
+            return proxy(PreparedStatement.class, (self, method, args) -> switch (method.getName()) {
+                case "setObject", "setString", "setInt" -> {
+                    bound[0] = Math.max(bound[0], (Integer) args[0]);
+                    yield null;
+                }
+                case "executeUpdate" -> {
+                    if (++executed == failOnStatement) {
+                        throw new SQLException("Deadlock found when trying to get lock");
+                    }
+                    assertEquals(placeholders, bound[0]);
+                    rows[0] = placeholders / COLUMNS;
+                    statementRows.add(rows[0]);
+                    yield rows[0];
+                }
+                case "getGeneratedKeys" -> generatedKeys(rows[0]);
+                case "hashCode" -> System.identityHashCode(self);
+                case "equals" -> self == args[0];
+                default -> null;
+            });
+        }
+
+        private ResultSet generatedKeys(int rows) {
+            int[] left = {rows};
+            return proxy(ResultSet.class, (self, method, args) -> switch (method.getName()) {
+                case "next" -> left[0]-- > 0;
+                case "getLong" -> nextId++;
+                case "hashCode" -> System.identityHashCode(self);
+                case "equals" -> self == args[0];
+                default -> null;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(StubDatabase.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+    }
+}
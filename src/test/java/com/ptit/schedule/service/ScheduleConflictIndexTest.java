@@ -0,0 +1,165 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.ScheduleConflictResponse;
+import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.entity.WeekSet;
+import com.ptit.schedule.repository.ScheduleRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ScheduleConflictIndexTest {
+
+    private final ScheduleRepository repository = mock(ScheduleRepository.class);
+    private final ScheduleConflictIndex index = new ScheduleConflictIndex(repository);
+
+    @Test
+    void buildsFromTheRepositoryOnFirstRead() {
+        // Periods 1-3 and 2-4 in weeks 1-5 and 4-9: shared periods 2-3, weeks 4-5
+        when(repository.findAll()).thenReturn(List.of(
+                schedule(1L, "101", 2, 1, 3, WeekSet.range(1, 5)),
+                schedule(2L, "101", 2, 2, 3, WeekSet.range(4, 9)),
+                schedule(3L, "101", 2, 1, 3, WeekSet.range(10, 18)),
+                schedule(4L, "102", 2, 1, 3, WeekSet.range(1, 5))));
+        // Before the first read there is nothing to update
+        index.upsert(List.of(schedule(5L, "101", 2, 1, 3, WeekSet.range(1, 5))));
+
+        List<ScheduleConflictResponse> conflicts = index.getConflicts(null);
+
+        assertEquals(1, conflicts.size());
+        ScheduleConflictResponse conflict = conflicts.get(0);
+        assertEquals(1L, conflict.getFirst().getId());
+        assertEquals(2L, conflict.getSecond().getId());
+        assertEquals(List.of(2, 3), conflict.getPeriods());
+        assertEquals(List.of(4, 5), conflict.getWeeks());
+        assertEquals(1, index.getConflictCount());
+        verify(repository, times(1)).findAll();
+    }
+
+    @Test
+    void upsertLinksEveryScheduleSharingACellAndWeek() {
+        loadEmpty();
+        index.upsert(List.of(
+                schedule(1L, "101", 2, 1, 2, WeekSet.range(1, 18)),
+                schedule(2L, "101", 2, 2, 2, WeekSet.range(1, 18)),
+                schedule(3L, "101", 2, 1, 3, WeekSet.range(1, 18))));
+
+        assertEquals(3, index.getConflictCount());
+        assertEquals(List.of(1L, 2L), partnerIds(3L));
+        assertPartners(Map.of(1L, Set.of(2L, 3L), 2L, Set.of(1L, 3L), 3L, Set.of(1L, 2L)));
+        assertEquals(3, index.getConflicts("101").size());
+        assertTrue(index.getConflicts("102").isEmpty());
+    }
+
+    @Test
+    void reUpsertingMovedScheduleRechecksItsNewCells() {
+        loadEmpty();
+        index.upsert(List.of(
+                schedule(1L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(2L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(3L, "102", 3, 1, 3, WeekSet.range(1, 18))));
+        assertEquals(1, index.getConflictCount());
+
+        // Schedule 2 moves next to schedule 3
+        index.upsert(List.of(schedule(2L, "102", 3, 2, 3, WeekSet.range(1, 18))));
+
+        assertEquals(1, index.getConflictCount());
+        assertEquals(List.of(), partnerIds(1L));
+        assertEquals(List.of(3L), partnerIds(2L));
+        assertPartners(Map.of(2L, Set.of(3L), 3L, Set.of(2L)));
+        // Old cells of schedule 2 are gone: 3 cells in 101, periods 1-4 in 102
+        assertEquals(3 + 4, cells().size());
+        assertEquals(3 + 3 + 3, cells().values().stream().mapToInt(List::size).sum());
+
+        // Same cells, weeks no longer shared
+        index.upsert(List.of(schedule(2L, "102", 3, 2, 3, WeekSet.range(1, 1)),
+                schedule(3L, "102", 3, 1, 3, WeekSet.range(2, 18))));
+
+        assertEquals(0, index.getConflictCount());
+        assertPartners(Map.of());
+    }
+
+    @Test
+    void removingOneSideOfAPairDropsTheLinkOnBothSides() {
+        loadEmpty();
+        index.upsert(List.of(
+                schedule(1L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(2L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(3L, "101", 2, 3, 2, WeekSet.range(1, 18))));
+        assertEquals(3, index.getConflictCount());
+
+        index.remove(1L);
+
+        assertEquals(1, index.getConflictCount());
+        assertEquals(List.of(3L), partnerIds(2L));
+        assertTrue(index.getConflictsOf(1L).isEmpty());
+        assertPartners(Map.of(2L, Set.of(3L), 3L, Set.of(2L)));
+
+        index.remove(3L);
+
+        assertEquals(0, index.getConflictCount());
+        assertPartners(Map.of());
+        // Only schedule 2 is left in its three cells
+        assertEquals(3, cells().size());
+    }
+
+    @Test
+    void removeAllLeavesNoCellsOrLinksBehind() {
+        loadEmpty();
+        index.upsert(List.of(
+                schedule(1L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(2L, "101", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(3L, "102", 2, 1, 3, WeekSet.range(1, 18)),
+                schedule(4L, "102", 2, 1, 3, WeekSet.range(1, 18))));
+        assertEquals(2, index.getConflictCount());
+
+        index.removeAll(List.of(1L, 2L, 3L, 99L));
+
+        assertEquals(0, index.getConflictCount());
+        assertPartners(Map.of());
+        assertEquals(3, cells().size());
+
+        index.remove(4L);
+        assertTrue(cells().isEmpty());
+    }
+
+    private void loadEmpty() {
+        when(repository.findAll()).thenReturn(List.of());
+        assertEquals(0, index.getConflictCount());
+    }
+
+    private List<Long> partnerIds(Long id) {
+        return index.getConflictsOf(id).stream()
+                .map(conflict -> conflict.getFirst().getId().equals(id) ? conflict.getSecond().getId()
+                        : conflict.getFirst().getId())
+                .sorted()
+                .toList();
+    }
+
+    private void assertPartners(Map<Long, Set<Long>> expected) {
+        assertEquals(expected, ReflectionTestUtils.getField(index, "partners"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, List<Long>> cells() {
+        return (Map<Long, List<Long>>) ReflectionTestUtils.getField(index, "cells");
+    }
+
+    private static Schedule schedule(Long id, String room, int day, int startPeriod, int periodLength, WeekSet weeks) {
+        Schedule schedule = new Schedule();
+        schedule.setId(id);
+        schedule.setSubjectId("INT" + id);
+        schedule.setRoomNumber(room);
+        schedule.setDayOfWeek(day);
+        schedule.setStartPeriod(startPeriod);
+        schedule.setPeriodLength(periodLength);
+        schedule.setWeeks(weeks);
+        return schedule;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulingSessionRegistryTest {
+
+    @Test
+    void pinnedSessionSurvivesIdleEviction() {
+        SchedulingSessionRegistry registry = new SchedulingSessionRegistry();
+        // Every session counts as idle
+        ReflectionTestUtils.setField(registry, "idleTimeoutMinutes", -1L);
+
+        SchedulingSession generating = registry.getOrCreate("generating");
+        registry.getOrCreate("idle");
+        generating.pin();
+
+        registry.evictIdleSessions();
+        assertTrue(registry.find("generating").isPresent());
+        assertFalse(registry.find("idle").isPresent());
+
+        generating.unpin();
+        registry.evictIdleSessions();
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,122 @@
+package com.ptit.schedule.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateTableTest {
+
+    private static final int ALL_WEEKS = (1 << TemplateTable.WEEKS) - 1;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sidecarRoundTripsEveryColumn() throws IOException {
+        byte[] hash = hash(7);
+        // More rows than the builder's initial capacity
+        TemplateTable table = sample(600, hash);
+        Path file = dir.resolve("real.tkbt");
+
+        table.write(file);
+        TemplateTable read = TemplateTable.read(file, hash);
+
+        assertNotNull(read);
+        assertArrayEquals(hash, read.getSourceHash());
+        assertEquals(table.size(), read.size());
+        List<DataLoaderService.TKBTemplateRow> expected = table.getRows();
+        List<DataLoaderService.TKBTemplateRow> actual = read.getRows();
+        for (int i = 0; i < table.size(); i++) {
+            DataLoaderService.TKBTemplateRow e = expected.get(i);
+            DataLoaderService.TKBTemplateRow a = actual.get(i);
+            assertEquals(e.getTotalPeriods(), a.getTotalPeriods());
+            assertEquals(e.getDayOfWeek(), a.getDayOfWeek());
+            assertEquals(e.getKip(), a.getKip());
+            assertEquals(e.getStartPeriod(), a.getStartPeriod());
+            assertEquals(e.getPeriodLength(), a.getPeriodLength());
+            assertEquals(e.getWeekMask(), a.getWeekMask());
+            assertEquals(e.getTotalUsed(), a.getTotalUsed());
+            assertEquals(e.getId(), a.getId());
+        }
+        assertFalse(Files.exists(dir.resolve("real.tkbt.tmp")));
+    }
+
+    @Test
+    void totalUsedIsPeriodLengthTimesTeachingWeeks() {
+        TemplateTable table = TemplateTable.builder()
+                .add(45, 2, 1, 1, 3, "row-1", 0b111)
+                .add(45, 3, 2, 7, 2, "row-2", 0)
+                .build(hash(1));
+
+        assertEquals(9, table.getRows().get(0).getTotalUsed());
+        assertEquals(0, table.getRows().get(1).getTotalUsed());
+    }
+
+    @Test
+    void sidecarOfOtherContentIsIgnored() throws IOException {
+        Path file = dir.resolve("real.tkbt");
+        sample(10, hash(1)).write(file);
+
+        assertNull(TemplateTable.read(file, hash(2)));
+        assertNull(TemplateTable.read(dir.resolve("missing.tkbt"), hash(1)));
+    }
+
+    @Test
+    void truncatedOrForeignFileIsIgnored() throws IOException {
+        Path file = dir.resolve("real.tkbt");
+        sample(50, hash(1)).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+        assertNull(TemplateTable.read(file, hash(1)));
+
+        Files.write(file, Arrays.copyOf(bytes, 20));
+        assertNull(TemplateTable.read(file, hash(1)));
+
+        byte[] foreign = bytes.clone();
+        foreign[0] ^= 0x7F;
+        Files.write(file, foreign);
+        assertNull(TemplateTable.read(file, hash(1)));
+    }
+
+    @Test
+    void corruptIdLengthIsIgnored() throws IOException {
+        Path file = dir.resolve("real.tkbt");
+        int rows = 50;
+        sample(rows, hash(1)).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        // magic, format, hash, row count, then 7 int columns: the first id length follows
+        int firstIdLength = 4 + 4 + 32 + 4 + 7 * 4 * rows;
+
+        for (int length : new int[]{Integer.MAX_VALUE, -1, bytes.length}) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(firstIdLength, length);
+            Files.write(file, corrupt);
+            assertNull(TemplateTable.read(file, hash(1)), "length " + length);
+        }
+    }
+
+    private static TemplateTable sample(int rows, byte[] hash) {
+        TemplateTable.Builder builder = TemplateTable.builder();
+        for (int i = 0; i < rows; i++) {
+            builder.add(30 + 15 * (i % 3), 2 + i % 6, 1 + i % 4, 1 + 2 * (i % 6), 2 + i % 3,
+                    "lớp-" + i, (int) (i * 2654435761L) & ALL_WEEKS);
+        }
+        return builder.build(hash);
+    }
+
+    private static byte[] hash(int seed) {
+        byte[] hash = new byte[32];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+}
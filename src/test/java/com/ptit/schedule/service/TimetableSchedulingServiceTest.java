@@ -0,0 +1,156 @@
+package com.ptit.schedule.service;
+
+import com.ptit.schedule.dto.TKBBatchRequest;
+import com.ptit.schedule.dto.TKBBatchResponse;
+import com.ptit.schedule.dto.TKBRequest;
+import com.ptit.schedule.dto.TKBRowResult;
+import com.ptit.schedule.entity.Room;
+import com.ptit.schedule.entity.RoomType;
+import com.ptit.schedule.exception.StaleSessionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.ptit.schedule.service.RoomCandidateIndexTest.room;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TimetableSchedulingServiceTest {
+
+    private GlobalOccupancyStore store;
+    private TimetableSchedulingService service;
+
+    @BeforeEach
+    void setUp() {
+        store = new GlobalOccupancyStore(mock(OccupancyJournal.class));
+        service = new TimetableSchedulingService(mock(DataLoaderService.class), mock(RoomService.class),
+                mock(MajorBuildingPreferenceService.class), store);
+    }
+
+    @Test
+    void secondSessionFromSameSnapshotCannotDoubleBook() {
+        SchedulingSession first = generated("a", "101", 3);
+        SchedulingSession second = generated("b", "101", 5);
+
+        service.commitSessionToGlobal(first);
+        assertEquals(1, store.size());
+        assertEquals(3, store.getLastSlotIdx());
+
+        assertThrows(StaleSessionException.class, () -> service.commitSessionToGlobal(second));
+        assertEquals(1, store.size());
+        assertEquals(3, store.getLastSlotIdx());
+    }
+
+    @Test
+    void staleSessionWithoutRoomConflictIsRejected() {
+        SchedulingSession first = generated("a", "101", 3);
+        SchedulingSession second = generated("b", "202", 5);
+
+        service.commitSessionToGlobal(first);
+
+        assertThrows(StaleSessionException.class, () -> service.commitSessionToGlobal(second));
+        assertEquals(3, store.getLastSlotIdx());
+        assertFalse(second.getOccupiedRooms().isEmpty());
+    }
+
+    @Test
+    void sessionRegeneratedAfterCommitIsAccepted() {
+        service.commitSessionToGlobal(generated("a", "101", 3));
+        SchedulingSession second = generated("b", "202", 5);
+
+        service.commitSessionToGlobal(second);
+
+        assertEquals(2, store.size());
+        assertEquals(5, store.getLastSlotIdx());
+        assertTrue(second.getOccupiedRooms().isEmpty());
+    }
+
+    @Test
+    void resettingOwnLastSlotIdxKeepsSessionCommittable() {
+        SchedulingSession session = generated("a", "101", 3);
+
+        service.resetLastSlotIdx(session);
+        service.commitSessionToGlobal(session);
+
+        assertEquals(1, store.size());
+        assertEquals(-1, store.getLastSlotIdx());
+    }
+
+    @Test
+    void parallelBatchBooksEveryRoomSlotOnce(@TempDir Path dataDir) {
+        // Few rooms for the classes, so clusters have to share them
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            rooms.add(room("R" + i, i % 2 == 0 ? "A2" : "A3", 40 + 10 * (i % 4), RoomType.GENERAL, null));
+        }
+        rooms.add(room("E1", "A2", 50, RoomType.ENGLISH_CLASS, null));
+        RoomService roomService = mock(RoomService.class);
+        when(roomService.getRoomCandidateIndex()).thenReturn(RoomCandidateIndex.build(rooms, 1));
+        MajorBuildingPreferenceService preferences = mock(MajorBuildingPreferenceService.class);
+        when(preferences.getPreferredBuildingsByMajor()).thenReturn(Map.of("M0", List.of("A3", "A2")));
+        DataLoaderService loader = new DataLoaderService();
+        ReflectionTestUtils.setField(loader, "dataDir", dataDir.toString());
+        TimetableSchedulingService parallel = new TimetableSchedulingService(loader, roomService, preferences,
+                store);
+        ReflectionTestUtils.setField(parallel, "generationParallelism", 4);
+        parallel.init();
+
+        // 9 majors, groups of 3 share one subject: 3 clusters
+        List<TKBRequest> items = new ArrayList<>();
+        for (int m = 0; m < 9; m++) {
+            for (int s = 0; s < 4; s++) {
+                String code = s == 0 ? "G" + m / 3 : "M" + m + "_" + s;
+                items.add(TKBRequest.builder().ma_mon(code).ten_mon(code).sotiet(s == 3 ? 60 : 30 + 6 * s)
+                        .solop(2).siso_mot_lop(45).siso(90).nganh("M" + m)
+                        .subject_type(s == 2 ? "english" : "general").student_year("2023").build());
+            }
+        }
+        try {
+            TKBBatchResponse sequential = parallel.simulateExcelFlowBatch(
+                    TKBBatchRequest.builder().items(items).parallel(false).build(), new SchedulingSession("seq"));
+            SchedulingSession session = new SchedulingSession("par");
+            TKBBatchResponse response = parallel.simulateExcelFlowBatch(
+                    TKBBatchRequest.builder().items(items).parallel(true).build(), session);
+
+            assertNull(response.getError());
+            assertEquals(sequential.getTotalRows(), response.getTotalRows());
+            // A class holds its room at the (thu, kip) of its first row
+            Map<String, TKBRowResult> firstRowByClass = new LinkedHashMap<>();
+            for (var item : response.getItems()) {
+                for (TKBRowResult row : item.getRows()) {
+                    if (row.getPhong() != null) {
+                        firstRowByClass.putIfAbsent(row.getNganh() + "|" + row.getMaMon() + "|" + row.getLop(), row);
+                    }
+                }
+            }
+            Map<String, String> classBySlot = new HashMap<>();
+            for (Map.Entry<String, TKBRowResult> entry : firstRowByClass.entrySet()) {
+                TKBRowResult row = entry.getValue();
+                // Rows show "phong-building"
+                String roomCode = row.getPhong().substring(0, row.getPhong().lastIndexOf('-'));
+                String slot = roomCode + "|" + row.getThu() + "|" + row.getKip();
+                assertNull(classBySlot.put(slot, entry.getKey()), slot);
+                assertTrue(session.getOccupiedRooms().isOccupied(roomCode, row.getThu(), row.getKip()), slot);
+            }
+            assertFalse(classBySlot.isEmpty());
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Session holding one generated room, as left by a generation started now
+     */
+    private SchedulingSession generated(String id, String room, int lastSlotIdx) {
+        SchedulingSession session = new SchedulingSession(id);
+        session.reset(store.getLastSlotIdx(), store.getVersion());
+        session.getOccupiedRooms().occupy(room, 2, 1);
+        session.setLastSlotIdx(lastSlotIdx);
+        return session;
+    }
+}
@@ -0,0 +1,181 @@
+package com.ptit.schedule.service.impl;
+
+import com.ptit.schedule.dto.ConflictResult;
+import com.ptit.schedule.dto.ScheduleEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleConflictDetectionServiceImplTest {
+
+    // Sequential: the pool is only created by init()
+    private final ScheduleConflictDetectionServiceImpl service = new ScheduleConflictDetectionServiceImpl();
+
+    @Test
+    void partialOverlapIsOneConflict() {
+        // Periods [1, 3) and [2, 4)
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 2)),
+                entry("INT2", "T2", "101", slot(2, 2))));
+
+        assertEquals(List.of(List.of("INT1", "INT2")), subjects(conflicts));
+    }
+
+    @Test
+    void chainGivesOneConflictPerOverlappingPair() {
+        // [1, 3), [2, 4), [3, 5): the first and the last only touch
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 2)),
+                entry("INT2", "T2", "101", slot(2, 2)),
+                entry("INT3", "T3", "101", slot(3, 2))));
+
+        assertEquals(List.of(List.of("INT1", "INT2"), List.of("INT2", "INT3")), subjects(conflicts));
+    }
+
+    @Test
+    void sessionsSharingOnePeriodAreOneConflict() {
+        // Periods 1-3, 2-4, 3-5 (3 periods each) all run during period 3
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 3)),
+                entry("INT2", "T2", "101", slot(2, 3)),
+                entry("INT3", "T3", "101", slot(3, 3))));
+
+        assertEquals(List.of(List.of("INT1", "INT2", "INT3")), subjects(conflicts));
+    }
+
+    @Test
+    void identicalSlotsAreOneConflict() {
+        List<ScheduleEntry> entries = new ArrayList<>();
+        for (int k = 1; k <= 5; k++) {
+            entries.add(entry("INT" + k, "T" + k, "101", slot(1, 2)));
+        }
+
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(entries);
+
+        assertEquals(List.of(List.of("INT1", "INT2", "INT3", "INT4", "INT5")), subjects(conflicts));
+    }
+
+    @Test
+    void touchingSessionsDoNotConflict() {
+        // Periods 1-2 then 3-4
+        assertTrue(service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 2)),
+                entry("INT2", "T2", "101", slot(3, 2)))).isEmpty());
+    }
+
+    @Test
+    void otherRoomDayOrWeekDoesNotConflict() {
+        assertTrue(service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 2)),
+                entry("INT2", "T2", "102", slot(1, 2)),
+                entry("INT3", "T3", "101", slot("Tuần 1", "Thứ 3", "1", 2)),
+                entry("INT4", "T4", "101", slot("Tuần 2", "Thứ 2", "1", 2)))).isEmpty());
+    }
+
+    @Test
+    void duplicatesOfOneSessionAreRemoved() {
+        ScheduleEntry first = entry("INT1", "T1", "101", slot(1, 2));
+        ScheduleEntry repeated = entry("INT1", "T1", "101", slot(1, 2));
+
+        // Same subject, room and teacher only: not a conflict
+        assertTrue(service.detectRoomConflicts(List.of(first, repeated)).isEmpty());
+
+        // With another subject: one conflict, the duplicate counted once (last occurrence kept)
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(List.of(
+                first, entry("INT2", "T2", "101", slot(2, 2)), repeated));
+        assertEquals(List.of(List.of("INT1", "INT2")), subjects(conflicts));
+        assertSame(repeated, conflicts.get(0).getConflictingSchedules().get(0));
+    }
+
+    @Test
+    void nonNumericPeriodsFallBackToExactSlotMatch() {
+        ScheduleEntry.TimeSlot text = slot("Tuần 1", "Thứ 2", "a", 2);
+        List<ConflictResult.RoomConflict> conflicts = service.detectRoomConflicts(List.of(
+                entry("INT1", "T1", "101", text),
+                entry("INT2", "T2", "101", slot("Tuần 1", "Thứ 2", "a", 2)),
+                entry("INT3", "T3", "101", slot("Tuần 1", "Thứ 2", "b", 2)),
+                // Numeric slot at the same place is swept separately, never matched to text
+                entry("INT4", "T4", "101", slot(1, 2))));
+
+        assertEquals(List.of(List.of("INT1", "INT2")), subjects(conflicts));
+    }
+
+    @Test
+    void teacherConflictsIgnoreTheRoom() {
+        List<ConflictResult.TeacherConflict> conflicts = service.detectTeacherConflicts(List.of(
+                entry("INT1", "T1", "101", slot(1, 2)),
+                entry("INT2", "T1", "202", slot(2, 2)),
+                entry("INT3", "T2", "101", slot(2, 2))));
+
+        assertEquals(1, conflicts.size());
+        assertEquals("T1", conflicts.get(0).getTeacherId());
+        assertEquals(2, conflicts.get(0).getConflictingSchedules().size());
+    }
+
+    @Test
+    void parallelDetectionMatchesSequential() {
+        Random random = new Random(42);
+        List<ScheduleEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            List<ScheduleEntry.TimeSlot> slots = new ArrayList<>();
+            for (int s = random.nextInt(3); s >= 0; s--) {
+                slots.add(slot("Tuần " + (1 + random.nextInt(3)), "Thứ " + (2 + random.nextInt(6)),
+                        String.valueOf(1 + random.nextInt(10)), 1 + random.nextInt(4)));
+            }
+            entries.add(entry("S" + random.nextInt(400), "T" + random.nextInt(60), "R" + random.nextInt(40),
+                    slots.toArray(new ScheduleEntry.TimeSlot[0])));
+        }
+        ConflictResult sequential = service.detectConflicts(entries);
+
+        ScheduleConflictDetectionServiceImpl parallel = new ScheduleConflictDetectionServiceImpl();
+        ReflectionTestUtils.setField(parallel, "detectionParallelism", 4);
+        ReflectionTestUtils.setField(parallel, "parallelThreshold", 0);
+        parallel.init();
+        try {
+            assertEquals(sequential, parallel.detectConflicts(entries));
+            assertTrue(sequential.getTotalConflicts() > 0);
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    private static List<List<String>> subjects(List<ConflictResult.RoomConflict> conflicts) {
+        return conflicts.stream()
+                .map(conflict -> conflict.getConflictingSchedules().stream()
+                        .map(ScheduleEntry::getSubjectCode)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private static ScheduleEntry entry(String subject, String teacher, String room, ScheduleEntry.TimeSlot... slots) {
+        return ScheduleEntry.builder()
+                .subjectCode(subject)
+                .subjectName(subject)
+                .teacherId(teacher)
+                .teacherName(teacher)
+                .room(room)
+                .building("A2")
+                .timeSlots(List.of(slots))
+                .build();
+    }
+
+    private static ScheduleEntry.TimeSlot slot(int startPeriod, int periods) {
+        return slot("Tuần 1", "Thứ 2", String.valueOf(startPeriod), periods);
+    }
+
+    private static ScheduleEntry.TimeSlot slot(String week, String day, String startPeriod, int periods) {
+        return ScheduleEntry.TimeSlot.builder()
+                .date(week)
+                .dayOfWeek(day)
+                .shift("1")
+                .startPeriod(startPeriod)
+                .numberOfPeriods(String.valueOf(periods))
+                .build();
+    }
+}
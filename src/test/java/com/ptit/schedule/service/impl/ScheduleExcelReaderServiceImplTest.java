@@ -0,0 +1,174 @@
+package com.ptit.schedule.service.impl;
+
+import com.ptit.schedule.dto.ScheduleEntry;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleExcelReaderServiceImplTest {
+
+    private static final int COL_WEEK_1 = 27;
+    private static final int COL_WEEK_17 = 43;
+
+    private final ScheduleExcelReaderServiceImpl reader = new ScheduleExcelReaderServiceImpl();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsDataRowsFromUploadAndFile() throws IOException {
+        byte[] xlsx = workbook(40, sheet -> {
+            dataRow(sheet, 3, "INT1", "A2", "T1", 1, 2, 3);
+            // Row without cells, then LMS and teacherless rows: no entries
+            sheet.createRow(4);
+            dataRow(sheet, 5, "INT2", "LMS", "T2", 1);
+            dataRow(sheet, 6, "INT3", "A3", "", 1);
+            dataRow(sheet, 8, "INT4", "A3", "T4", 17);
+        });
+
+        List<ScheduleEntry> uploaded = reader.readScheduleFromExcel(upload(xlsx));
+        List<ScheduleEntry> parsed = reader.parseScheduleExcel(file(xlsx));
+
+        assertEquals(uploaded, parsed);
+        assertEquals(List.of("INT1", "INT4"), uploaded.stream().map(ScheduleEntry::getSubjectCode).toList());
+
+        ScheduleEntry first = uploaded.get(0);
+        assertEquals("Lập trình INT1", first.getSubjectName());
+        assertEquals("01", first.getClassGroup());
+        assertEquals("101 - A2", first.getRoom());
+        assertEquals("A2", first.getBuilding());
+        assertEquals("T1", first.getTeacherId());
+        assertEquals(60, first.getStudentCount());
+        assertEquals(List.of("Tuần 1", "Tuần 2", "Tuần 3"),
+                first.getTimeSlots().stream().map(ScheduleEntry.TimeSlot::getDate).toList());
+        ScheduleEntry.TimeSlot slot = first.getTimeSlots().get(0);
+        assertEquals("Thứ 3", slot.getDayOfWeek());
+        assertEquals("1", slot.getShift());
+        assertEquals("1", slot.getStartPeriod());
+        assertEquals("2", slot.getNumberOfPeriods());
+        assertEquals(List.of("Tuần 17"), uploaded.get(1).getTimeSlots().stream()
+                .map(ScheduleEntry.TimeSlot::getDate).toList());
+    }
+
+    @Test
+    void formulaCellsGiveTheirCachedValue() throws IOException {
+        byte[] xlsx = workbook(40, sheet -> {
+            XSSFRow row = dataRow(sheet, 3, "INT1", "A2", "T1", 1);
+            row.getCell(1).setCellFormula("\"INT\"&\"9\"");
+            row.getCell(19).setCellFormula("20+25");
+            row.getCell(COL_WEEK_1 + 1).setCellFormula("LOWER(\"X\")");
+            sheet.getWorkbook().getCreationHelper().createFormulaEvaluator().evaluateAll();
+        });
+
+        for (List<ScheduleEntry> entries : List.of(reader.readScheduleFromExcel(upload(xlsx)),
+                reader.parseScheduleExcel(file(xlsx)))) {
+            assertEquals(1, entries.size());
+            assertEquals("INT9", entries.get(0).getSubjectCode());
+            assertEquals(45, entries.get(0).getStudentCount());
+            assertEquals(List.of("Tuần 1", "Tuần 2"), entries.get(0).getTimeSlots().stream()
+                    .map(ScheduleEntry.TimeSlot::getDate).toList());
+        }
+    }
+
+    @Test
+    void columnsPastWeek17AreIgnored() throws IOException {
+        byte[] xlsx = workbook(40, sheet -> {
+            XSSFRow row = dataRow(sheet, 3, "INT1", "A2", "T1", 2);
+            // Week 18 and notes far to the right
+            row.createCell(COL_WEEK_17 + 1).setCellValue("x");
+            row.createCell(200).setCellValue("ghi chú");
+            // A row with cells only past week 17 is an empty row
+            sheet.createRow(4).createCell(COL_WEEK_17 + 5).setCellValue("INT2");
+        });
+
+        List<ScheduleEntry> entries = reader.parseScheduleExcel(file(xlsx));
+
+        assertEquals(1, entries.size());
+        assertEquals(List.of("Tuần 2"), entries.get(0).getTimeSlots().stream()
+                .map(ScheduleEntry.TimeSlot::getDate).toList());
+        assertEquals(entries, reader.readScheduleFromExcel(upload(xlsx)));
+    }
+
+    @Test
+    void headerNeedsColumnsUpToTheTimeSlots() throws IOException {
+        byte[] narrow = workbook(36, sheet -> dataRow(sheet, 3, "INT1", "A2", "T1", 1));
+        // Header cells past week 17 are not read, so they do not make the header wide enough
+        byte[] wideOnlyPastWeek17 = workbook(20, sheet -> {
+            sheet.getRow(0).createCell(COL_WEEK_17 + 10).setCellValue("Ghi chú");
+            dataRow(sheet, 3, "INT1", "A2", "T1", 1);
+        });
+        byte[] enough = workbook(37, sheet -> dataRow(sheet, 3, "INT1", "A2", "T1", 1));
+
+        assertNull(reader.parseScheduleExcel(file(narrow)));
+        assertNull(reader.parseScheduleExcel(file(wideOnlyPastWeek17)));
+        assertEquals(1, reader.parseScheduleExcel(file(enough)).size());
+
+        assertFalse(reader.validateScheduleExcelFormat(upload(narrow)));
+        assertFalse(reader.validateScheduleExcelFormat(upload(wideOnlyPastWeek17)));
+        assertTrue(reader.validateScheduleExcelFormat(upload(enough)));
+    }
+
+    /**
+     * 3 header rows (the first with headerColumns titles), then what the caller adds
+     */
+    private static byte[] workbook(int headerColumns, Consumer<XSSFSheet> rows) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            XSSFSheet sheet = workbook.createSheet("TKB");
+            XSSFRow header = sheet.createRow(0);
+            for (int col = 0; col < headerColumns; col++) {
+                header.createCell(col).setCellValue("Cột " + col);
+            }
+            sheet.createRow(1).createCell(0).setCellValue("Học kỳ 1");
+            sheet.createRow(2).createCell(0).setCellValue("STT");
+            rows.accept(sheet);
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static XSSFRow dataRow(XSSFSheet sheet, int rowNum, String subject, String building, String teacher,
+            int... weeks) {
+        XSSFRow row = sheet.createRow(rowNum);
+        row.createCell(0).setCellValue(rowNum - 2);
+        row.createCell(1).setCellValue(subject);
+        row.createCell(2).setCellValue("Lập trình " + subject);
+        row.createCell(3).setCellValue("01");
+        row.createCell(6).setCellValue(3);
+        row.createCell(7).setCellValue(1);
+        row.createCell(8).setCellValue(1);
+        row.createCell(9).setCellValue(2);
+        row.createCell(10).setCellValue("101");
+        row.createCell(11).setCellValue(building);
+        row.createCell(19).setCellValue(60);
+        row.createCell(21).setCellValue(teacher);
+        row.createCell(22).setCellValue("GV " + teacher);
+        for (int col = COL_WEEK_1; col <= COL_WEEK_17; col++) {
+            row.createCell(col);
+        }
+        for (int week : weeks) {
+            row.getCell(COL_WEEK_1 + week - 1).setCellValue("x");
+        }
+        return row;
+    }
+
+    private static MockMultipartFile upload(byte[] xlsx) {
+        return new MockMultipartFile("file", "tkb.xlsx",
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", xlsx);
+    }
+
+    private Path file(byte[] xlsx) throws IOException {
+        return Files.write(Files.createTempFile(dir, "tkb", ".xlsx"), xlsx);
+    }
+}
@@ -0,0 +1,107 @@
+package com.ptit.schedule.service.impl;
+
+import com.ptit.schedule.dto.ScheduleSaveResult;
+import com.ptit.schedule.entity.Schedule;
+import com.ptit.schedule.exception.BulkInsertException;
+import com.ptit.schedule.repository.ScheduleRepository;
+import com.ptit.schedule.service.ScheduleBulkWriter;
+import com.ptit.schedule.service.ScheduleConflictIndex;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Lock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ScheduleServiceImplTest {
+
+    private final ScheduleRepository repository = mock(ScheduleRepository.class);
+    private final ScheduleConflictIndex index = mock(ScheduleConflictIndex.class);
+    private final ScheduleBulkWriter writer = mock(ScheduleBulkWriter.class);
+    private final ScheduleServiceImpl service = new ScheduleServiceImpl(repository, index, writer);
+
+    @Test
+    void saveReportsInsertedAndUpdatedCounts() {
+        Schedule existing = schedule(7L);
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(writer.insertAll(anyList(), any())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+
+        ScheduleSaveResult result = service.saveAll(List.of(schedule(null), existing, schedule(null)));
+
+        assertTrue(result.isComplete());
+        assertEquals(3, result.getRequested());
+        assertEquals(2, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertTrue(result.getElapsedMs() >= 1);
+        assertNull(result.getSavedIds());
+        verify(repository).saveAll(List.of(existing));
+    }
+
+    @Test
+    void partialSaveListsTheSavedIds() {
+        List<Schedule> schedules = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            schedules.add(schedule(null));
+        }
+        when(writer.insertAll(anyList(), any()))
+                .thenThrow(new BulkInsertException("đã lưu 2/5 dòng", List.of(11L, 12L), new RuntimeException()));
+
+        ScheduleSaveResult result = service.saveAll(schedules);
+
+        assertFalse(result.isComplete());
+        assertEquals(2, result.getInserted());
+        assertEquals(List.of(11L, 12L), result.getSavedIds());
+        assertEquals("đã lưu 2/5 dòng", result.getError());
+    }
+
+    @Test
+    void scopedDeleteRemovesTheLockedIdsFromTheIndex() {
+        when(repository.findIdsByMajor("CNTT")).thenReturn(List.of(1L, 2L, 3L));
+        when(repository.deleteSchedulesByMajor("CNTT")).thenReturn(3);
+
+        assertEquals(3, service.deleteSchedulesByMajor("CNTT").getDeletedCount());
+
+        verify(index).removeAll(List.of(1L, 2L, 3L));
+        verify(index, never()).invalidate();
+    }
+
+    @Test
+    void scopedDeleteOfMoreRowsThanLockedRebuildsTheIndex() {
+        when(repository.findIdsBySemester("2025-2026-1")).thenReturn(List.of(1L, 2L));
+        when(repository.deleteSchedulesBySemester("2025-2026-1")).thenReturn(3);
+
+        service.deleteSchedulesBySemester("2025-2026-1");
+
+        verify(index).invalidate();
+        verify(index, never()).removeAll(anyList());
+    }
+
+    @Test
+    void scopedDeleteOfNothingSkipsTheDelete() {
+        when(repository.findIdsByStudentYear("2020")).thenReturn(List.of());
+
+        assertEquals(0, service.deleteSchedulesByStudentYear("2020").getDeletedCount());
+
+        verify(repository, never()).deleteSchedulesByStudentYear(any());
+    }
+
+    @Test
+    void idsAreReadWithAWriteLock() throws NoSuchMethodException {
+        for (String query : List.of("findIdsByMajor", "findIdsByStudentYear", "findIdsBySemester")) {
+            Lock lock = ScheduleRepository.class.getMethod(query, String.class).getAnnotation(Lock.class);
+            assertNotNull(lock, query);
+            assertEquals(LockModeType.PESSIMISTIC_WRITE, lock.value(), query);
+        }
+    }
+
+    private static Schedule schedule(Long id) {
+        Schedule schedule = new Schedule();
+        schedule.setId(id);
+        return schedule;
+    }
+}
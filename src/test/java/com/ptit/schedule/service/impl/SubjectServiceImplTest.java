@@ -0,0 +1,211 @@
+package com.ptit.schedule.service.impl;
+
+import com.ptit.schedule.dto.SubjectMajorDTO;
+import com.ptit.schedule.dto.SubjectRequest;
+import com.ptit.schedule.entity.Major;
+import com.ptit.schedule.entity.Subject;
+import com.ptit.schedule.repository.FacultyRepository;
+import com.ptit.schedule.repository.MajorRepository;
+import com.ptit.schedule.repository.SubjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SubjectServiceImplTest {
+
+    private final SubjectRepository subjectRepository = mock(SubjectRepository.class);
+    private final MajorRepository majorRepository = mock(MajorRepository.class);
+    private final SubjectServiceImpl service = new SubjectServiceImpl(subjectRepository, majorRepository,
+            mock(FacultyRepository.class));
+
+    @BeforeEach
+    void setUp() {
+        // The service may append to the list it gets back
+        when(subjectRepository.findSubjectsWithMajorInfoByProgramType(anyString(), anyString()))
+                .thenAnswer(invocation -> new ArrayList<>(List.of(pair("S1", "CNTT"), pair("S1", "ATTT"),
+                        pair("S2", "DTVT"))));
+        Major major = Major.builder().id(1L).majorCode("CNTT").majorName("Công nghệ thông tin").classYear("2024").build();
+        when(majorRepository.findByMajorCodeAndClassYear(any(), any())).thenReturn(Optional.of(major));
+        when(subjectRepository.findBySubjectCodeAndMajorCode(any(), any())).thenReturn(Optional.empty());
+        when(subjectRepository.save(any(Subject.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void unionFindMatchesTheDepthFirstGrouping() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            int majors = 1 + random.nextInt(30);
+            int subjects = 1 + random.nextInt(40);
+            List<SubjectMajorDTO> pairs = new ArrayList<>();
+            for (int i = random.nextInt(80); i > 0; i--) {
+                pairs.add(pair("S" + random.nextInt(subjects), "M" + random.nextInt(majors)));
+            }
+
+            assertEquals(new HashSet<>(depthFirstGroups(pairs)),
+                    new HashSet<>(SubjectServiceImpl.groupMajorsBySharedSubjects(pairs)), "round " + round);
+        }
+    }
+
+    @Test
+    void groupsKeepFirstAppearanceOrder() {
+        List<Set<String>> groups = SubjectServiceImpl.groupMajorsBySharedSubjects(List.of(
+                pair("S1", "B"), pair("S2", "A"), pair("S3", "C"), pair("S2", "B"), pair("S3", "D")));
+
+        assertEquals(List.of(List.of("B", "A"), List.of("C", "D")),
+                groups.stream().map(ArrayList::new).toList());
+    }
+
+    @Test
+    void deepChainIsOneGroup() {
+        // Subject i is shared by majors i and i+1: a path the recursive DFS overflowed the stack on
+        int length = 300_000;
+        List<SubjectMajorDTO> pairs = new ArrayList<>(2 * length);
+        for (int i = 0; i < length; i++) {
+            pairs.add(pair("S" + i, "M" + i));
+            pairs.add(pair("S" + i, "M" + (i + 1)));
+        }
+
+        List<Set<String>> groups = SubjectServiceImpl.groupMajorsBySharedSubjects(pairs);
+
+        assertEquals(1, groups.size());
+        assertEquals(length + 1, groups.get(0).size());
+    }
+
+    @Test
+    void cachedGroupsAreDroppedAfterCreate() {
+        List<Set<String>> first = service.groupMajorsBySharedSubjects("2024", "Chính quy");
+        assertSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+
+        service.createSubject(request());
+
+        assertNotSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+        verify(subjectRepository, times(2)).findSubjectsWithMajorInfoByProgramType("2024", "Chính quy");
+    }
+
+    @Test
+    void cachedGroupsAreDroppedAfterUpdate() {
+        when(subjectRepository.findById(5L)).thenReturn(Optional.of(new Subject()));
+        List<Set<String>> first = service.groupMajorsBySharedSubjects("2024", "Chính quy");
+
+        service.updateSubject(5L, request());
+
+        assertNotSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+    }
+
+    @Test
+    void cachedGroupsAreDroppedAfterDelete() {
+        when(subjectRepository.existsById(5L)).thenReturn(true);
+        List<Set<String>> first = service.groupMajorsBySharedSubjects("2024", "Chính quy");
+
+        service.deleteSubject(5L);
+
+        assertNotSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+        verify(subjectRepository).deleteById(5L);
+    }
+
+    @Test
+    void cachedGroupsStayUntilTheTransactionCommits() {
+        when(subjectRepository.existsById(5L)).thenReturn(true);
+        List<Set<String>> first = service.groupMajorsBySharedSubjects("2024", "Chính quy");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.deleteSubject(5L);
+            // Other readers still see the committed catalog
+            assertSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNotSame(first, service.groupMajorsBySharedSubjects("2024", "Chính quy"));
+    }
+
+    @Test
+    void cacheIsPerClassYearAndProgramType() {
+        List<Set<String>> regular = service.groupMajorsBySharedSubjects("2024", "Chính quy");
+
+        assertNotSame(regular, service.groupMajorsBySharedSubjects("2023", "Chính quy"));
+        assertEquals(List.of(Set.of("CNTT", "ATTT"), Set.of("DTVT")), regular);
+    }
+
+    private static SubjectRequest request() {
+        return SubjectRequest.builder()
+                .subjectCode("INT1")
+                .subjectName("Lập trình")
+                .department("CNTT1")
+                .examFormat("Viết")
+                .programType("Chính quy")
+                .majorId("CNTT")
+                .classYear("2024")
+                .build();
+    }
+
+    private static SubjectMajorDTO pair(String subjectCode, String majorCode) {
+        return SubjectMajorDTO.builder().subjectCode(subjectCode).majorCode(majorCode).build();
+    }
+
+    /**
+     * The grouping before union-find: major graph over shared subjects, components by DFS
+     */
+    private static List<Set<String>> depthFirstGroups(List<SubjectMajorDTO> list) {
+        Map<String, List<String>> subjectToMajors = new HashMap<>();
+        Set<String> allMajors = new HashSet<>();
+        for (SubjectMajorDTO sm : list) {
+            subjectToMajors.computeIfAbsent(sm.getSubjectCode(), k -> new ArrayList<>()).add(sm.getMajorCode());
+            allMajors.add(sm.getMajorCode());
+        }
+
+        Map<String, Set<String>> graph = new HashMap<>();
+        for (List<String> majors : subjectToMajors.values()) {
+            for (String m1 : majors) {
+                graph.computeIfAbsent(m1, k -> new HashSet<>());
+                for (String m2 : majors) {
+                    if (!m1.equals(m2)) {
+                        graph.get(m1).add(m2);
+                    }
+                }
+            }
+        }
+        for (String major : allMajors) {
+            graph.computeIfAbsent(major, k -> new HashSet<>());
+        }
+
+        Set<String> visited = new HashSet<>();
+        List<Set<String>> groups = new ArrayList<>();
+        for (String major : graph.keySet()) {
+            if (!visited.contains(major)) {
+                Set<String> component = new HashSet<>();
+                dfs(major, graph, visited, component);
+                groups.add(component);
+            }
+        }
+        return groups;
+    }
+
+    private static void dfs(String current, Map<String, Set<String>> graph, Set<String> visited,
+                            Set<String> component) {
+        visited.add(current);
+        component.add(current);
+        for (String neighbor : graph.getOrDefault(current, Set.of())) {
+            if (!visited.contains(neighbor)) {
+                dfs(neighbor, graph, visited, component);
+            }
+        }
+    }
+}